@@ -0,0 +1,58 @@
+package org.strykeforce.thirdcoast.sim;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.strykeforce.thirdcoast.swerve.SwerveDriveConfig;
+
+/**
+ * Drives field-oriented straight ahead while rotating in place, in simulation, and reports the
+ * cross-track drift with and without {@link SwerveDriveConfig#maxWheelSpeed} discretization. The
+ * drift is printed at the end of each trial, in the units of the default configuration's unitless
+ * length and width; the benchmark time is the cost of one scenario.
+ */
+@State(Scope.Thread)
+public class DiscretizationDriftBenchmark {
+
+  private static final double FORWARD = 0.5;
+  private static final double ROTATION = 0.5;
+  private static final double DURATION = 2.0;
+
+  @Param({"true", "false"})
+  boolean discretize;
+
+  private double maxWheelSpeed;
+  private double drift;
+
+  @Setup
+  public void setup() {
+    // full speed forward, measured over the last second once the drive has accelerated
+    final SwerveSimulation sim =
+        new SwerveSimulation(new SwerveDriveConfig(), new SimulationConfig());
+    sim.run(1.0, 0.0, 0.0, 2.0);
+    final double y = sim.getY();
+    sim.run(1.0, 0.0, 0.0, 1.0);
+    maxWheelSpeed = sim.getY() - y;
+  }
+
+  @Benchmark
+  public double spinWhileTranslating() {
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    config.maxWheelSpeed = discretize ? maxWheelSpeed : 0.0;
+    final SwerveSimulation sim = new SwerveSimulation(config, new SimulationConfig());
+    sim.run(FORWARD, 0.0, ROTATION, DURATION);
+    drift = sim.getX();
+    return drift;
+  }
+
+  @TearDown(Level.Trial)
+  public void report() {
+    System.out.printf(
+        "discretize=%b max wheel speed=%.2f/s cross-track drift after %.1f s=%.3f%n",
+        discretize, maxWheelSpeed, DURATION, drift);
+  }
+}
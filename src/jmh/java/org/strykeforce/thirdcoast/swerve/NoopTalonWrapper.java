@@ -0,0 +1,54 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
+
+/** Motor controller wrapper with no hardware, so benchmarks measure only the calling code. */
+public class NoopTalonWrapper extends TalonBaseWrapper {
+
+  double position;
+
+  NoopTalonWrapper(int id) {
+    this.id = id;
+  }
+
+  @Override
+  BaseMotorController getController() {
+    return null;
+  }
+
+  @Override
+  public void set(double output) {}
+
+  @Override
+  public void setSensorPosition(double position) {
+    this.position = position;
+  }
+
+  @Override
+  public void setNeutralOutput() {}
+
+  @Override
+  public double getPosition() {
+    return position;
+  }
+
+  @Override
+  public double getAbsPosition() {
+    return position;
+  }
+
+  @Override
+  public double getVelocity() {
+    return 0.0;
+  }
+
+  @Override
+  public double getOutput() {
+    return 0.0;
+  }
+
+  @Override
+  public double getCurrent() {
+    return 0.0;
+  }
+}
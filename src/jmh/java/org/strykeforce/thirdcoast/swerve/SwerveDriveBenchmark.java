@@ -0,0 +1,63 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class SwerveDriveBenchmark {
+
+  private static final int INPUTS = 64;
+
+  @Param({"true", "false"})
+  boolean fieldOriented;
+
+  private final double[] forward = new double[INPUTS];
+  private final double[] strafe = new double[INPUTS];
+  private final double[] azimuth = new double[INPUTS];
+  private SwerveDrive drive;
+  private double time;
+  private int index;
+
+  @Setup
+  public void setup() {
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    final Wheel[] wheels = new Wheel[4];
+    for (int i = 0; i < wheels.length; i++) {
+      wheels[i] =
+          new Wheel(
+              new NoopTalonWrapper(i),
+              new NoopTalonWrapper(i + 10),
+              config.driveSetpointMax,
+              config.azimuthTicks,
+              config.invertError);
+    }
+    final GyroSampleBuffer samples = new GyroSampleBuffer(() -> time);
+    for (int i = 0; i < 64; i++) {
+      samples.addSample(i * 0.005, i * 0.5, 100.0);
+    }
+    config.wheels = wheels;
+    config.gyroSamples = samples;
+    config.clock = () -> time;
+    config.azimuthIdleTimeout = -1.0;
+    drive = new SwerveDrive(config);
+    drive.setFieldOriented(fieldOriented);
+
+    // vary inputs so the JIT can't specialize on constants, and never idle
+    for (int i = 0; i < INPUTS; i++) {
+      final double angle = 2.0 * Math.PI * i / INPUTS;
+      forward[i] = Math.cos(angle);
+      strafe[i] = Math.sin(angle);
+      azimuth[i] = 0.5 * Math.sin(3.0 * angle) + 0.1;
+    }
+  }
+
+  @Benchmark
+  public void drive() {
+    final int i = index++ & (INPUTS - 1);
+    time += 0.02;
+    drive.drive(forward[i], strafe[i], azimuth[i]);
+  }
+}
@@ -0,0 +1,86 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the N-wheel {@link SwerveKinematics#inverse} with the hand-unrolled four-wheel equations
+ * it replaced in {@link SwerveDrive#drive}, on the same wheel base and inputs.
+ */
+@State(Scope.Thread)
+public class SwerveKinematicsBenchmark {
+
+  private static final int INPUTS = 64;
+  private static final int WHEEL_COUNT = 4;
+
+  private final double[] forward = new double[INPUTS];
+  private final double[] strafe = new double[INPUTS];
+  private final double[] azimuth = new double[INPUTS];
+  private final double[] ws = new double[WHEEL_COUNT];
+  private final double[] wa = new double[WHEEL_COUNT];
+  private SwerveKinematics kinematics;
+  private double kLengthComponent;
+  private double kWidthComponent;
+  private int index;
+
+  @Setup
+  public void setup() {
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    kinematics = new SwerveKinematics(config.getWheelLocations());
+    final double radius = Math.hypot(config.length, config.width);
+    kLengthComponent = config.length / radius;
+    kWidthComponent = config.width / radius;
+
+    // vary inputs so the JIT can't specialize on constants, some need normalizing
+    for (int i = 0; i < INPUTS; i++) {
+      final double angle = 2.0 * Math.PI * i / INPUTS;
+      forward[i] = Math.cos(angle);
+      strafe[i] = Math.sin(angle);
+      azimuth[i] = 0.5 * Math.sin(3.0 * angle) + 0.1;
+    }
+  }
+
+  @Benchmark
+  public double inverse() {
+    final int i = index++ & (INPUTS - 1);
+    kinematics.inverse(forward[i], strafe[i], azimuth[i], ws, wa);
+    return ws[0] + wa[3];
+  }
+
+  @Benchmark
+  public double baselineInverse() {
+    final int i = index++ & (INPUTS - 1);
+    fourWheelInverse(forward[i], strafe[i], azimuth[i]);
+    return ws[0] + wa[3];
+  }
+
+  // the original SwerveDrive four-wheel equations
+  private void fourWheelInverse(double forward, double strafe, double azimuth) {
+    final double a = strafe - azimuth * kLengthComponent;
+    final double b = strafe + azimuth * kLengthComponent;
+    final double c = forward - azimuth * kWidthComponent;
+    final double d = forward + azimuth * kWidthComponent;
+
+    // wheel speed
+    ws[0] = Math.hypot(b, d);
+    ws[1] = Math.hypot(b, c);
+    ws[2] = Math.hypot(a, d);
+    ws[3] = Math.hypot(a, c);
+
+    // wheel azimuth
+    wa[0] = Math.atan2(b, d) * 0.5 / Math.PI;
+    wa[1] = Math.atan2(b, c) * 0.5 / Math.PI;
+    wa[2] = Math.atan2(a, d) * 0.5 / Math.PI;
+    wa[3] = Math.atan2(a, c) * 0.5 / Math.PI;
+
+    // normalize wheel speed
+    final double maxWheelSpeed = Math.max(Math.max(ws[0], ws[1]), Math.max(ws[2], ws[3]));
+    if (maxWheelSpeed > 1.0) {
+      for (int i = 0; i < WHEEL_COUNT; i++) {
+        ws[i] /= maxWheelSpeed;
+      }
+    }
+  }
+}
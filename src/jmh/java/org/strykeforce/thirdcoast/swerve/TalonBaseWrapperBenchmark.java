@@ -0,0 +1,23 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class TalonBaseWrapperBenchmark {
+
+  private TalonBaseWrapper wrapper;
+
+  @Setup
+  public void setup() {
+    wrapper = new NoopTalonWrapper(7);
+    wrapper.setSensorPosition(1234.0);
+  }
+
+  @Benchmark
+  public String toStringBenchmark() {
+    return wrapper.toString();
+  }
+}
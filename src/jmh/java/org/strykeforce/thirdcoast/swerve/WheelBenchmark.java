@@ -0,0 +1,30 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class WheelBenchmark {
+
+  /** Azimuth changes under a quarter turn keep drive direction, larger ones invert it. */
+  @Param({"false", "true"})
+  boolean inverted;
+
+  private Wheel wheel;
+  private double azimuth;
+
+  @Setup
+  public void setup() {
+    wheel = new Wheel(new NoopTalonWrapper(0), new NoopTalonWrapper(10), 5500.0, 4096, true);
+    azimuth = inverted ? 0.4 : 0.1;
+  }
+
+  @Benchmark
+  public void set() {
+    // azimuth controller position stays at zero, so every call takes the same branch
+    wheel.set(azimuth, 0.5);
+  }
+}
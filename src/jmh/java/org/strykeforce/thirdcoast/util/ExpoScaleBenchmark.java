@@ -0,0 +1,18 @@
+package org.strykeforce.thirdcoast.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class ExpoScaleBenchmark {
+
+  private final ExpoScale expoScale = new ExpoScale(0.05, 0.6);
+  private double input = -1.0;
+
+  @Benchmark
+  public double apply() {
+    input = input > 1.0 ? -1.0 : input + 0.001;
+    return expoScale.apply(input);
+  }
+}
@@ -0,0 +1,19 @@
+package org.strykeforce.thirdcoast.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class RateLimitBenchmark {
+
+  private final RateLimit rateLimit = new RateLimit(0.04);
+  private double input = -1.0;
+
+  @Benchmark
+  public double apply() {
+    // slow ramp passes through, the wrap from 1 back to -1 is rate limited
+    input = input > 1.0 ? -1.0 : input + 0.003;
+    return rateLimit.apply(input);
+  }
+}
@@ -9,6 +9,13 @@ package frc.robot;
 
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.strykeforce.thirdcoast.swerve.SetpointCoalescer;
+import org.strykeforce.thirdcoast.talon.Errors;
+import org.strykeforce.thirdcoast.telemetry.LatencyHistogram;
+import org.strykeforce.thirdcoast.telemetry.LoopProfiler;
+import org.strykeforce.thirdcoast.telemetry.LoopWatchdog;
+import org.strykeforce.thirdcoast.telemetry.TelemetryEntry;
+import org.strykeforce.thirdcoast.telemetry.TelemetryRegistry;
 
 /**
  * The VM is configured to automatically run this class, and to call the
@@ -19,17 +26,53 @@ import edu.wpi.first.wpilibj2.command.CommandScheduler;
  */
 public class Robot extends TimedRobot {
 
+  /*
+   * scheduler time budget, leaving the rest of the period for mode periodic, LiveWindow and
+   * SmartDashboard updates. Telemetry is shed while the loop runs over budget.
+   */
+  private static final double LOOP_BUDGET = 0.75 * kDefaultPeriod;
+
   private RobotContainer m_robotContainer;
+  private final LoopProfiler m_profiler = LoopProfiler.getInstance();
+  private final LatencyHistogram m_schedulerTiming = m_profiler.register("CommandScheduler run");
+  private final LatencyHistogram m_loopTiming = m_profiler.register("robot loop period");
+  private final LoopWatchdog m_watchdog = new LoopWatchdog(LOOP_BUDGET);
+  private final TelemetryEntry m_overrunsTelemetry =
+      TelemetryRegistry.getInstance().register("loop overruns");
+  private final TelemetryEntry m_errorsTelemetry =
+      TelemetryRegistry.getInstance().register("motor controller errors");
+  private long m_lastLoopStart;
+  private boolean m_matchRunning;
 
   @Override
   public void robotInit() {
     m_robotContainer = new RobotContainer();
     RobotContainer.SWERVE_DRIVE.zeroGyro();
+    m_watchdog.addSheddable(shed -> RobotContainer.SWERVE_DRIVE.setTelemetryEnabled(!shed));
     // logger.debug("Robot initialization complete");
   }
 
+  @Override
+  public void disabledInit() {
+    if (!m_matchRunning) {
+      return;
+    }
+    // end of match, publish loop timing and error counts
+    m_matchRunning = false;
+    m_profiler.publish();
+    m_overrunsTelemetry.set(m_watchdog.getOverruns());
+    m_errorsTelemetry.set(Errors.getCount());
+  }
+
+  @Override
+  public void autonomousInit() {
+    m_profiler.reset();
+    m_matchRunning = true;
+  }
+
   @Override
   public void teleopInit() {
+    m_matchRunning = true;
   }
 
   @Override
@@ -56,6 +99,18 @@ public class Robot extends TimedRobot {
     // and running subsystem periodic() methods. This must be called from the
     // robot's periodic
     // block in order for anything in the Command-based framework to work.
+    final long start = System.nanoTime();
+    if (m_lastLoopStart != 0) {
+      m_loopTiming.record(start - m_lastLoopStart);
+    }
+    m_lastLoopStart = start;
+
     CommandScheduler.getInstance().run();
+
+    final long elapsed = System.nanoTime() - start;
+    m_schedulerTiming.record(elapsed);
+    m_watchdog.record(elapsed);
+    m_profiler.periodic();
+    SetpointCoalescer.updateTelemetry();
   }
 }
@@ -11,6 +11,7 @@ import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.XboxController.Button;
 import edu.wpi.first.wpilibj2.command.button.JoystickButton;
+import edu.wpi.first.wpilibj2.command.button.POVButton;
 import frc.robot.commands.TeleopSwerveDriveCommand;
 import frc.robot.subsystems.DriveSubsystem;
 
@@ -28,9 +29,15 @@ public class RobotContainer {
 
   public RobotContainer() {
 
-    if (RobotBase.isReal()) {
+    SWERVE_DRIVE.setDefaultCommand(new TeleopSwerveDriveCommand());
+
+    // Snap to field headings with the D-pad, its angle is clockwise like the gyro
+    for (int heading = 0; heading < 360; heading += 90) {
+      final int snap = heading;
+      new POVButton(CONTROLS, snap).whenPressed(() -> SWERVE_DRIVE.snapHeading(snap));
+    }
 
-      SWERVE_DRIVE.setDefaultCommand(new TeleopSwerveDriveCommand());
+    if (RobotBase.isReal()) {
 
       // Zero Gyro Command
       new JoystickButton(CONTROLS, Button.kA.value).whenPressed(() -> SWERVE_DRIVE.zeroGyro());
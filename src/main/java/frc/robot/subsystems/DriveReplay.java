@@ -0,0 +1,34 @@
+package frc.robot.subsystems;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.strykeforce.thirdcoast.replay.SwerveReplay;
+import org.strykeforce.thirdcoast.swerve.GainTuner;
+
+/**
+ * Replays a swerve data log from the robot with the robot's drive configuration, including its
+ * heading controller, drive power budget and tuned gains. Run from the project directory on the
+ * desktop, so the gains are read from src/main/deploy, with:
+ *
+ * <pre>
+ * java -cp robot.jar frc.robot.subsystems.DriveReplay swerve.tclog
+ * </pre>
+ */
+public final class DriveReplay {
+
+    private DriveReplay() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: DriveReplay <log file>");
+            System.exit(1);
+        }
+        final var gainTuner = new GainTuner(Paths.get("src", "main", "deploy", GainTuner.FILE_NAME),
+                GainTuner.TABLE);
+        if (!SwerveReplay.replay(Paths.get(args[0]), DriveSubsystem.getConfig(gainTuner))) {
+            System.exit(2);
+        }
+    }
+}
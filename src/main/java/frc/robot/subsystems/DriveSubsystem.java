@@ -2,17 +2,35 @@ package frc.robot.subsystems;
 
 import com.kauailabs.navx.frc.AHRS;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.strykeforce.thirdcoast.log.DataLogger;
+import org.strykeforce.thirdcoast.sim.SimulationConfig;
+import org.strykeforce.thirdcoast.sim.SwerveSimulation;
+import org.strykeforce.thirdcoast.swerve.GainTuner;
+import org.strykeforce.thirdcoast.swerve.HeadingController;
 import org.strykeforce.thirdcoast.swerve.MotorControllerConfig;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfigurator;
+import org.strykeforce.thirdcoast.swerve.MotorControllerWrapper;
+import org.strykeforce.thirdcoast.swerve.Pose;
+import org.strykeforce.thirdcoast.swerve.ProfilingMotorControllerWrapper;
 import org.strykeforce.thirdcoast.swerve.SparkMaxWrapper;
 import org.strykeforce.thirdcoast.swerve.SwerveDrive;
 import org.strykeforce.thirdcoast.swerve.SwerveDriveConfig;
+import org.strykeforce.thirdcoast.swerve.SwerveOdometry;
 import org.strykeforce.thirdcoast.swerve.TalonSRXWrapper;
 import org.strykeforce.thirdcoast.swerve.Wheel;
 import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.AzimuthMotorController;
 import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.FeedbackSensor;
 import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.MotorType;
+import org.strykeforce.thirdcoast.telemetry.TelemetryPublisher;
 
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.SPI;
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
 public class DriveSubsystem extends SubsystemBase {
@@ -22,17 +40,112 @@ public class DriveSubsystem extends SubsystemBase {
     private static final double DRIVE_SETPOINT_MAX = 5500.;
     private static final int AZIMUTH_TICKS = 4096;
 
+    /* field distance per drive motor rotation, wheel circumference / drive gear ratio */
+    private static final double DRIVE_DISTANCE_PER_UNIT = 1.;
+    private static final double ODOMETRY_PERIOD = SwerveOdometry.DEFAULT_PERIOD;
+
+    /* telemetry NetworkTables publishing period, independent of the control loop */
+    private static final double TELEMETRY_PERIOD = TelemetryPublisher.DEFAULT_PERIOD;
+
+    /*
+     * binary swerve data log, the logs of the two previous robot program starts are kept as
+     * swerve.tclog.1 and .2. Convert to CSV on the desktop with
+     * org.strykeforce.thirdcoast.log.DataLogDecoder. Only enabled cycles are logged, the records
+     * hold over 8 minutes of driving at the control loop rate
+     */
+    private static final String DATA_LOG_FILE = "/home/lvuser/swerve.tclog";
+    private static final long DATA_LOG_MAX_RECORDS = 100_000;
+
+    /*
+     * swerve control loop period, 0.002 - 0.01 runs the drive on its own thread at 500 - 100 Hz,
+     * 0 runs it from the command scheduler. Odometry integrates each sensor snapshot the drive
+     * captures, so the drive runs at the odometry rate on the robot
+     */
+    private static final double CONTROL_LOOP_PERIOD = ODOMETRY_PERIOD;
+
+    /*
+     * closed-loop gains are read from deploy/gains.properties at startup and can then be tuned from
+     * the file or the Gains NetworkTables table, see org.strykeforce.thirdcoast.swerve.GainTuner
+     */
+    private static final double GAIN_TUNER_PERIOD = GainTuner.DEFAULT_PERIOD;
+
+    /*
+     * drive wheel speeds are scaled down together to keep the drive motors within this total
+     * supply current and above this battery voltage, see
+     * org.strykeforce.thirdcoast.swerve.DrivePowerManager
+     */
+    private static final double MAX_DRIVE_SUPPLY_CURRENT = 160.;
+    private static final double MIN_BUS_VOLTAGE = 7.5;
+
+    /*
+     * hold the heading captured when the yaw stick is released and snap to field headings on
+     * request, see org.strykeforce.thirdcoast.swerve.HeadingController. Gains are yaw output per
+     * degree and per degree/sec, HEADING_KF is the inverse of the rotation rate at full yaw.
+     * Off until the gains are tuned on the robot
+     */
+    private static final boolean HEADING_HOLD = false;
+    private static final double HEADING_KP = 0.05;
+    private static final double HEADING_KD = 0.002;
+    private static final double HEADING_KF = 1. / 260.;
+    private static final double HEADING_MAX_RATE = 180.;
+    private static final double HEADING_MAX_ACCELERATION = 720.;
+    private static final double HEADING_MAX_OUTPUT = 1.;
+    private static final double HEADING_TOLERANCE = 2.;
+
+    /* seconds of zero drive input after which the azimuths are disabled until the next input */
+    private static final double AZIMUTH_IDLE_TIMEOUT = 0.5;
+
+    /* time every motor controller call and count error codes, reported by the loop profiler */
+    private static final boolean PROFILE_MOTOR_CONTROLLERS = false;
+
     /*
      * if wheels form an x pattern when only applying yaw (right x stick), change to
      * false: hardware dependent
      */
     private static final boolean INVERT_ERROR = true;
 
-    private final SwerveDrive swerve = getSwerve();
+    private final GainTuner gainTuner = new GainTuner();
+
+    /* in the WPILib simulator, the drive runs against physics-backed simulated controllers */
+    private final SwerveSimulation simulation = RobotBase.isSimulation() ? getSimulation() : null;
+    private final SwerveDrive swerve = simulation != null ? simulation.getDrive() : getSwerve();
+    private final SwerveOdometry odometry = new SwerveOdometry(swerve, DRIVE_DISTANCE_PER_UNIT);
+    private final TelemetryPublisher telemetry = new TelemetryPublisher();
+    private final DataLogger dataLogger = RobotBase.isReal()
+            ? new DataLogger(Paths.get(DATA_LOG_FILE), swerve.getDataLogFields(),
+                    DATA_LOG_MAX_RECORDS)
+            : null;
 
     public DriveSubsystem() {
         swerve.setFieldOriented(true);
-        zeroAzimuths();
+        if (simulation == null) {
+            zeroAzimuths();
+        }
+        odometry.start(ODOMETRY_PERIOD);
+        telemetry.start(TELEMETRY_PERIOD);
+        // gain changes are applied by the drive, on the thread that runs the motor controllers
+        swerve.setGainTuner(gainTuner);
+        gainTuner.start(GAIN_TUNER_PERIOD);
+        if (dataLogger != null) {
+            dataLogger.start();
+        }
+        // the simulation steps the drive from simulationPeriodic
+        if (CONTROL_LOOP_PERIOD > 0 && simulation == null) {
+            swerve.startControlLoop(CONTROL_LOOP_PERIOD);
+        }
+    }
+
+    @Override
+    public void periodic() {
+        // the control loop runs while disabled too, only log the cycles that drive the robot
+        if (dataLogger != null) {
+            swerve.setDataLogger(DriverStation.getInstance().isEnabled() ? dataLogger : null);
+        }
+    }
+
+    @Override
+    public void simulationPeriodic() {
+        simulation.step(TimedRobot.kDefaultPeriod);
     }
 
     /**
@@ -41,14 +154,88 @@ public class DriveSubsystem extends SubsystemBase {
      * @return A swerve drive based on the given configuration
      */
     private SwerveDrive getSwerve() {
+        final var config = getConfig(gainTuner);
+        // navX samples and drive positions at the odometry rate
+        config.gyro = new AHRS(SPI.Port.kMXP, (byte) Math.round(1. / ODOMETRY_PERIOD));
+        config.driveConfig.feedbackStatusFramePeriod = (int) Math.round(ODOMETRY_PERIOD * 1000.);
+        config.profileMotorControllers = PROFILE_MOTOR_CONTROLLERS;
+
+        var wheels = new Wheel[4];
+
+        // IDS to use for swerve motors
+        final var dID = new int[] { 2, 3, 8, 1 };
+        final var aID = new int[] { 7, 6, 5, 4 };
+
+        // Create the motor controllers, configuring them concurrently below
+        final var azimuths = new MotorControllerWrapper[4];
+        final var drives = new MotorControllerWrapper[4];
+        for (int i = 0; i < 4; i++) {
+            azimuths[i] = new TalonSRXWrapper(config.azimuthConfig, aID[i], false);
+            drives[i] = new SparkMaxWrapper(config.driveConfig, dID[i], false);
+            if (config.profileMotorControllers) {
+                azimuths[i] = new ProfilingMotorControllerWrapper(azimuths[i]);
+                drives[i] = new ProfilingMotorControllerWrapper(drives[i]);
+            }
+        }
+        final var controllers = new ArrayList<MotorControllerWrapper>(List.of(azimuths));
+        controllers.addAll(List.of(drives));
+        final var configurator = new MotorControllerConfigurator(config.configurationThreads);
+        configurator.configure(controllers);
+        //logger.info("swerve motor controllers: {}", configurator);
+        gainTuner.add("azimuth", config.azimuthConfig, azimuths);
+        gainTuner.add("drive", config.driveConfig, drives);
+
+        // Create the swerve wheels
+        for (int i = 0; i < 4; i++) {
+            final var wheel = new Wheel(azimuths[i], drives[i], DRIVE_SETPOINT_MAX, AZIMUTH_TICKS, INVERT_ERROR);
+
+            //DO NOT TOUCH 1
+
+            wheels[i] = wheel;
+        }
+        // Set the swerve drives wheels
+        config.wheels = wheels;
+        return new SwerveDrive(config);
+    }
+
+    /**
+     * Generate a simulated swerve drive with the same configuration as the robot.
+     *
+     * @return the simulation
+     */
+    private SwerveSimulation getSimulation() {
+        final var config = getConfig(gainTuner);
+        // simulated controllers read their slot gains from the config, so no controllers to update
+        gainTuner.add("azimuth", config.azimuthConfig);
+        gainTuner.add("drive", config.driveConfig);
+        return new SwerveSimulation(config, new SimulationConfig());
+    }
+
+    /**
+     * Generate the swerve drive configuration shared by the robot and simulation.
+     *
+     * @param gainTuner the tuner to load tuned gains from
+     * @return the swerve drive configuration, without wheels or gyro
+     */
+    static SwerveDriveConfig getConfig(GainTuner gainTuner) {
         final var config = new SwerveDriveConfig();
 
         // Setup General Robot
-        config.gyro = new AHRS(SPI.Port.kMXP);
         config.length = ROBOT_LENGTH;
         config.width = ROBOT_WIDTH;
+        config.driveSetpointMax = DRIVE_SETPOINT_MAX;
+        config.azimuthTicks = AZIMUTH_TICKS;
+        config.invertError = INVERT_ERROR;
         config.gyroLoggingEnabled = true;
         config.summarizeTalonErrors = true;
+        config.azimuthIdleTimeout = AZIMUTH_IDLE_TIMEOUT;
+        config.maxDriveSupplyCurrent = MAX_DRIVE_SUPPLY_CURRENT;
+        config.minBusVoltage = MIN_BUS_VOLTAGE;
+        if (HEADING_HOLD) {
+            config.headingController = new HeadingController(HEADING_KP, HEADING_KD, HEADING_KF,
+                    HEADING_MAX_RATE, HEADING_MAX_ACCELERATION, HEADING_MAX_OUTPUT,
+                    HEADING_TOLERANCE);
+        }
 
         // Configure our motor types
         config.azimuthConfig = new MotorControllerConfig(AzimuthMotorController.TALON_SRX,
@@ -75,35 +262,25 @@ public class DriveSubsystem extends SubsystemBase {
         config.azimuthConfig.motionAcceleration = 10_000;
         config.azimuthConfig.motionCruiseVelocity = 800;
 
-        var wheels = new Wheel[4];
-
-        // IDS to use for swerve motors
-        final var dID = new int[] { 2, 3, 8, 1 };
-        final var aID = new int[] { 7, 6, 5, 4 };
-
-        // Create the swerve wheels
-        for (int i = 0; i < 4; i++) {
-            final var azimuth = new TalonSRXWrapper(config.azimuthConfig, aID[i]);
-            final var drive = new SparkMaxWrapper(config.driveConfig, dID[i]);
-            final var wheel = new Wheel(azimuth, drive, DRIVE_SETPOINT_MAX, AZIMUTH_TICKS, INVERT_ERROR);
-
-            //DO NOT TOUCH 1
-
-            wheels[i] = wheel;
-        }
-        // Set the swerve drives wheels
-        config.wheels = wheels;
-        return new SwerveDrive(config);
+        // Tuned gains override the defaults above
+        gainTuner.load("azimuth", config.azimuthConfig);
+        gainTuner.load("drive", config.driveConfig);
+        return config;
     }
 
     /**
-     * Zero the NavX Gyro
+     * Zero the NavX Gyro and hold the zeroed heading if holding one
      */
     public void zeroGyro() {
-        final var gyro = swerve.getGyro();
-        gyro.setAngleAdjustment(0);
-        var adj = gyro.getAngle() % 360;
-        gyro.setAngleAdjustment(-adj);
+        if (simulation != null) {
+            simulation.getGyro().setAngle(0);
+        } else {
+            final var gyro = swerve.getGyro();
+            gyro.setAngleAdjustment(0);
+            var adj = gyro.getAngle() % 360;
+            gyro.setAngleAdjustment(-adj);
+        }
+        swerve.resetHeadingHold();
     }
 
     /**
@@ -117,6 +294,28 @@ public class DriveSubsystem extends SubsystemBase {
         swerve.drive(fwd, str, yaw);
     }
 
+    /**
+     * Drive the swerve, rotating about a point other than the robot center
+     * 
+     * @param fwd y axis of the swerve
+     * @param str x axis of the swerve
+     * @param yaw yaw of the swerve
+     * @param centerX robot-relative x of the center of rotation, positive right
+     * @param centerY robot-relative y of the center of rotation, positive forward
+     */
+    public void drive(double fwd, double str, double yaw, double centerX, double centerY) {
+        swerve.drive(fwd, str, yaw, centerX, centerY);
+    }
+
+    /**
+     * Turn to a field heading and hold it, if heading hold is enabled
+     * 
+     * @param heading field heading in degrees, clockwise from the gyro zero
+     */
+    public void snapHeading(double heading) {
+        swerve.snapHeading(heading);
+    }
+
     /**
      * Zero all of the azmiuths.
      */
@@ -124,7 +323,35 @@ public class DriveSubsystem extends SubsystemBase {
         swerve.zeroAzimuthEncoders();
     }
 
+    /**
+     * Pause or resume NetworkTables telemetry publishing, values continue to be recorded.
+     *
+     * @param enabled true to publish
+     */
+    public void setTelemetryEnabled(boolean enabled) {
+        telemetry.setEnabled(enabled);
+    }
+
     public void saveAzimuthPositions() {
         swerve.saveAzimuthPositions();
     }
+
+    /**
+     * Copy the latest odometry pose estimate, does not block the odometry thread.
+     *
+     * @param pose the pose to update
+     */
+    public void getPose(Pose pose) {
+        odometry.getPose(pose);
+    }
+
+    /**
+     * Reset the odometry field position.
+     *
+     * @param x field x position
+     * @param y field y position
+     */
+    public void resetPose(double x, double y) {
+        odometry.reset(x, y);
+    }
 }
\ No newline at end of file
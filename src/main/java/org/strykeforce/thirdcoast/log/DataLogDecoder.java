@@ -0,0 +1,131 @@
+package org.strykeforce.thirdcoast.log;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Converts a {@link DataLogger} file to CSV. Runs on the desktop with no robot dependencies:
+ *
+ * <pre>
+ * java -cp robot.jar org.strykeforce.thirdcoast.log.DataLogDecoder swerve.tclog [swerve.csv]
+ * </pre>
+ *
+ * <p>The log header is, in big-endian order: int magic, int version, int field count, long record
+ * count, then for each field a short byte length followed by its UTF-8 name, padded to a multiple
+ * of 8 bytes. Records follow as field count doubles each.
+ */
+public class DataLogDecoder {
+
+  private final String[] fields;
+  private final ByteBuffer records;
+  private final long recordCount;
+
+  /**
+   * Open a log file.
+   *
+   * @param path the log file
+   * @throws IOException if the file can't be read or is not a data log
+   */
+  public DataLogDecoder(Path path) throws IOException {
+    final ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.remaining() < 20 || buffer.getInt() != DataLogger.MAGIC) {
+      throw new IOException("not a data log: " + path);
+    }
+    final int version = buffer.getInt();
+    if (version != DataLogger.VERSION) {
+      throw new IOException("unsupported data log version " + version + ": " + path);
+    }
+    fields = new String[buffer.getInt()];
+    recordCount = buffer.getLong();
+    for (int i = 0; i < fields.length; i++) {
+      final byte[] name = new byte[buffer.getShort()];
+      buffer.get(name);
+      fields[i] = new String(name, StandardCharsets.UTF_8);
+    }
+    buffer.position((buffer.position() + 7) & ~7);
+    records = buffer.slice();
+  }
+
+  /**
+   * Returns the record field names.
+   *
+   * @return the field names
+   */
+  public String[] getFields() {
+    return fields.clone();
+  }
+
+  /**
+   * Returns the number of records in the log.
+   *
+   * @return the record count
+   */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Read a record.
+   *
+   * @param index the record number
+   * @param record array to read the record fields into
+   */
+  public void read(long index, double[] record) {
+    if (index < 0 || index >= recordCount) {
+      throw new IndexOutOfBoundsException("record " + index + " of " + recordCount);
+    }
+    final int base = (int) (index * fields.length * 8);
+    for (int i = 0; i < fields.length; i++) {
+      record[i] = records.getDouble(base + i * 8);
+    }
+  }
+
+  /**
+   * Write the log as CSV with a header row of field names.
+   *
+   * @param out the CSV destination
+   */
+  public void writeCsv(PrintWriter out) {
+    out.println(String.join(",", fields));
+    final double[] record = new double[fields.length];
+    final StringBuilder line = new StringBuilder();
+    for (long r = 0; r < recordCount; r++) {
+      read(r, record);
+      line.setLength(0);
+      for (int i = 0; i < record.length; i++) {
+        if (i > 0) {
+          line.append(',');
+        }
+        line.append(record[i]);
+      }
+      out.println(line);
+    }
+    out.flush();
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("usage: DataLogDecoder <log file> [csv file]");
+      System.exit(1);
+    }
+    final DataLogDecoder decoder = new DataLogDecoder(Paths.get(args[0]));
+    if (args.length == 1) {
+      decoder.writeCsv(new PrintWriter(System.out));
+      return;
+    }
+    try (PrintWriter out =
+        new PrintWriter(Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8))) {
+      decoder.writeCsv(out);
+    }
+  }
+}
@@ -0,0 +1,306 @@
+package org.strykeforce.thirdcoast.log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-schema binary data logger.
+ *
+ * <p>Each record is a fixed number of double fields. A single producer, typically the drive control
+ * thread, claims a record with {@link #tryClaim()}, writes every field in order with {@link
+ * #put(double)} and publishes it with {@link #commit()}. Records are buffered in a preallocated
+ * ring and written by a background thread to a memory-mapped file, so the producer never blocks,
+ * allocates or performs I/O. If the ring or file is full, records are dropped and counted.
+ *
+ * <p>The file starts with a header, described in {@link DataLogDecoder}, followed by the records as
+ * big-endian doubles. Use {@link DataLogDecoder} to convert a log to CSV.
+ *
+ * <p>Starting a logger renames earlier logs at its path by appending {@code .1}, {@code .2} and so
+ * on, newest first, so the log of a run cut short by a brownout or a code restart survives it.
+ */
+public class DataLogger {
+
+  static final int MAGIC = 0x54434C47; // "TCLG"
+  static final int VERSION = 1;
+  static final int RECORD_COUNT_OFFSET = 12;
+
+  /** Default ring buffer capacity in records. */
+  public static final int DEFAULT_RING_CAPACITY = 256;
+
+  /** Default number of earlier logs kept when a logger is started. */
+  public static final int DEFAULT_RETAINED_LOGS = 2;
+
+  private static final long DRAIN_PERIOD_NANOS = 5_000_000L;
+
+  private final Path path;
+  private final String[] fields;
+  private final int width;
+  private final long maxRecords;
+  private final int retainedLogs;
+  private final double[] ring;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  // producer state
+  private int cursor;
+  private int end;
+
+  // drainer state
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int headerSize;
+  private long written;
+  private Thread thread;
+  private volatile boolean running;
+
+  /**
+   * Construct a logger with the default ring capacity and number of retained logs.
+   *
+   * @param path the log file, earlier logs are renamed when started
+   * @param fields record field names, in the order they are written
+   * @param maxRecords maximum number of records written to the file
+   */
+  public DataLogger(Path path, String[] fields, long maxRecords) {
+    this(path, fields, maxRecords, DEFAULT_RING_CAPACITY, DEFAULT_RETAINED_LOGS);
+  }
+
+  /**
+   * Construct a logger with the default number of retained logs.
+   *
+   * @param path the log file, earlier logs are renamed when started
+   * @param fields record field names, in the order they are written
+   * @param maxRecords maximum number of records written to the file
+   * @param ringCapacity number of records buffered between the producer and the file, rounded up
+   *     to a power of two
+   */
+  public DataLogger(Path path, String[] fields, long maxRecords, int ringCapacity) {
+    this(path, fields, maxRecords, ringCapacity, DEFAULT_RETAINED_LOGS);
+  }
+
+  /**
+   * Construct a logger.
+   *
+   * @param path the log file, earlier logs are renamed when started
+   * @param fields record field names, in the order they are written
+   * @param maxRecords maximum number of records written to the file
+   * @param ringCapacity number of records buffered between the producer and the file, rounded up
+   *     to a power of two
+   * @param retainedLogs number of earlier logs kept when started, 0 to overwrite the log
+   */
+  public DataLogger(
+      Path path, String[] fields, long maxRecords, int ringCapacity, int retainedLogs) {
+    if (fields.length == 0) {
+      throw new IllegalArgumentException("data log requires at least one field");
+    }
+    if (maxRecords < 1 || ringCapacity < 1) {
+      throw new IllegalArgumentException("maxRecords and ringCapacity must be positive");
+    }
+    if (retainedLogs < 0) {
+      throw new IllegalArgumentException("retainedLogs must not be negative: " + retainedLogs);
+    }
+    if (maxRecords > (Integer.MAX_VALUE - 65536L) / (fields.length * 8L)) {
+      throw new IllegalArgumentException("data log file must be smaller than 2 GB: " + maxRecords);
+    }
+    this.path = path;
+    this.fields = fields.clone();
+    this.width = fields.length;
+    this.maxRecords = maxRecords;
+    this.retainedLogs = retainedLogs;
+    final int capacity = Integer.highestOneBit(Math.max(1, ringCapacity - 1)) << 1;
+    ring = new double[capacity * width];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Rename earlier logs, create and map the log file and start the background writer thread.
+   *
+   * @throws UncheckedIOException if the file can't be created
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    final byte[][] names = new byte[width][];
+    int size = 20;
+    for (int i = 0; i < width; i++) {
+      names[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+      size += 2 + names[i].length;
+    }
+    headerSize = (size + 7) & ~7;
+
+    try {
+      rotate();
+      channel =
+          FileChannel.open(
+              path,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize + maxRecords * width * 8);
+    } catch (IOException e) {
+      throw new UncheckedIOException("unable to create data log " + path, e);
+    }
+
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putLong(0L);
+    for (byte[] name : names) {
+      buffer.putShort((short) name.length).put(name);
+    }
+    buffer.position(headerSize);
+
+    running = true;
+    thread = new Thread(this::run, "DataLogger");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+
+  /** Rename the log to {@code .1} and each earlier {@code .n} to {@code .n+1}, oldest deleted. */
+  private void rotate() throws IOException {
+    if (retainedLogs == 0) {
+      return;
+    }
+    final String name = path.getFileName().toString();
+    Files.deleteIfExists(path.resolveSibling(name + "." + retainedLogs));
+    for (int i = retainedLogs - 1; i >= 1; i--) {
+      final Path older = path.resolveSibling(name + "." + i);
+      if (Files.exists(older)) {
+        Files.move(
+            older, path.resolveSibling(name + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    if (Files.exists(path)) {
+      Files.move(path, path.resolveSibling(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /** Write any buffered records, flush the file and stop the writer thread. */
+  public synchronized void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+      buffer.force();
+      channel.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      throw new UncheckedIOException("unable to close data log " + path, e);
+    }
+  }
+
+  /**
+   * Claim the next record. If this returns true, the producer must write every field with {@link
+   * #put(double)} and then call {@link #commit()}. Only one thread may produce records.
+   *
+   * @return true if claimed, false if the logger is stopped or full and the record is dropped
+   */
+  public boolean tryClaim() {
+    final long h = head.get();
+    if (!running || h - tail.get() > mask) {
+      dropped.incrementAndGet();
+      return false;
+    }
+    cursor = (int) (h & mask) * width;
+    end = cursor + width;
+    return true;
+  }
+
+  /**
+   * Write the next field of the claimed record.
+   *
+   * @param value the field value
+   */
+  public void put(double value) {
+    if (cursor < end) {
+      ring[cursor++] = value;
+    }
+  }
+
+  /** Publish the claimed record to the writer thread. */
+  public void commit() {
+    while (cursor < end) {
+      ring[cursor++] = Double.NaN;
+    }
+    head.lazySet(head.get() + 1);
+  }
+
+  /**
+   * Returns the record field names.
+   *
+   * @return a copy of the field names
+   */
+  public String[] getFields() {
+    return fields.clone();
+  }
+
+  /**
+   * Returns the number of fields per record.
+   *
+   * @return the field count
+   */
+  public int getFieldCount() {
+    return width;
+  }
+
+  /**
+   * Returns the number of records dropped because the ring or file was full.
+   *
+   * @return the dropped record count
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  /**
+   * Returns the log file path.
+   *
+   * @return the path
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  private void run() {
+    while (running) {
+      drain();
+      LockSupport.parkNanos(this, DRAIN_PERIOD_NANOS);
+    }
+    drain();
+  }
+
+  private void drain() {
+    final long h = head.get();
+    long t = tail.get();
+    if (t == h) {
+      return;
+    }
+    for (; t < h; t++) {
+      if (written == maxRecords) {
+        dropped.addAndGet(h - t);
+        break;
+      }
+      final int base = (int) (t & mask) * width;
+      for (int i = 0; i < width; i++) {
+        buffer.putDouble(ring[base + i]);
+      }
+      written++;
+    }
+    tail.lazySet(h);
+    buffer.putLong(RECORD_COUNT_OFFSET, written);
+  }
+}
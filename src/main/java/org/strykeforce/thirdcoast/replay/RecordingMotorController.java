@@ -0,0 +1,149 @@
+package org.strykeforce.thirdcoast.replay;
+
+import org.strykeforce.thirdcoast.swerve.MotorControllerWrapper;
+
+/**
+ * Motor controller stand-in that records what it is commanded and returns sensor values set by the
+ * caller. Used to run a swerve drive without hardware.
+ */
+public class RecordingMotorController implements MotorControllerWrapper {
+
+  private final int id;
+  private DriveMode driveMode = DriveMode.TELEOP;
+
+  /** Value returned by {@link #getPosition()}. */
+  public double position;
+
+  /** Value returned by {@link #getAbsPosition()}. */
+  public double absPosition;
+
+  /** Value returned by {@link #getVelocity()}. */
+  public double velocity;
+
+  /** Value returned by {@link #getOutput()}. */
+  public double output;
+
+  /** Value returned by {@link #getCurrent()}. */
+  public double current;
+
+  private double setpoint;
+  private boolean written;
+  private boolean neutral;
+
+  /**
+   * Construct a controller.
+   *
+   * @param id the device ID
+   */
+  public RecordingMotorController(int id) {
+    this.id = id;
+  }
+
+  @Override
+  public void set(double output) {
+    setpoint = output;
+    written = true;
+    neutral = false;
+  }
+
+  @Override
+  public void setSensorPosition(double position) {
+    this.position = position;
+  }
+
+  @Override
+  public void setNeutralOutput() {
+    written = true;
+    neutral = true;
+  }
+
+  @Override
+  public double getPosition() {
+    return position;
+  }
+
+  @Override
+  public double getAbsPosition() {
+    return absPosition;
+  }
+
+  @Override
+  public double getVelocity() {
+    return velocity;
+  }
+
+  @Override
+  public double getOutput() {
+    return output;
+  }
+
+  @Override
+  public double getCurrent() {
+    return current;
+  }
+
+  @Override
+  public int getDeviceID() {
+    return id;
+  }
+
+  @Override
+  public void setDriveMode(DriveMode mode) {
+    driveMode = mode;
+  }
+
+  /**
+   * Returns the drive mode most recently set.
+   *
+   * @return the drive mode
+   */
+  public DriveMode getDriveMode() {
+    return driveMode;
+  }
+
+  /**
+   * Returns the most recent setpoint passed to {@link #set(double)}.
+   *
+   * @return the setpoint
+   */
+  public double getSetpoint() {
+    return setpoint;
+  }
+
+  /**
+   * Returns true if the controller was set or set to neutral since the last {@link #clear()}.
+   *
+   * @return true if written
+   */
+  public boolean isWritten() {
+    return written;
+  }
+
+  /**
+   * Returns true if the most recent write was {@link #setNeutralOutput()}.
+   *
+   * @return true if neutral
+   */
+  public boolean isNeutral() {
+    return neutral;
+  }
+
+  /** Reset the written flag before a control cycle. */
+  public void clear() {
+    written = false;
+  }
+
+  @Override
+  public String toString() {
+    return "RecordingMotorController{"
+        + "id="
+        + id
+        + ", setpoint="
+        + setpoint
+        + ", position="
+        + position
+        + ", neutral="
+        + neutral
+        + '}';
+  }
+}
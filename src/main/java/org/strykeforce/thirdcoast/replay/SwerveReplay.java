@@ -0,0 +1,349 @@
+package org.strykeforce.thirdcoast.replay;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import org.strykeforce.thirdcoast.log.DataLogDecoder;
+import org.strykeforce.thirdcoast.swerve.AzimuthEstimator;
+import org.strykeforce.thirdcoast.swerve.GyroSampleBuffer;
+import org.strykeforce.thirdcoast.swerve.SwerveDrive;
+import org.strykeforce.thirdcoast.swerve.SwerveDriveConfig;
+import org.strykeforce.thirdcoast.swerve.Wheel;
+
+/**
+ * Replays a swerve data log through {@link SwerveDrive#drive(double, double, double)} and compares
+ * the resulting wheel commands with those recorded on the robot.
+ *
+ * <p>The drive is built from the supplied configuration with {@link RecordingMotorController}
+ * stand-ins for every motor controller and a virtual clock. Each logged cycle restores the azimuth
+ * sensor readings, including the absolute position fused by an {@link AzimuthEstimator}, the drive
+ * output and current and the bus voltage read by the drive power budget, and feeds the logged gyro
+ * angle and rate into a {@link GyroSampleBuffer} in place of the navX, so the drive sees the same
+ * inputs it saw on the robot. Cycles run back-to-back as fast as the CPU allows. The applied power
+ * scale is compared along with the wheel commands.
+ *
+ * <p>Azimuth estimators are reset with no offset before the first record, since the log has the
+ * absolute positions of zeroed estimators in the relative encoder's frame. Logs should start after
+ * the azimuths are zeroed, as in {@code DriveSubsystem}.
+ *
+ * <p>Drive setpoints are compared before closed-loop scaling, so the replay drive is left in the
+ * default open-loop drive mode. The replay configuration must match the robot's, including its
+ * heading controller and drive power budget; {@code frc.robot.subsystems.DriveReplay} replays with
+ * the robot configuration. The default configuration can be replayed from the desktop with:
+ *
+ * <pre>
+ * java -cp robot.jar org.strykeforce.thirdcoast.replay.SwerveReplay swerve.tclog [length width]
+ * </pre>
+ */
+public class SwerveReplay {
+
+  private final DataLogDecoder log;
+  private final SwerveDrive drive;
+  private final GyroSampleBuffer gyroSamples;
+  private final RecordingMotorController[] azimuths;
+  private final RecordingMotorController[] drives;
+  private final double gyroActuationDelay;
+  private final double[] record;
+  private double time;
+  private double voltage;
+  private double tolerance = 1e-9;
+
+  // field indexes
+  private final int timestamp;
+  private final int forward;
+  private final int strafe;
+  private final int azimuth;
+  private final int gyroAngle;
+  private final int gyroRate;
+  private final int busVoltage;
+  private final int powerScale;
+  private final int[] azimuthPosition;
+  private final int[] azimuthAbsPosition;
+  private final int[] azimuthVelocity;
+  private final int[] azimuthOutput;
+  private final int[] azimuthCurrent;
+  private final int[] driveOutput;
+  private final int[] driveCurrent;
+  private final int[] azimuthSetpoint;
+  private final int[] driveSetpoint;
+
+  // results
+  private long records;
+  private long mismatchedRecords;
+  private long firstMismatch = -1;
+  private double maxAzimuthError;
+  private double maxDriveError;
+  private long elapsedNanos;
+
+  /**
+   * Construct a replay. The configuration's wheels, gyro, clock and gyro samples are replaced.
+   *
+   * @param log the data log to replay
+   * @param config the drive configuration used on the robot
+   * @throws IllegalArgumentException if the log does not match the configured wheel count
+   */
+  public SwerveReplay(DataLogDecoder log, SwerveDriveConfig config) {
+    this.log = log;
+    final int wheelCount = config.getWheelLocations().length;
+    final String[] fields = log.getFields();
+    record = new double[fields.length];
+
+    timestamp = indexOf(fields, "timestamp");
+    forward = indexOf(fields, "forward");
+    strafe = indexOf(fields, "strafe");
+    azimuth = indexOf(fields, "azimuth");
+    gyroAngle = indexOf(fields, "gyro_angle");
+    gyroRate = indexOf(fields, "gyro_rate");
+    busVoltage = indexOf(fields, "bus_voltage");
+    powerScale = indexOf(fields, "power_scale");
+    azimuthPosition = indexesOf(fields, "azimuth_position", wheelCount);
+    azimuthAbsPosition = indexesOf(fields, "azimuth_abs_position", wheelCount);
+    azimuthVelocity = indexesOf(fields, "azimuth_velocity", wheelCount);
+    azimuthOutput = indexesOf(fields, "azimuth_output", wheelCount);
+    azimuthCurrent = indexesOf(fields, "azimuth_current", wheelCount);
+    driveOutput = indexesOf(fields, "drive_output", wheelCount);
+    driveCurrent = indexesOf(fields, "drive_current", wheelCount);
+    azimuthSetpoint = indexesOf(fields, "azimuth_setpoint", wheelCount);
+    driveSetpoint = indexesOf(fields, "drive_setpoint", wheelCount);
+
+    azimuths = new RecordingMotorController[wheelCount];
+    drives = new RecordingMotorController[wheelCount];
+    final Wheel[] wheels = new Wheel[wheelCount];
+    for (int i = 0; i < wheelCount; i++) {
+      azimuths[i] = new RecordingMotorController(i);
+      drives[i] = new RecordingMotorController(i + 10);
+      wheels[i] =
+          new Wheel(
+              azimuths[i],
+              drives[i],
+              config.driveSetpointMax,
+              config.azimuthTicks,
+              config.invertError);
+    }
+
+    gyroSamples = new GyroSampleBuffer(() -> time);
+    gyroActuationDelay = config.gyroActuationDelay;
+    config.wheels = wheels;
+    config.gyro = null;
+    config.gyroSamples = gyroSamples;
+    config.clock = () -> time;
+    config.busVoltage = () -> voltage;
+    config.pipelinedActuation = false;
+    drive = new SwerveDrive(config);
+  }
+
+  private static int indexOf(String[] fields, String name) {
+    for (int i = 0; i < fields.length; i++) {
+      if (fields[i].equals(name)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("data log is missing field " + name);
+  }
+
+  private static int[] indexesOf(String[] fields, String prefix, int wheelCount) {
+    final int[] indexes = new int[wheelCount];
+    for (int i = 0; i < wheelCount; i++) {
+      indexes[i] = indexOf(fields, prefix + i);
+    }
+    return indexes;
+  }
+
+  /**
+   * Set the largest difference between replayed and logged setpoints that is not a mismatch.
+   *
+   * @param tolerance the tolerance, in setpoint units
+   */
+  public void setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+  }
+
+  /** Replay every record in the log. */
+  public void run() {
+    final long start = System.nanoTime();
+    for (long r = 0; r < log.getRecordCount(); r++) {
+      step(r);
+    }
+    elapsedNanos = System.nanoTime() - start;
+  }
+
+  /**
+   * Replay one record and compare the result.
+   *
+   * @param index the record number
+   * @return true if the replayed wheel commands match the log
+   */
+  public boolean step(long index) {
+    log.read(index, record);
+    time = record[timestamp];
+    voltage = record[busVoltage];
+    for (int i = 0; i < azimuths.length; i++) {
+      final RecordingMotorController controller = azimuths[i];
+      controller.position = record[azimuthPosition[i]];
+      controller.absPosition = record[azimuthAbsPosition[i]];
+      controller.velocity = record[azimuthVelocity[i]];
+      controller.output = record[azimuthOutput[i]];
+      controller.current = record[azimuthCurrent[i]];
+      controller.clear();
+      drives[i].output = record[driveOutput[i]];
+      drives[i].current = record[driveCurrent[i]];
+      drives[i].clear();
+    }
+    if (records == 0) {
+      resetAzimuthEstimators();
+    }
+    gyroSamples.addSample(time + gyroActuationDelay, record[gyroAngle], record[gyroRate]);
+
+    drive.drive(record[forward], record[strafe], record[azimuth]);
+
+    boolean match = Math.abs(drive.getPowerScale() - record[powerScale]) <= tolerance;
+    for (int i = 0; i < azimuths.length; i++) {
+      final RecordingMotorController controller = azimuths[i];
+      final double expected = record[azimuthSetpoint[i]];
+      final boolean azimuthSet = controller.isWritten() && !controller.isNeutral();
+      if (Double.isNaN(expected)) {
+        match &= !azimuthSet;
+      } else if (azimuthSet) {
+        final double error = Math.abs(controller.getSetpoint() - expected);
+        maxAzimuthError = Math.max(maxAzimuthError, error);
+        match &= error <= tolerance;
+      } else {
+        match = false;
+      }
+
+      final double error = Math.abs(drives[i].getSetpoint() - record[driveSetpoint[i]]);
+      maxDriveError = Math.max(maxDriveError, error);
+      match &= error <= tolerance;
+    }
+
+    records++;
+    if (!match) {
+      mismatchedRecords++;
+      if (firstMismatch < 0) {
+        firstMismatch = index;
+      }
+    }
+    return match;
+  }
+
+  private void resetAzimuthEstimators() {
+    for (Wheel wheel : drive.getWheels()) {
+      final AzimuthEstimator estimator = wheel.getAzimuthEstimator();
+      if (estimator != null) {
+        estimator.reset(0.0);
+      }
+    }
+  }
+
+  /**
+   * Returns the drive being replayed.
+   *
+   * @return the swerve drive
+   */
+  public SwerveDrive getDrive() {
+    return drive;
+  }
+
+  /**
+   * Returns the number of records replayed.
+   *
+   * @return the record count
+   */
+  public long getRecords() {
+    return records;
+  }
+
+  /**
+   * Returns the number of replayed records whose wheel commands or power scale differ from the log.
+   *
+   * @return the mismatch count
+   */
+  public long getMismatchedRecords() {
+    return mismatchedRecords;
+  }
+
+  /**
+   * Returns the first record whose wheel commands or power scale differ from the log.
+   *
+   * @return the record number, or -1 if all matched
+   */
+  public long getFirstMismatch() {
+    return firstMismatch;
+  }
+
+  /**
+   * Returns the largest azimuth setpoint difference seen.
+   *
+   * @return the difference in encoder ticks
+   */
+  public double getMaxAzimuthError() {
+    return maxAzimuthError;
+  }
+
+  /**
+   * Returns the largest drive setpoint difference seen.
+   *
+   * @return the difference in drive output
+   */
+  public double getMaxDriveError() {
+    return maxDriveError;
+  }
+
+  @Override
+  public String toString() {
+    return "SwerveReplay{"
+        + "records="
+        + records
+        + ", mismatchedRecords="
+        + mismatchedRecords
+        + ", firstMismatch="
+        + firstMismatch
+        + ", maxAzimuthError="
+        + maxAzimuthError
+        + ", maxDriveError="
+        + maxDriveError
+        + ", elapsedMillis="
+        + elapsedNanos / 1_000_000
+        + '}';
+  }
+
+  /**
+   * Replay a log with a drive configuration and print the result, along with the first mismatched
+   * record if there is one.
+   *
+   * @param file the data log
+   * @param config the drive configuration the log was recorded with
+   * @return true if every record matched
+   * @throws IOException if the log can't be read
+   */
+  public static boolean replay(Path file, SwerveDriveConfig config) throws IOException {
+    final DataLogDecoder log = new DataLogDecoder(file);
+    final SwerveReplay replay = new SwerveReplay(log, config);
+    replay.run();
+    System.out.println(replay);
+    if (replay.getFirstMismatch() < 0) {
+      return true;
+    }
+    System.out.println("first mismatch: " + Arrays.toString(log.getFields()));
+    final double[] record = new double[log.getFields().length];
+    log.read(replay.getFirstMismatch(), record);
+    System.out.println("                " + Arrays.toString(record));
+    return false;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1 && args.length != 3) {
+      System.err.println("usage: SwerveReplay <log file> [length width]");
+      System.exit(1);
+    }
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    if (args.length == 3) {
+      config.length = Double.parseDouble(args[1]);
+      config.width = Double.parseDouble(args[2]);
+    }
+    if (!replay(Paths.get(args[0]), config)) {
+      System.exit(2);
+    }
+  }
+}
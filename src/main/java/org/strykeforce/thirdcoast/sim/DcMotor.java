@@ -0,0 +1,108 @@
+package org.strykeforce.thirdcoast.sim;
+
+/**
+ * Brushed or brushless DC motor model derived from the manufacturer's free and stall figures.
+ * Torque is proportional to current and back-EMF is proportional to speed; winding inductance is
+ * neglected.
+ */
+public class DcMotor {
+
+  /** Nominal voltage the free and stall figures are given at. */
+  public final double nominalVoltage;
+
+  /** Stall torque in newton-meters. */
+  public final double stallTorque;
+
+  /** Stall current in amps. */
+  public final double stallCurrent;
+
+  /** Free current in amps. */
+  public final double freeCurrent;
+
+  /** Free speed in radians per second. */
+  public final double freeSpeed;
+
+  /** Winding resistance in ohms. */
+  public final double resistance;
+
+  /** Velocity constant in radians per second per volt. */
+  public final double kV;
+
+  /** Torque constant in newton-meters per amp. */
+  public final double kT;
+
+  /**
+   * Construct a motor model.
+   *
+   * @param nominalVoltage voltage the figures are given at
+   * @param stallTorque stall torque in newton-meters
+   * @param stallCurrent stall current in amps
+   * @param freeCurrent free current in amps
+   * @param freeSpeedRpm free speed in RPM
+   */
+  public DcMotor(
+      double nominalVoltage,
+      double stallTorque,
+      double stallCurrent,
+      double freeCurrent,
+      double freeSpeedRpm) {
+    this.nominalVoltage = nominalVoltage;
+    this.stallTorque = stallTorque;
+    this.stallCurrent = stallCurrent;
+    this.freeCurrent = freeCurrent;
+    freeSpeed = freeSpeedRpm * 2.0 * Math.PI / 60.0;
+    resistance = nominalVoltage / stallCurrent;
+    kV = freeSpeed / (nominalVoltage - resistance * freeCurrent);
+    kT = stallTorque / stallCurrent;
+  }
+
+  /**
+   * REV NEO brushless motor.
+   *
+   * @return the motor model
+   */
+  public static DcMotor neo() {
+    return new DcMotor(12.0, 2.6, 105.0, 1.8, 5676.0);
+  }
+
+  /**
+   * VEX Falcon 500 brushless motor.
+   *
+   * @return the motor model
+   */
+  public static DcMotor falcon500() {
+    return new DcMotor(12.0, 4.69, 257.0, 1.5, 6380.0);
+  }
+
+  /**
+   * VEX 775pro brushed motor.
+   *
+   * @return the motor model
+   */
+  public static DcMotor pro775() {
+    return new DcMotor(12.0, 0.71, 134.0, 0.7, 18730.0);
+  }
+
+  /**
+   * CIM brushed motor.
+   *
+   * @return the motor model
+   */
+  public static DcMotor cim() {
+    return new DcMotor(12.0, 2.42, 133.0, 2.7, 5310.0);
+  }
+
+  @Override
+  public String toString() {
+    return "DcMotor{"
+        + "stallTorque="
+        + stallTorque
+        + ", stallCurrent="
+        + stallCurrent
+        + ", freeCurrent="
+        + freeCurrent
+        + ", freeSpeed="
+        + freeSpeed
+        + '}';
+  }
+}
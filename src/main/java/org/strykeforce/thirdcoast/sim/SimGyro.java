@@ -0,0 +1,73 @@
+package org.strykeforce.thirdcoast.sim;
+
+import org.strykeforce.thirdcoast.swerve.GyroSampleBuffer;
+
+/**
+ * Simulated gyro that integrates chassis yaw rate and publishes timestamped samples to a {@link
+ * GyroSampleBuffer}, the same way the navX does on the robot. Angles are continuous degrees,
+ * measured clockwise.
+ */
+public class SimGyro {
+
+  private final GyroSampleBuffer samples;
+  private double angle;
+  private double rate;
+
+  /**
+   * Construct a gyro publishing to the given buffer.
+   *
+   * @param samples the sample buffer, typically also set in the drive configuration
+   */
+  public SimGyro(GyroSampleBuffer samples) {
+    this.samples = samples;
+  }
+
+  /**
+   * Integrate the yaw rate over a time step and publish a sample at the end of the step.
+   *
+   * @param time time at the end of the step, in seconds
+   * @param dt time step in seconds
+   * @param rate yaw rate in degrees per second, clockwise
+   */
+  public void update(double time, double dt, double rate) {
+    angle += rate * dt;
+    this.rate = rate;
+    samples.addSample(time, angle, rate);
+  }
+
+  /**
+   * Set the current angle without publishing a sample.
+   *
+   * @param angle angle in degrees, clockwise
+   */
+  public void setAngle(double angle) {
+    this.angle = angle;
+  }
+
+  /**
+   * Returns the integrated angle.
+   *
+   * @return angle in degrees, clockwise
+   */
+  public double getAngle() {
+    return angle;
+  }
+
+  /**
+   * Returns the most recent yaw rate.
+   *
+   * @return rate in degrees per second, clockwise
+   */
+  public double getRate() {
+    return rate;
+  }
+
+  /**
+   * Returns the sample buffer this gyro publishes to.
+   *
+   * @return the sample buffer
+   */
+  public GyroSampleBuffer getSamples() {
+    return samples;
+  }
+}
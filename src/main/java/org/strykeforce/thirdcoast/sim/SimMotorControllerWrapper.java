@@ -0,0 +1,353 @@
+package org.strykeforce.thirdcoast.sim;
+
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.AzimuthMotorController;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.DriveMotorController;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.FeedbackSensor;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.NeutralMode;
+import org.strykeforce.thirdcoast.swerve.MotorControllerWrapper;
+import org.strykeforce.thirdcoast.swerve.PIDFSlot;
+
+/**
+ * Simulated motor controller driving a {@link DcMotor} attached through a gearbox to an inertia.
+ *
+ * <p>Setpoints are interpreted the way the corresponding hardware wrapper sends them. CTRE
+ * controllers run Motion Magic for azimuth and percent output or velocity for drive, depending on
+ * the drive mode, as in {@code TalonBaseWrapper}. SPARK MAX controllers follow {@code
+ * SparkMaxWrapper.set}: an optional position loop on a remote sensor followed by a velocity
+ * reference of {@code output * 5500} RPM. Closed loops use slot 0 gains and run every {@link
+ * #step(double)}, which should be about 1 ms to match the hardware, except for the remote sensor
+ * position loop. As on the roboRIO, it runs once per {@link #set(double)} with slot 0 gains and a
+ * {@code PIDController} period of 20 ms. The velocity loop it commands runs on gains stored in the
+ * SPARK MAX, which the wrapper does not configure, so it is modeled as pure feedforward.
+ *
+ * <p>Sensor units follow the hardware: 4096 per mechanism rotation for CTRE magnetic encoders and
+ * CANCoders, 2048 per motor rotation for the TalonFX integrated sensor and motor rotations for the
+ * SPARK MAX integrated encoder. Velocities are per 100 ms for CTRE sensors and per minute for the
+ * SPARK MAX.
+ */
+public class SimMotorControllerWrapper implements MotorControllerWrapper {
+
+  private enum Mode {
+    PERCENT_OUTPUT,
+    VELOCITY,
+    MOTION_MAGIC,
+    REV_VELOCITY
+  }
+
+  private static final double REV_MAX_RPM = 5500.0;
+  // SparkMaxWrapper's remote sensor PIDController runs with the WPILib default period
+  private static final double REMOTE_PID_PERIOD = 0.02;
+  // stand-in for the remote sensor velocity loop gains stored in the SPARK MAX
+  private static final PIDFSlot REMOTE_VELOCITY_GAINS = new PIDFSlot(false);
+
+  static {
+    REMOTE_VELOCITY_GAINS.kP = 0.0;
+    REMOTE_VELOCITY_GAINS.kI = 0.0;
+    REMOTE_VELOCITY_GAINS.kD = 0.0;
+    REMOTE_VELOCITY_GAINS.kF = 1.0 / REV_MAX_RPM;
+  }
+
+  private final int id;
+  private final DcMotor motor;
+  private final double gearing;
+  private final double inertia;
+  private final boolean isAzimuth;
+  private final boolean isRev;
+  private final boolean remoteSensor;
+  private final boolean coast;
+  private final double voltage;
+  private final double unitsPerRotation;
+  private final double velocityScale;
+  private final PIDFSlot gains;
+  private final PIDFSlot velocityGains;
+  private final double cruiseVelocity;
+  private final double acceleration;
+  private DriveMode driveMode = DriveMode.TELEOP;
+
+  // plant state, mechanism radians
+  private double angle;
+  private double angularVelocity;
+  private double sensorOffset;
+  private double appliedVoltage;
+  private double current;
+
+  // controller state
+  private boolean neutral = true;
+  private double setpoint;
+  private double profilePosition;
+  private double profileVelocity;
+  private double integral;
+  private double lastError;
+  private double outerIntegral;
+  private double outerLastError;
+  private double velocityReference;
+
+  /**
+   * Construct a simulated controller.
+   *
+   * @param config the motor controller configuration the hardware would use
+   * @param id the device ID
+   * @param motor the motor model
+   * @param gearing motor rotations per mechanism rotation
+   * @param inertia mechanism moment of inertia in kg-m^2
+   */
+  public SimMotorControllerWrapper(
+      MotorControllerConfig config, int id, DcMotor motor, double gearing, double inertia) {
+    if (gearing <= 0.0 || inertia <= 0.0) {
+      throw new IllegalArgumentException("gearing and inertia must be positive");
+    }
+    this.id = id;
+    this.motor = motor;
+    this.gearing = gearing;
+    this.inertia = inertia;
+    isAzimuth = config.isAzimuth;
+    isRev =
+        isAzimuth
+            ? config.azimuthController == AzimuthMotorController.SPARK_MAX
+            : config.driveController == DriveMotorController.SPARK_MAX;
+    remoteSensor = isRev && config.feedbackSensor != FeedbackSensor.INTEGRATED_SENSOR;
+    coast = config.neutralMode == NeutralMode.COAST;
+    voltage = config.voltageCompensation > 0.0 ? config.voltageCompensation : 12.0;
+    gains = config.slot0;
+    velocityGains = remoteSensor ? REMOTE_VELOCITY_GAINS : config.slot0;
+    cruiseVelocity = config.motionCruiseVelocity;
+    acceleration = config.motionAcceleration;
+
+    if (config.feedbackSensor != FeedbackSensor.INTEGRATED_SENSOR) {
+      unitsPerRotation = 4096.0;
+    } else if (isRev) {
+      unitsPerRotation = gearing;
+    } else if (config.driveController == DriveMotorController.TALON_FX) {
+      unitsPerRotation = 2048.0 * gearing;
+    } else {
+      unitsPerRotation = 4096.0 * gearing;
+    }
+    // velocity time base in seconds, a minute for REV and 100 ms for CTRE
+    velocityScale = isRev && !remoteSensor ? 60.0 : 0.1;
+  }
+
+  private Mode getMode() {
+    if (isRev) {
+      return Mode.REV_VELOCITY;
+    }
+    if (isAzimuth) {
+      return Mode.MOTION_MAGIC;
+    }
+    switch (driveMode) {
+      case CLOSED_LOOP:
+      case TRAJECTORY:
+        return Mode.VELOCITY;
+      default:
+        return Mode.PERCENT_OUTPUT;
+    }
+  }
+
+  @Override
+  public void set(double output) {
+    if (neutral) {
+      profilePosition = getPosition();
+      profileVelocity = getVelocity();
+    }
+    setpoint = output;
+    neutral = false;
+    if (getMode() == Mode.REV_VELOCITY) {
+      velocityReference = (remoteSensor ? calculateRemote() : output) * REV_MAX_RPM;
+    }
+  }
+
+  // SparkMaxWrapper runs a position loop on the roboRIO before the velocity reference
+  private double calculateRemote() {
+    final double error = setpoint - getPosition();
+    outerIntegral += error * REMOTE_PID_PERIOD;
+    final double derivative = (error - outerLastError) / REMOTE_PID_PERIOD;
+    outerLastError = error;
+    final double output =
+        (gains.kP * error + gains.kI * outerIntegral + gains.kD * derivative) / 4096.0;
+    return Math.max(-1.0, Math.min(1.0, output));
+  }
+
+  @Override
+  public void setSensorPosition(double position) {
+    sensorOffset = position - angle / (2.0 * Math.PI) * unitsPerRotation;
+    profilePosition = position;
+    profileVelocity = 0.0;
+    outerIntegral = 0.0;
+    outerLastError = 0.0;
+  }
+
+  @Override
+  public void setNeutralOutput() {
+    neutral = true;
+    integral = 0.0;
+    outerIntegral = 0.0;
+    outerLastError = 0.0;
+  }
+
+  /**
+   * Advance the closed loop and the motor and mechanism model.
+   *
+   * @param dt time step in seconds
+   */
+  public void step(double dt) {
+    final double duty = neutral ? 0.0 : Math.max(-1.0, Math.min(1.0, calculate(dt)));
+    appliedVoltage = duty * voltage;
+
+    // mechanism speed w obeys w' = a - b * w for constant voltage, integrated exactly
+    final boolean open = neutral && coast;
+    final double torquePerVolt = open ? 0.0 : motor.kT * gearing / (motor.resistance * inertia);
+    final double a = torquePerVolt * appliedVoltage;
+    final double b = torquePerVolt * gearing / motor.kV;
+    if (b > 0.0) {
+      final double terminal = a / b;
+      final double decay = Math.exp(-b * dt);
+      angle += terminal * dt + (angularVelocity - terminal) * (1.0 - decay) / b;
+      angularVelocity = terminal + (angularVelocity - terminal) * decay;
+    } else {
+      angle += angularVelocity * dt;
+    }
+    current =
+        open
+            ? 0.0
+            : (appliedVoltage - angularVelocity * gearing / motor.kV) / motor.resistance;
+  }
+
+  private double calculate(double dt) {
+    switch (getMode()) {
+      case PERCENT_OUTPUT:
+        return setpoint;
+      case VELOCITY:
+        return pidf(gains, setpoint, getVelocity(), setpoint) / 1023.0;
+      case MOTION_MAGIC:
+        updateProfile(dt);
+        return pidf(gains, profilePosition, getPosition(), profileVelocity) / 1023.0;
+      case REV_VELOCITY:
+        return pidf(velocityGains, velocityReference, getMotorRpm(), velocityReference);
+      default:
+        return 0.0;
+    }
+  }
+
+  private double pidf(PIDFSlot gains, double target, double measured, double feedForward) {
+    final double error = target - measured;
+    if (gains.kIZone == 0.0 || Math.abs(error) < gains.kIZone) {
+      integral += error;
+    } else {
+      integral = 0.0;
+    }
+    final double derivative = error - lastError;
+    lastError = error;
+    return gains.kP * error + gains.kI * integral + gains.kD * derivative + gains.kF * feedForward;
+  }
+
+  /** Motion Magic trapezoid, cruise velocity in units per 100 ms, acceleration per 100 ms/s. */
+  private void updateProfile(double dt) {
+    final double cruise = cruiseVelocity * 10.0;
+    final double accel = acceleration * 10.0;
+    double velocity = profileVelocity * 10.0;
+    final double remaining = setpoint - profilePosition;
+    if (accel <= 0.0 || cruise <= 0.0) {
+      profilePosition = setpoint;
+      profileVelocity = 0.0;
+      return;
+    }
+    final double target =
+        Math.copySign(Math.min(cruise, Math.sqrt(2.0 * accel * Math.abs(remaining))), remaining);
+    final double change = accel * dt;
+    velocity += Math.max(-change, Math.min(change, target - velocity));
+    final double step = velocity * dt;
+    if (Math.abs(step) >= Math.abs(remaining) && Math.abs(velocity) <= change) {
+      profilePosition = setpoint;
+      velocity = 0.0;
+    } else {
+      profilePosition += step;
+    }
+    profileVelocity = velocity / 10.0;
+  }
+
+  private double getMotorRpm() {
+    return angularVelocity * gearing * 60.0 / (2.0 * Math.PI);
+  }
+
+  /**
+   * Returns the mechanism angle, independent of sensor zeroing.
+   *
+   * @return mechanism rotations
+   */
+  public double getMechanismRotations() {
+    return angle / (2.0 * Math.PI);
+  }
+
+  /**
+   * Returns the mechanism angular velocity.
+   *
+   * @return radians per second
+   */
+  public double getMechanismVelocity() {
+    return angularVelocity;
+  }
+
+  /**
+   * Set the mechanism angle, for example to start azimuths at random positions.
+   *
+   * @param rotations mechanism rotations
+   */
+  public void setMechanismRotations(double rotations) {
+    final double position = getPosition();
+    angle = rotations * 2.0 * Math.PI;
+    sensorOffset = position - angle / (2.0 * Math.PI) * unitsPerRotation;
+  }
+
+  @Override
+  public double getPosition() {
+    return angle / (2.0 * Math.PI) * unitsPerRotation + sensorOffset;
+  }
+
+  @Override
+  public double getAbsPosition() {
+    final double position = angle / (2.0 * Math.PI) * unitsPerRotation;
+    return position - Math.floor(position / unitsPerRotation) * unitsPerRotation;
+  }
+
+  @Override
+  public double getVelocity() {
+    return angularVelocity / (2.0 * Math.PI) * unitsPerRotation * velocityScale;
+  }
+
+  @Override
+  public double getOutput() {
+    return appliedVoltage;
+  }
+
+  @Override
+  public double getCurrent() {
+    return Math.abs(current);
+  }
+
+  @Override
+  public int getDeviceID() {
+    return id;
+  }
+
+  @Override
+  public void setDriveMode(DriveMode mode) {
+    driveMode = mode;
+    integral = 0.0;
+  }
+
+  @Override
+  public String toString() {
+    return "SimMotorControllerWrapper{"
+        + "id="
+        + id
+        + ", mode="
+        + getMode()
+        + ", setpoint="
+        + setpoint
+        + ", position="
+        + getPosition()
+        + ", velocity="
+        + getVelocity()
+        + '}';
+  }
+}
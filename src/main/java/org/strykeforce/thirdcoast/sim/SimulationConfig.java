@@ -0,0 +1,29 @@
+package org.strykeforce.thirdcoast.sim;
+
+/** Physical parameters for a {@link SwerveSimulation}. */
+public class SimulationConfig {
+
+  /** Azimuth motor model. */
+  public DcMotor azimuthMotor = DcMotor.pro775();
+
+  /** Azimuth motor rotations per wheel azimuth rotation. */
+  public double azimuthGearing = 60.0;
+
+  /** Wheel module moment of inertia about the azimuth axis, kg-m^2. */
+  public double azimuthInertia = 0.004;
+
+  /** Drive motor model. */
+  public DcMotor driveMotor = DcMotor.neo();
+
+  /** Drive motor rotations per wheel rotation. */
+  public double driveGearing = 6.67;
+
+  /** Drive wheel radius in meters. */
+  public double wheelRadius = 0.0381;
+
+  /** Robot mass in kilograms, shared equally by the drive wheels. */
+  public double robotMass = 50.0;
+
+  /** Physics and motor controller closed-loop time step in seconds. */
+  public double physicsPeriod = 0.001;
+}
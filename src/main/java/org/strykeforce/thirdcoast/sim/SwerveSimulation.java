@@ -0,0 +1,210 @@
+package org.strykeforce.thirdcoast.sim;
+
+import org.strykeforce.thirdcoast.swerve.GyroSampleBuffer;
+import org.strykeforce.thirdcoast.swerve.SwerveDrive;
+import org.strykeforce.thirdcoast.swerve.SwerveDriveConfig;
+import org.strykeforce.thirdcoast.swerve.SwerveKinematics;
+import org.strykeforce.thirdcoast.swerve.Wheel;
+
+/**
+ * Steps a complete swerve drive, from {@link SwerveDrive#drive(double, double, double)} down to
+ * motor physics, on a virtual clock with no hardware or HAL. Simulations run as fast as the CPU
+ * allows, so they can be used for CI checks and tuning sweeps as well as the WPILib simulator.
+ *
+ * <p>Every motor controller is a {@link SimMotorControllerWrapper} configured from the drive's
+ * azimuth and drive motor controller configurations. Chassis motion is the least-squares fit of the
+ * simulated wheel velocities, integrated into a field position and a {@link SimGyro}; wheel slip
+ * and scrub are not modeled.
+ */
+public class SwerveSimulation {
+
+  private final SwerveDrive drive;
+  private final SwerveKinematics kinematics;
+  private final SimMotorControllerWrapper[] azimuths;
+  private final SimMotorControllerWrapper[] drives;
+  private final SimGyro gyro;
+  private final double physicsPeriod;
+  private final double robotPeriod;
+  private final double wheelRadius;
+  private final double azimuthSign;
+  private final double[] wheelX;
+  private final double[] wheelY;
+  private final double[] chassis = new double[3];
+  private double time;
+  private double x;
+  private double y;
+
+  /**
+   * Construct a simulation. The drive configuration's wheels, gyro, gyro samples and clock are
+   * replaced with simulated ones.
+   *
+   * @param config the drive configuration
+   * @param sim the physical parameters
+   */
+  public SwerveSimulation(SwerveDriveConfig config, SimulationConfig sim) {
+    kinematics = new SwerveKinematics(config.getWheelLocations());
+    final int wheelCount = kinematics.getWheelCount();
+    physicsPeriod = sim.physicsPeriod;
+    robotPeriod = config.robotPeriod;
+    wheelRadius = sim.wheelRadius;
+    // Wheel commands azimuth ticks with the opposite sign when invertError is set
+    azimuthSign = config.invertError ? -1.0 : 1.0;
+    wheelX = new double[wheelCount];
+    wheelY = new double[wheelCount];
+
+    final double driveInertia = sim.robotMass / wheelCount * wheelRadius * wheelRadius;
+    azimuths = new SimMotorControllerWrapper[wheelCount];
+    drives = new SimMotorControllerWrapper[wheelCount];
+    final Wheel[] wheels = new Wheel[wheelCount];
+    for (int i = 0; i < wheelCount; i++) {
+      azimuths[i] =
+          new SimMotorControllerWrapper(
+              config.azimuthConfig, i, sim.azimuthMotor, sim.azimuthGearing, sim.azimuthInertia);
+      drives[i] =
+          new SimMotorControllerWrapper(
+              config.driveConfig, i + 10, sim.driveMotor, sim.driveGearing, driveInertia);
+      wheels[i] =
+          new Wheel(
+              azimuths[i],
+              drives[i],
+              config.driveSetpointMax,
+              config.azimuthTicks,
+              config.invertError);
+    }
+
+    final GyroSampleBuffer samples = new GyroSampleBuffer(this::getTime);
+    gyro = new SimGyro(samples);
+    samples.addSample(0.0, 0.0, 0.0);
+    config.wheels = wheels;
+    config.gyro = null;
+    config.gyroSamples = samples;
+    config.clock = this::getTime;
+    // simulated controllers run from an ideal 12 volt battery
+    config.busVoltage = () -> 12.0;
+    drive = new SwerveDrive(config);
+  }
+
+  /**
+   * Advance the physics by a duration without calling the drive.
+   *
+   * @param duration time to advance in seconds
+   */
+  public void step(double duration) {
+    final long steps = Math.max(1, Math.round(duration / physicsPeriod));
+    final double dt = duration / steps;
+    for (long s = 0; s < steps; s++) {
+      stepPhysics(dt);
+    }
+  }
+
+  /**
+   * Drive with constant inputs for a duration, calling the drive once per robot period.
+   *
+   * @param forward Y-axis movement, from -1.0 (reverse) to 1.0 (forward)
+   * @param strafe X-axis movement, from -1.0 (left) to 1.0 (right)
+   * @param azimuth robot rotation, from -1.0 (CCW) to 1.0 (CW)
+   * @param duration time to drive in seconds
+   */
+  public void run(double forward, double strafe, double azimuth, double duration) {
+    final long cycles = Math.max(1, Math.round(duration / robotPeriod));
+    for (long c = 0; c < cycles; c++) {
+      drive.drive(forward, strafe, azimuth);
+      step(robotPeriod);
+    }
+  }
+
+  private void stepPhysics(double dt) {
+    for (int i = 0; i < azimuths.length; i++) {
+      azimuths[i].step(dt);
+      drives[i].step(dt);
+      final double azimuth = 2.0 * Math.PI * azimuthSign * azimuths[i].getMechanismRotations();
+      final double speed = drives[i].getMechanismVelocity() * wheelRadius;
+      wheelX[i] = speed * Math.sin(azimuth);
+      wheelY[i] = speed * Math.cos(azimuth);
+    }
+    kinematics.forward(wheelX, wheelY, chassis);
+
+    final double rate = Math.toDegrees(chassis[2]);
+    final double heading = Math.toRadians(gyro.getAngle() + 0.5 * rate * dt);
+    final double cos = Math.cos(heading);
+    final double sin = Math.sin(heading);
+    x += (chassis[0] * cos + chassis[1] * sin) * dt;
+    y += (chassis[1] * cos - chassis[0] * sin) * dt;
+    time += dt;
+    gyro.update(time, dt, rate);
+  }
+
+  /**
+   * Returns the simulated drive.
+   *
+   * @return the swerve drive
+   */
+  public SwerveDrive getDrive() {
+    return drive;
+  }
+
+  /**
+   * Returns the simulated gyro.
+   *
+   * @return the gyro
+   */
+  public SimGyro getGyro() {
+    return gyro;
+  }
+
+  /**
+   * Returns a wheel's simulated azimuth controller.
+   *
+   * @param wheel the wheel number
+   * @return the controller
+   */
+  public SimMotorControllerWrapper getAzimuthController(int wheel) {
+    return azimuths[wheel];
+  }
+
+  /**
+   * Returns a wheel's simulated drive controller.
+   *
+   * @param wheel the wheel number
+   * @return the controller
+   */
+  public SimMotorControllerWrapper getDriveController(int wheel) {
+    return drives[wheel];
+  }
+
+  /**
+   * Returns the virtual time.
+   *
+   * @return time in seconds since the simulation started
+   */
+  public double getTime() {
+    return time;
+  }
+
+  /**
+   * Returns the field X (right) position.
+   *
+   * @return position in meters
+   */
+  public double getX() {
+    return x;
+  }
+
+  /**
+   * Returns the field Y (forward) position.
+   *
+   * @return position in meters
+   */
+  public double getY() {
+    return y;
+  }
+
+  /**
+   * Returns the chassis heading.
+   *
+   * @return heading in degrees, clockwise
+   */
+  public double getHeading() {
+    return gyro.getAngle();
+  }
+}
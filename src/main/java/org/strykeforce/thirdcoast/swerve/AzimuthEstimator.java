@@ -0,0 +1,116 @@
+package org.strykeforce.thirdcoast.swerve;
+
+/**
+ * Complementary filter fusing a wheel's relative azimuth encoder with its absolute encoder.
+ *
+ * <p>The relative encoder, the azimuth controller's selected sensor, is read at a high rate with
+ * little noise but drifts from the true azimuth, for example through gear backlash when it is on
+ * the motor. The absolute encoder doesn't drift but is noisier and reported less often. The
+ * estimate is the relative position plus a bias that is low-pass filtered toward the absolute
+ * position, so it follows the relative encoder over short times and the absolute encoder over
+ * times longer than the filter time constant.
+ *
+ * <p>Positions are in the relative encoder's frame and units. The estimator has no effect until
+ * {@link #reset(double)} supplies the offset between the two encoders, normally when the wheel
+ * azimuth is zeroed.
+ */
+public class AzimuthEstimator {
+
+  private final double ticks;
+  private final double timeConstant;
+  private double offset;
+  private double bias;
+  private double lastTime = Double.NaN;
+  private boolean isReset = false;
+
+  /**
+   * Construct an estimator.
+   *
+   * @param ticks encoder units per wheel rotation
+   * @param timeConstant filter time constant in seconds, 0 to follow the absolute encoder at every
+   *     update
+   */
+  public AzimuthEstimator(double ticks, double timeConstant) {
+    if (ticks <= 0.0) {
+      throw new IllegalArgumentException("ticks must be positive: " + ticks);
+    }
+    if (timeConstant < 0.0) {
+      throw new IllegalArgumentException("time constant must not be negative: " + timeConstant);
+    }
+    this.ticks = ticks;
+    this.timeConstant = timeConstant;
+  }
+
+  /**
+   * Set the offset from the absolute to the relative encoder and clear the bias. Call after the
+   * relative encoder is set to {@code absolute + offset}.
+   *
+   * @param offset relative minus absolute position
+   */
+  public void reset(double offset) {
+    this.offset = offset;
+    bias = 0.0;
+    lastTime = Double.NaN;
+    isReset = true;
+  }
+
+  /**
+   * Update the bias from a pair of encoder readings taken at the same time.
+   *
+   * @param relative relative encoder position
+   * @param absolute absolute encoder position
+   * @param time reading time in seconds
+   */
+  public void update(double relative, double absolute, double time) {
+    if (!isReset) {
+      return;
+    }
+    final double dt = Double.isNaN(lastTime) ? 0.0 : time - lastTime;
+    lastTime = time;
+    final double gain;
+    if (timeConstant == 0.0) {
+      gain = 1.0;
+    } else {
+      gain = dt > 0.0 ? dt / (timeConstant + dt) : 0.0;
+    }
+    // absolute encoder wraps once per rotation, compare on the circle
+    bias += gain * Math.IEEEremainder(absolute + offset - relative - bias, ticks);
+  }
+
+  /**
+   * Returns the fused azimuth estimate for a relative encoder position.
+   *
+   * @param relative relative encoder position
+   * @return the estimated azimuth in the relative encoder's frame, or {@code relative} if not reset
+   */
+  public double getEstimate(double relative) {
+    return relative + bias;
+  }
+
+  /**
+   * Returns the offset from the absolute to the relative encoder set by {@link #reset(double)}.
+   *
+   * @return relative minus absolute position
+   */
+  public double getOffset() {
+    return offset;
+  }
+
+  /**
+   * Returns the estimated drift of the relative encoder from the absolute encoder.
+   *
+   * @return estimate minus relative position
+   */
+  public double getBias() {
+    return bias;
+  }
+
+  /**
+   * Returns true once {@link #reset(double)} has been called.
+   *
+   * @return true if the estimator is active
+   */
+  public boolean isReset() {
+    return isReset;
+  }
+}
@@ -0,0 +1,120 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.AzimuthMotorController;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.DriveMotorController;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.FeedbackSensor;
+
+/**
+ * Estimates the CAN bus traffic generated by a swerve drive configuration, without hardware, so
+ * status frame periods can be budgeted before deploying.
+ *
+ * <p>Counts status frames from each azimuth and drive controller at the configured periods, the
+ * vendor-default periods of frames not configured by the wrappers, CANCoder frames and control
+ * frames. Other devices on the bus, such as the PDP, are not included.
+ */
+public class CanBusEstimator {
+
+  /** CAN bit rate, bits per second. */
+  public static final double BIT_RATE = 1_000_000.0;
+
+  /**
+   * Worst-case bits on the wire for an extended-ID frame with 8 data bytes, including bit stuffing
+   * and interframe space.
+   */
+  public static final int BITS_PER_FRAME = 160;
+
+  // frames per second at vendor defaults for status frames the wrappers leave alone
+  private static final double TALON_SRX_OTHER_FPS = 1000.0 / 160 * 6;
+  private static final double TALON_FX_OTHER_FPS = 1000.0 / 160 * 5;
+  private static final double VICTOR_SPX_OTHER_FPS = 1000.0 / 160 * 4;
+  private static final double CANCODER_FAULTS_FPS = 1000.0 / 100;
+
+  // CTRE controllers send their control frame every 10 ms
+  private static final double CTRE_CONTROL_FPS = 100.0;
+
+  private CanBusEstimator() {}
+
+  /**
+   * Estimate bus traffic for the given configuration.
+   *
+   * @param config the swerve drive configuration
+   * @return the estimate
+   */
+  public static Estimate estimate(SwerveDriveConfig config) {
+    final int wheels = config.getWheelLocations().length;
+    final double controlFps = 1.0 / config.robotPeriod;
+
+    double azimuth = statusFps(config.azimuthConfig, config.azimuthConfig.azimuthController);
+    switch (config.azimuthConfig.azimuthController) {
+      case SPARK_MAX:
+        azimuth += controlFps;
+        break;
+      case TALON_SRX:
+      case VICTOR_SPX:
+      default:
+        azimuth += CTRE_CONTROL_FPS;
+        break;
+    }
+    if (hasCanCoder(config.azimuthConfig)) {
+      azimuth += 1000.0 / config.azimuthConfig.canCoderStatusFramePeriod + CANCODER_FAULTS_FPS;
+    }
+
+    double drive;
+    if (config.driveConfig.driveController == DriveMotorController.TALON_FX) {
+      drive = ctreStatusFps(config.driveConfig) + TALON_FX_OTHER_FPS + CTRE_CONTROL_FPS;
+    } else {
+      drive = revStatusFps(config.driveConfig) + controlFps;
+    }
+
+    return new Estimate(wheels * (azimuth + drive));
+  }
+
+  private static double statusFps(
+      MotorControllerConfig config, AzimuthMotorController controller) {
+    switch (controller) {
+      case SPARK_MAX:
+        return revStatusFps(config);
+      case VICTOR_SPX:
+        return ctreStatusFps(config) + VICTOR_SPX_OTHER_FPS;
+      case TALON_SRX:
+      default:
+        return ctreStatusFps(config) + TALON_SRX_OTHER_FPS;
+    }
+  }
+
+  private static double ctreStatusFps(MotorControllerConfig config) {
+    return 1000.0 / config.generalStatusFramePeriod + 1000.0 / config.feedbackStatusFramePeriod;
+  }
+
+  private static double revStatusFps(MotorControllerConfig config) {
+    // feedback period applies to both kStatus1 and kStatus2
+    return 1000.0 / config.generalStatusFramePeriod + 2000.0 / config.feedbackStatusFramePeriod;
+  }
+
+  private static boolean hasCanCoder(MotorControllerConfig config) {
+    return config.azimuthController == AzimuthMotorController.VICTOR_SPX
+        || config.feedbackSensor == FeedbackSensor.CAN_CODER;
+  }
+
+  /** Estimated bus traffic. */
+  public static class Estimate {
+
+    /** Frames per second on the bus. */
+    public final double framesPerSecond;
+
+    /** Fraction of bus capacity used, 0 to 1 or more if over capacity. */
+    public final double utilization;
+
+    Estimate(double framesPerSecond) {
+      this.framesPerSecond = framesPerSecond;
+      this.utilization = framesPerSecond * BITS_PER_FRAME / BIT_RATE;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "CAN bus estimate: %.0f frames/s, %.1f%% utilization",
+          framesPerSecond, utilization * 100.0);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package org.strykeforce.thirdcoast.swerve;
+
+/**
+ * Keeps the swerve drive motors within a battery current and voltage budget by scaling all wheel
+ * speeds by the same factor, which preserves their ratios and so the direction of motion.
+ *
+ * <p>Each cycle the manager takes each drive motor's supply current as its measured output current
+ * times its duty cycle, output voltage over bus voltage. It predicts the supply current of the new
+ * wheel speeds assuming motor current is proportional to the commanded speed, so supply current is
+ * proportional to its square. This is exact for stalled wheels, as when pushing, and overestimates
+ * moving wheels, whose back EMF reduces current further. The allowed total is the smaller of the
+ * configured current budget and the current at which a battery of the configured internal
+ * resistance would sag to the minimum bus voltage, extrapolated from the measured voltage and drive
+ * current.
+ *
+ * <p>Measurements come from the drive's {@link SensorSnapshot}, so the manager makes no motor
+ * controller calls. Nothing is allocated after construction.
+ */
+public class DrivePowerManager {
+
+  private final double maxCurrent;
+  private final double minVoltage;
+  private final double batteryResistance;
+  private final double[] lastSpeed;
+  private double scale = 1.0;
+  private double current;
+  private double busVoltage = Double.NaN;
+
+  /**
+   * Construct a power manager.
+   *
+   * @param wheelCount number of wheels
+   * @param maxCurrent total drive supply current budget in amps, negative for none
+   * @param minVoltage minimum bus voltage in volts, negative for none
+   * @param batteryResistance battery and wiring resistance in ohms, used for the voltage budget
+   */
+  public DrivePowerManager(
+      int wheelCount, double maxCurrent, double minVoltage, double batteryResistance) {
+    if (minVoltage >= 0.0 && batteryResistance <= 0.0) {
+      throw new IllegalArgumentException(
+          "battery resistance must be positive: " + batteryResistance);
+    }
+    this.maxCurrent = maxCurrent;
+    this.minVoltage = minVoltage;
+    this.batteryResistance = batteryResistance;
+    lastSpeed = new double[wheelCount];
+  }
+
+  /**
+   * Construct a power manager from the drive configuration's budget.
+   *
+   * @param config the drive configuration
+   * @param wheelCount number of wheels
+   */
+  public DrivePowerManager(SwerveDriveConfig config, int wheelCount) {
+    this(wheelCount, config.maxDriveSupplyCurrent, config.minBusVoltage, config.batteryResistance);
+  }
+
+  /**
+   * Returns true if the configuration sets a current or voltage budget.
+   *
+   * @param config the drive configuration
+   * @return true if a power manager is needed
+   */
+  public static boolean isEnabled(SwerveDriveConfig config) {
+    return config.maxDriveSupplyCurrent >= 0.0 || config.minBusVoltage >= 0.0;
+  }
+
+  /**
+   * Scale wheel speeds to stay within the budget.
+   *
+   * @param ws wheel speeds, scaled in place
+   * @param sensors this cycle's sensor readings
+   * @param driveSlot slot of the first wheel's drive controller in {@code sensors}
+   * @param slotStride slots between consecutive wheels' drive controllers
+   * @param busVoltage this cycle's bus voltage
+   * @return the applied scale, from 0 to 1.0
+   */
+  public double scale(
+      double[] ws, SensorSnapshot sensors, int driveSlot, int slotStride, double busVoltage) {
+    double measured = 0.0;
+    double predicted = 0.0;
+    for (int i = 0, slot = driveSlot; i < lastSpeed.length; i++, slot += slotStride) {
+      final double duty = busVoltage > 0.0 ? Math.abs(sensors.output[slot]) / busVoltage : 0.0;
+      final double supply = Math.abs(sensors.current[slot]) * Math.min(duty, 1.0);
+      measured += supply;
+      // wheels starting from rest have no current to extrapolate, and are caught next cycle
+      if (lastSpeed[i] > 0.0) {
+        final double ratio = ws[i] / lastSpeed[i];
+        predicted += supply * ratio * ratio;
+      }
+    }
+    current = measured;
+    this.busVoltage = busVoltage;
+
+    double budget = Double.POSITIVE_INFINITY;
+    if (maxCurrent >= 0.0) {
+      budget = maxCurrent;
+    }
+    if (minVoltage >= 0.0 && busVoltage > 0.0) {
+      budget = Math.min(budget, measured + (busVoltage - minVoltage) / batteryResistance);
+    }
+
+    // nothing to scale if no wheel had current to extrapolate, even over a negative budget
+    if (predicted > 0.0 && predicted > budget) {
+      scale = Math.sqrt(Math.max(budget, 0.0) / predicted);
+    } else {
+      scale = 1.0;
+    }
+    for (int i = 0; i < lastSpeed.length; i++) {
+      ws[i] *= scale;
+      lastSpeed[i] = Math.abs(ws[i]);
+    }
+    return scale;
+  }
+
+  /** Forget previous wheel speeds, as when the wheels are stopped. */
+  public void reset() {
+    for (int i = 0; i < lastSpeed.length; i++) {
+      lastSpeed[i] = 0.0;
+    }
+    scale = 1.0;
+  }
+
+  /**
+   * Returns the scale applied in the last cycle.
+   *
+   * @return the scale, from 0 to 1.0
+   */
+  public double getScale() {
+    return scale;
+  }
+
+  /**
+   * Returns the total drive supply current measured in the last cycle.
+   *
+   * @return current in amps
+   */
+  public double getCurrent() {
+    return current;
+  }
+
+  /**
+   * Returns the bus voltage used in the last cycle.
+   *
+   * @return voltage in volts, NaN before the first cycle
+   */
+  public double getBusVoltage() {
+    return busVoltage;
+  }
+}
@@ -0,0 +1,125 @@
+package org.strykeforce.thirdcoast.swerve;
+
+/**
+ * A tunable closed-loop parameter of a {@link MotorControllerConfig}. Slot gains are stored per
+ * {@link PIDFSlot}; motion parameters are shared by all slots and ignore the slot number.
+ */
+public enum Gain {
+  P("kP"),
+  I("kI"),
+  D("kD"),
+  F("kF"),
+  I_ZONE("kIZone"),
+  ALLOWABLE_ERROR("kAllowableError"),
+  MAX_I_ACCUM("kMaxIAccum"),
+  MOTION_CRUISE_VELOCITY("motionCruiseVelocity"),
+  MOTION_ACCELERATION("motionAcceleration");
+
+  /** Number of slots in a {@link MotorControllerConfig}. */
+  public static final int SLOTS = 4;
+
+  private final String fieldName;
+
+  Gain(String fieldName) {
+    this.fieldName = fieldName;
+  }
+
+  /**
+   * Returns true if this is a per-slot gain rather than a motion parameter.
+   *
+   * @return true for slot gains
+   */
+  public boolean isSlotGain() {
+    return ordinal() < MOTION_CRUISE_VELOCITY.ordinal();
+  }
+
+  /**
+   * Returns the configuration key for this gain, for example {@code slot0.kP} or {@code
+   * motionCruiseVelocity}.
+   *
+   * @param slot the slot number, ignored for motion parameters
+   * @return the key
+   */
+  public String getKey(int slot) {
+    return isSlotGain() ? "slot" + slot + "." + fieldName : fieldName;
+  }
+
+  /**
+   * Returns this gain's value in a configuration.
+   *
+   * @param config the configuration
+   * @param slot the slot number, ignored for motion parameters
+   * @return the value
+   */
+  public double get(MotorControllerConfig config, int slot) {
+    switch (this) {
+      case MOTION_CRUISE_VELOCITY:
+        return config.motionCruiseVelocity;
+      case MOTION_ACCELERATION:
+        return config.motionAcceleration;
+      default:
+        break;
+    }
+    final PIDFSlot gains = config.getSlot(slot);
+    switch (this) {
+      case P:
+        return gains.kP;
+      case I:
+        return gains.kI;
+      case D:
+        return gains.kD;
+      case F:
+        return gains.kF;
+      case I_ZONE:
+        return gains.kIZone;
+      case ALLOWABLE_ERROR:
+        return gains.kAllowableError;
+      default:
+        return gains.kMaxIAccum;
+    }
+  }
+
+  /**
+   * Set this gain's value in a configuration.
+   *
+   * @param config the configuration
+   * @param slot the slot number, ignored for motion parameters
+   * @param value the new value
+   */
+  public void set(MotorControllerConfig config, int slot, double value) {
+    switch (this) {
+      case MOTION_CRUISE_VELOCITY:
+        config.motionCruiseVelocity = value;
+        return;
+      case MOTION_ACCELERATION:
+        config.motionAcceleration = value;
+        return;
+      default:
+        break;
+    }
+    final PIDFSlot gains = config.getSlot(slot);
+    switch (this) {
+      case P:
+        gains.kP = value;
+        break;
+      case I:
+        gains.kI = value;
+        break;
+      case D:
+        gains.kD = value;
+        break;
+      case F:
+        gains.kF = value;
+        break;
+      case I_ZONE:
+        gains.kIZone = value;
+        break;
+      case ALLOWABLE_ERROR:
+        gains.kAllowableError = value;
+        break;
+      default:
+        gains.kMaxIAccum = value;
+        break;
+    }
+  }
+}
@@ -0,0 +1,313 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Notifier;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Live tuning of motor controller gains from a file in the deploy directory and from
+ * NetworkTables.
+ *
+ * <p>Gains are grouped by {@link MotorControllerConfig} and keyed {@code <group>.<gain key>}, for
+ * example {@code azimuth.slot0.kP} or {@code drive.motionCruiseVelocity}; see {@link
+ * Gain#getKey(int)}. The file is a {@link Properties} file and keys missing from it keep their
+ * configured values. Call {@link #load(String, MotorControllerConfig)} before the motor controllers
+ * are configured so they start with the file's gains.
+ *
+ * <p>Once started, the tuner publishes every gain to the {@code Gains} table and on each period
+ * reloads the file if it has changed, then reads the table. A gain that differs from the value last
+ * applied is set in its group's configuration and sent to each of the group's motor controllers
+ * with {@link MotorControllerWrapper#setGain(int, Gain, double)}. Only changed gains are sent, and
+ * controllers are not reset, so tuning doesn't interrupt driving.
+ *
+ * <p>Once {@link #setDeferred(boolean) deferred}, changed gains are queued instead and applied by
+ * {@link #applyPending()}, so the thread that runs the motor controllers also updates their gains
+ * and configurations. {@link SwerveDrive#setGainTuner(GainTuner)} applies them each drive cycle.
+ */
+public class GainTuner {
+
+  /** Default NetworkTables table name. */
+  public static final String TABLE = "Gains";
+
+  /** Default gains file name in the deploy directory. */
+  public static final String FILE_NAME = "gains.properties";
+
+  /** Default update period in seconds. */
+  public static final double DEFAULT_PERIOD = 0.5;
+
+  // every tunable parameter, slot gains for each slot followed by the motion parameters
+  private static final Gain[] GAINS;
+  private static final int[] SLOTS;
+
+  static {
+    final List<Gain> gains = new ArrayList<>();
+    final List<Integer> slots = new ArrayList<>();
+    for (Gain gain : Gain.values()) {
+      final int slotCount = gain.isSlotGain() ? Gain.SLOTS : 1;
+      for (int slot = 0; slot < slotCount; slot++) {
+        gains.add(gain);
+        slots.add(slot);
+      }
+    }
+    GAINS = gains.toArray(new Gain[0]);
+    SLOTS = slots.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private final Path file;
+  private final String tableName;
+  private final List<Group> groups = new ArrayList<>();
+  private final Queue<Change> pending = new ConcurrentLinkedQueue<>();
+  private long fileModified = Long.MIN_VALUE;
+  private boolean deferred = false;
+  private Notifier notifier;
+
+  /** Construct a tuner for the default gains file and table. */
+  public GainTuner() {
+    this(Filesystem.getDeployDirectory().toPath().resolve(FILE_NAME), TABLE);
+  }
+
+  /**
+   * Construct a tuner.
+   *
+   * @param file the gains file, which need not exist
+   * @param tableName the NetworkTables table to tune from
+   */
+  public GainTuner(Path file, String tableName) {
+    this.file = file;
+    this.tableName = tableName;
+  }
+
+  /**
+   * Set a configuration's gains from the gains file. Gains missing from the file are unchanged.
+   *
+   * @param group the group name used in the file keys
+   * @param config the configuration to update
+   * @return true if the gains file was read, false if it doesn't exist
+   * @throws IllegalArgumentException if the file can't be read or has an invalid gain
+   */
+  public boolean load(String group, MotorControllerConfig config) {
+    final Properties properties = readFile();
+    if (properties == null) {
+      return false;
+    }
+    for (int i = 0; i < GAINS.length; i++) {
+      final String value = properties.getProperty(group + "." + GAINS[i].getKey(SLOTS[i]));
+      if (value != null) {
+        GAINS[i].set(config, SLOTS[i], parse(group, i, value));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Tune a configuration's gains on its motor controllers. The configuration's current gains are
+   * taken as already applied to the controllers.
+   *
+   * @param group the group name used in the file and table keys
+   * @param config the configuration the controllers were configured with
+   * @param controllers the motor controllers to send gain changes to
+   */
+  public synchronized void add(
+      String group, MotorControllerConfig config, MotorControllerWrapper... controllers) {
+    for (Group existing : groups) {
+      if (existing.name.equals(group)) {
+        throw new IllegalArgumentException("duplicate gain group: " + group);
+      }
+    }
+    final Group g = new Group(group, config, controllers);
+    for (int i = 0; i < GAINS.length; i++) {
+      g.applied[i] = GAINS[i].get(config, SLOTS[i]);
+    }
+    if (notifier != null) {
+      publish(g);
+    }
+    groups.add(g);
+  }
+
+  /**
+   * Start tuning.
+   *
+   * @param period update period in seconds
+   */
+  public synchronized void start(double period) {
+    if (period <= 0.0) {
+      throw new IllegalArgumentException("gain tuner period must be positive: " + period);
+    }
+    if (notifier == null) {
+      for (Group group : groups) {
+        publish(group);
+      }
+      notifier = new Notifier(this::update);
+    }
+    notifier.startPeriodic(period);
+  }
+
+  /**
+   * Queue gain changes for {@link #applyPending()} instead of applying them on the tuner's thread.
+   * Changes queued before deferral is turned off still need {@code applyPending}.
+   *
+   * @param deferred true to queue changes
+   */
+  public synchronized void setDeferred(boolean deferred) {
+    this.deferred = deferred;
+  }
+
+  /**
+   * Apply queued gain changes to their configurations and motor controllers, in the order they
+   * were made. Call from the thread that runs the motor controllers, this does not block or
+   * allocate if nothing is queued.
+   */
+  public void applyPending() {
+    Change change;
+    while ((change = pending.poll()) != null) {
+      change.gain.set(change.config, change.slot, change.value);
+      for (MotorControllerWrapper controller : change.controllers) {
+        controller.setGain(change.slot, change.gain, change.value);
+      }
+    }
+  }
+
+  /** Stop tuning. */
+  public synchronized void stop() {
+    if (notifier != null) {
+      notifier.stop();
+    }
+  }
+
+  /**
+   * Apply changes from the gains file and the NetworkTables table. Called periodically once
+   * started.
+   */
+  public synchronized void update() {
+    Properties properties = null;
+    try {
+      final long modified = getFileModified();
+      if (modified != fileModified) {
+        fileModified = modified;
+        properties = readFile();
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println("gain tuner: " + e.getMessage());
+    }
+
+    for (Group group : groups) {
+      for (int i = 0; i < GAINS.length; i++) {
+        double value = group.applied[i];
+        final String fileValue =
+            properties != null ? properties.getProperty(group.getKey(i)) : null;
+        if (fileValue != null) {
+          try {
+            value = parse(group.name, i, fileValue);
+            if (group.entries[i] != null) {
+              group.entries[i].setDouble(value);
+            }
+          } catch (IllegalArgumentException e) {
+            System.err.println("gain tuner: " + e.getMessage());
+          }
+        } else if (group.entries[i] != null) {
+          value = group.entries[i].getDouble(value);
+        }
+        if (Double.compare(value, group.applied[i]) != 0) {
+          apply(group, i, value);
+        }
+      }
+    }
+  }
+
+  private void apply(Group group, int index, double value) {
+    final Gain gain = GAINS[index];
+    final int slot = SLOTS[index];
+    group.applied[index] = value;
+    if (deferred) {
+      pending.add(new Change(group, gain, slot, value));
+      return;
+    }
+    gain.set(group.config, slot, value);
+    for (MotorControllerWrapper controller : group.controllers) {
+      controller.setGain(slot, gain, value);
+    }
+  }
+
+  private void publish(Group group) {
+    final NetworkTable table = NetworkTableInstance.getDefault().getTable(tableName);
+    for (int i = 0; i < GAINS.length; i++) {
+      group.entries[i] = table.getEntry(group.getKey(i));
+      group.entries[i].setDouble(group.applied[i]);
+    }
+  }
+
+  private long getFileModified() {
+    try {
+      return Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : Long.MIN_VALUE;
+    } catch (IOException e) {
+      throw new IllegalArgumentException("unable to read " + file + ": " + e.getMessage(), e);
+    }
+  }
+
+  private Properties readFile() {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    final Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file)) {
+      properties.load(reader);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("unable to read " + file + ": " + e.getMessage(), e);
+    }
+    return properties;
+  }
+
+  private static double parse(String group, int index, String value) {
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "invalid gain " + group + "." + GAINS[index].getKey(SLOTS[index]) + ": " + value, e);
+    }
+  }
+
+  private static class Group {
+    final String name;
+    final MotorControllerConfig config;
+    final MotorControllerWrapper[] controllers;
+    final double[] applied = new double[GAINS.length];
+    final NetworkTableEntry[] entries = new NetworkTableEntry[GAINS.length];
+
+    Group(String name, MotorControllerConfig config, MotorControllerWrapper[] controllers) {
+      this.name = name;
+      this.config = config;
+      this.controllers = controllers.clone();
+    }
+
+    String getKey(int index) {
+      return name + "." + GAINS[index].getKey(SLOTS[index]);
+    }
+  }
+
+  private static class Change {
+    final MotorControllerConfig config;
+    final MotorControllerWrapper[] controllers;
+    final Gain gain;
+    final int slot;
+    final double value;
+
+    Change(Group group, Gain gain, int slot, double value) {
+      config = group.config;
+      controllers = group.controllers;
+      this.gain = gain;
+      this.slot = slot;
+      this.value = value;
+    }
+  }
+}
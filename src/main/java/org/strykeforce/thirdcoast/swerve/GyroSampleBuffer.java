@@ -0,0 +1,188 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import com.kauailabs.navx.AHRSProtocol.AHRSUpdateBase;
+import com.kauailabs.navx.frc.AHRS;
+import com.kauailabs.navx.frc.ITimestampedDataSubscriber;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Fixed-size ring buffer of timestamped gyro samples.
+ *
+ * <p>When registered with a navX {@link AHRS}, samples are added from the navX update thread as
+ * they arrive, so readers on the control thread can estimate heading at any recent or near-future
+ * time without calling into the gyro. Each navX sample is stamped with the time the navX measured
+ * it, converted to FPGA time by the smallest arrival delay seen, so transport and callback latency
+ * don't shift it. Angles are continuous (not wrapped at 360 degrees), include
+ * the AHRS angle adjustment, and are measured clockwise like {@link AHRS#getAngle()}. Rates are in
+ * degrees per second.
+ *
+ * <p>There is a single writer. Readers detect samples overwritten during a read and retry.
+ */
+public class GyroSampleBuffer implements ITimestampedDataSubscriber {
+
+  private static final int CAPACITY = 64;
+  private static final int MASK = CAPACITY - 1;
+
+  // drift of the navX clock against the FPGA clock the offset follows, 100 ppm
+  private static final double OFFSET_DRIFT = 1e-4;
+
+  private final double[] timestamps = new double[CAPACITY];
+  private final double[] angles = new double[CAPACITY];
+  private final double[] rates = new double[CAPACITY];
+  private final DoubleSupplier clock;
+  private volatile long count;
+
+  // navX callback state, owned by the writer
+  private AHRS gyro;
+  private boolean hasYaw;
+  private double lastYaw;
+  private double unwrappedYaw;
+  private long lastSensorTimestamp;
+  private double sensorOffset;
+
+  /**
+   * Construct an empty buffer.
+   *
+   * @param clock time source in seconds, used to timestamp navX samples that arrive without an FPGA
+   *     timestamp. NavX samples are in FPGA time, so this must be the FPGA clock, as {@link
+   *     SwerveDriveConfig#clock} is by default, when a navX is registered.
+   */
+  public GyroSampleBuffer(DoubleSupplier clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Subscribe to the navX timestamped data callbacks.
+   *
+   * @param gyro the navX to subscribe to
+   * @return true if the subscription succeeded
+   */
+  public boolean register(AHRS gyro) {
+    this.gyro = gyro;
+    return gyro.registerCallback(this, null);
+  }
+
+  @Override
+  public void timestampedDataReceived(
+      long systemTimestamp, long sensorTimestamp, AHRSUpdateBase sensorData, Object context) {
+    // the system timestamp is FPGA time in milliseconds when the navX IO thread received the data
+    final double arrival = systemTimestamp > 0L ? systemTimestamp * 0.001 : clock.getAsDouble();
+    final double yaw = sensorData.yaw;
+    final long elapsed = sensorTimestamp - lastSensorTimestamp;
+
+    double rate = 0.0;
+    if (hasYaw) {
+      final double delta = Math.IEEEremainder(yaw - lastYaw, 360.0);
+      unwrappedYaw += delta;
+      if (elapsed > 0) {
+        rate = delta * 1000.0 / elapsed;
+      } else if (count > 0) {
+        rate = rates[(int) (count - 1) & MASK];
+      }
+    } else {
+      unwrappedYaw = yaw;
+    }
+
+    // the navX clock times the measurement; the least-delayed arrival gives its offset to FPGA
+    // time, which creeps up so it follows drift and restarts if the navX clock resets
+    final double offset = arrival - sensorTimestamp * 0.001;
+    if (hasYaw && elapsed >= 0) {
+      sensorOffset = Math.min(offset, sensorOffset + OFFSET_DRIFT * elapsed * 0.001);
+    } else {
+      sensorOffset = offset;
+    }
+    hasYaw = true;
+    lastYaw = yaw;
+    lastSensorTimestamp = sensorTimestamp;
+
+    addSample(
+        sensorTimestamp * 0.001 + sensorOffset, unwrappedYaw + gyro.getAngleAdjustment(), rate);
+  }
+
+  /**
+   * Add a sample. Only one thread may add samples.
+   *
+   * @param timestamp sample time in seconds
+   * @param angle continuous angle in degrees, clockwise
+   * @param rate angular rate in degrees per second, clockwise
+   */
+  public void addSample(double timestamp, double angle, double rate) {
+    final long n = count;
+    final int index = (int) n & MASK;
+    timestamps[index] = timestamp;
+    angles[index] = angle;
+    rates[index] = rate;
+    count = n + 1;
+  }
+
+  /**
+   * Returns true if no samples have been received yet.
+   *
+   * @return true if empty
+   */
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  /**
+   * Estimate the angle at the given time. Times newer than the latest sample are extrapolated using
+   * the latest rate, times between samples are interpolated and times older than the buffer return
+   * the oldest sample.
+   *
+   * @param time the time in seconds
+   * @return the estimated angle in degrees, or 0 if empty
+   */
+  public double getAngle(double time) {
+    while (true) {
+      final long n = count;
+      if (n == 0) {
+        return 0.0;
+      }
+      final double angle = estimate(n, time);
+      if (count - n < CAPACITY / 2) {
+        return angle;
+      }
+    }
+  }
+
+  private double estimate(long n, double time) {
+    int newer = (int) (n - 1) & MASK;
+    if (time >= timestamps[newer]) {
+      return angles[newer] + rates[newer] * (time - timestamps[newer]);
+    }
+    final long available = Math.min(n, CAPACITY / 2);
+    for (long i = 2; i <= available; i++) {
+      final int older = (int) (n - i) & MASK;
+      if (time >= timestamps[older]) {
+        final double span = timestamps[newer] - timestamps[older];
+        if (span <= 0.0) {
+          return angles[newer];
+        }
+        final double fraction = (time - timestamps[older]) / span;
+        return angles[older] + fraction * (angles[newer] - angles[older]);
+      }
+      newer = older;
+    }
+    return angles[newer];
+  }
+
+  /**
+   * Returns the rate of the latest sample.
+   *
+   * @return rate in degrees per second, or 0 if empty
+   */
+  public double getRate() {
+    final long n = count;
+    return n == 0 ? 0.0 : rates[(int) (n - 1) & MASK];
+  }
+
+  /**
+   * Returns the timestamp of the latest sample.
+   *
+   * @return timestamp in seconds, or 0 if empty
+   */
+  public double getLatestTimestamp() {
+    final long n = count;
+    return n == 0 ? 0.0 : timestamps[(int) (n - 1) & MASK];
+  }
+}
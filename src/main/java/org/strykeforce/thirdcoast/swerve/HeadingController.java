@@ -0,0 +1,151 @@
+package org.strykeforce.thirdcoast.swerve;
+
+/**
+ * Holds the robot heading with a PID controller following a trapezoid-limited setpoint profile.
+ *
+ * <p>Angles are continuous gyro angles in degrees, clockwise positive, so goals are never wrapped;
+ * see {@link #setHeading(double, double, double)} for goals given as field headings. Each cycle
+ * the profile setpoint moves toward the goal without exceeding the maximum rotation rate and
+ * acceleration, and the output is the sum of a feedforward of the profile velocity, proportional
+ * feedback on the profile position and damping on the difference between the profile velocity and
+ * the measured gyro rate. The output is a {@link SwerveDrive#drive} azimuth command. Nothing is
+ * allocated after construction.
+ */
+public class HeadingController {
+
+  // longest cycle used to advance the profile, so a stalled loop doesn't jump the setpoint
+  private static final double MAX_DT = 0.1;
+
+  private final double kP;
+  private final double kD;
+  private final double kF;
+  private final double maxVelocity;
+  private final double maxAcceleration;
+  private final double maxOutput;
+  private final double tolerance;
+  private double goal;
+  private double position;
+  private double velocity;
+  private double lastTime = Double.NaN;
+
+  /**
+   * Construct a heading controller.
+   *
+   * @param kP azimuth output per degree of error from the profile setpoint
+   * @param kD azimuth output per degree per second of rate error from the profile setpoint
+   * @param kF azimuth output per degree per second of profile velocity, the inverse of the robot
+   *     rotation rate at full azimuth
+   * @param maxVelocity maximum profile rotation rate in degrees per second
+   * @param maxAcceleration maximum profile rotation acceleration in degrees per second squared
+   * @param maxOutput maximum azimuth output, from 0 to 1.0
+   * @param tolerance heading error in degrees within which the goal is reached
+   */
+  public HeadingController(
+      double kP,
+      double kD,
+      double kF,
+      double maxVelocity,
+      double maxAcceleration,
+      double maxOutput,
+      double tolerance) {
+    if (maxVelocity <= 0.0 || maxAcceleration <= 0.0) {
+      throw new IllegalArgumentException(
+          "heading profile velocity and acceleration must be positive");
+    }
+    if (maxOutput < 0.0 || maxOutput > 1.0) {
+      throw new IllegalArgumentException("max output must be 0 to 1.0: " + maxOutput);
+    }
+    this.kP = kP;
+    this.kD = kD;
+    this.kF = kF;
+    this.maxVelocity = maxVelocity;
+    this.maxAcceleration = maxAcceleration;
+    this.maxOutput = maxOutput;
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Start holding the heading the robot comes to rest at when decelerated from its current rate at
+   * the maximum acceleration, so a released rotation stops smoothly instead of springing back.
+   *
+   * @param angle current gyro angle in degrees
+   * @param rate current gyro rate in degrees per second
+   */
+  public void hold(double angle, double rate) {
+    velocity = Math.max(-maxVelocity, Math.min(maxVelocity, rate));
+    position = angle;
+    goal = angle + velocity * Math.abs(velocity) / (2.0 * maxAcceleration);
+    lastTime = Double.NaN;
+  }
+
+  /**
+   * Start turning to a field heading by the shorter direction, continuing the profile from the
+   * current angle and rate.
+   *
+   * @param angle current gyro angle in degrees
+   * @param rate current gyro rate in degrees per second
+   * @param heading field heading in degrees, clockwise from the gyro zero
+   */
+  public void setHeading(double angle, double rate, double heading) {
+    hold(angle, rate);
+    goal = angle + Math.IEEEremainder(heading - angle, 360.0);
+  }
+
+  /**
+   * Advance the profile and calculate the azimuth output.
+   *
+   * @param angle current gyro angle in degrees
+   * @param rate current gyro rate in degrees per second
+   * @param time current time in seconds
+   * @return azimuth output, from -maxOutput to maxOutput
+   */
+  public double calculate(double angle, double rate, double time) {
+    final double dt =
+        Double.isNaN(lastTime) ? 0.0 : Math.min(Math.max(time - lastTime, 0.0), MAX_DT);
+    lastTime = time;
+
+    // fastest velocity toward the goal that can still stop at it
+    final double distance = goal - position;
+    final double target =
+        Math.copySign(
+            Math.min(maxVelocity, Math.sqrt(2.0 * maxAcceleration * Math.abs(distance))), distance);
+    final double step = maxAcceleration * dt;
+    velocity += Math.max(-step, Math.min(step, target - velocity));
+    position += velocity * dt;
+    if ((goal - position) * distance <= 0.0) {
+      position = goal;
+      velocity = 0.0;
+    }
+
+    final double output = kF * velocity + kP * (position - angle) + kD * (velocity - rate);
+    return Math.max(-maxOutput, Math.min(maxOutput, output));
+  }
+
+  /**
+   * Returns true if the profile has reached the goal and the angle is within tolerance of it.
+   *
+   * @param angle current gyro angle in degrees
+   * @return true if at the goal
+   */
+  public boolean isAtGoal(double angle) {
+    return position == goal && Math.abs(goal - angle) <= tolerance;
+  }
+
+  /**
+   * Returns the goal angle.
+   *
+   * @return the goal as a continuous gyro angle in degrees
+   */
+  public double getGoal() {
+    return goal;
+  }
+
+  /**
+   * Returns the profile setpoint angle.
+   *
+   * @return the setpoint as a continuous gyro angle in degrees
+   */
+  public double getSetpoint() {
+    return position;
+  }
+}
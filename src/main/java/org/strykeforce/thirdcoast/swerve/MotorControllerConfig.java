@@ -1,6 +1,18 @@
 package org.strykeforce.thirdcoast.swerve;
 
 public class MotorControllerConfig {
+  // settings the CTRE wrappers store on the controller that are not configurable here
+  static final int VELOCITY_MEASUREMENT_WINDOW = 64;
+  static final int PEAK_CURRENT_DURATION = 1; // ms
+  static final double CURRENT_LIMIT_TRIGGER_TIME = 1.0; // s
+
+  /**
+   * Version of the way the wrappers apply this configuration, such as the feedback sensor mapping.
+   * Increment it when a wrapper changes what it stores on the controller, so controllers configured
+   * by an older robot program are reconfigured.
+   */
+  static final int CONFIG_HASH_VERSION = 1;
+
   /**
    * peakCurrentLimit -> Talon: peakCurrentLimit, SparkMax: secondaryCurrentLimit
    * continuousCurrentLimit -> Talon: continuousCurrentLimit, SparkMax: smartCurrentLimit
@@ -18,8 +30,54 @@ public class MotorControllerConfig {
 
   public int continuousCurrentLimit = 0;
 
+  /**
+   * Setpoint write coalescing. A setpoint within setpointTolerance of the last value written is not
+   * sent again unless the last write is older than setpointRefreshPeriod seconds.
+   */
+  public double setpointTolerance = 0.0;
+
+  public double setpointRefreshPeriod = 0.1;
+
+  /**
+   * CAN status frame periods in milliseconds, defaults are the vendor defaults.
+   *
+   * <p>generalStatusFramePeriod -> Talon/Victor: Status_1_General, SparkMax: kStatus0
+   * feedbackStatusFramePeriod -> Talon/Victor: Status_2_Feedback0, SparkMax: kStatus1 and kStatus2
+   * canCoderStatusFramePeriod -> CANCoder: SensorData
+   */
+  public int generalStatusFramePeriod = 10,
+      feedbackStatusFramePeriod = 20,
+      canCoderStatusFramePeriod = 10;
+
   public Boolean isAzimuth = true;
 
+  /**
+   * SPARK MAX azimuth with a CANCoder only. If true, the azimuth position loop runs on the SPARK
+   * MAX against its integrated encoder, which is seeded from the CANCoder and periodically
+   * re-synced to it, instead of on the roboRIO against the CANCoder. Positions are in CANCoder
+   * units and the motion cruise velocity and acceleration are in CANCoder units per second and per
+   * second squared.
+   */
+  public boolean onboardAzimuthControl = false;
+
+  /** Use SmartMotion for onboard azimuth control, or plain position control if false. */
+  public boolean azimuthSmartMotion = true;
+
+  /** Azimuth motor rotations per wheel rotation, for onboard azimuth control. */
+  public double azimuthGearRatio = 1.0;
+
+  /**
+   * CANCoder units per wheel rotation, for onboard azimuth control. Should match {@code
+   * SwerveDriveConfig.azimuthTicks}.
+   */
+  public double azimuthUnitsPerRotation = 4096.0;
+
+  /**
+   * Seconds between checks of the integrated encoder against the CANCoder for onboard azimuth
+   * control. Drift is corrected only while the azimuth is nearly stopped. Negative to disable.
+   */
+  public double azimuthResyncPeriod = 1.0;
+
   /** Supported Feedback Sensors * */
   public enum FeedbackSensor {
     CTRE_MAG_ENCODER,
@@ -96,4 +154,62 @@ public class MotorControllerConfig {
   public PIDFSlot slot1 = new PIDFSlot(isAzimuth);
   public PIDFSlot slot2 = new PIDFSlot(isAzimuth);
   public PIDFSlot slot3 = new PIDFSlot(isAzimuth);
+
+  /**
+   * Returns a PID slot by number.
+   *
+   * @param slot the slot number, 0 to 3
+   * @return the slot
+   */
+  public PIDFSlot getSlot(int slot) {
+    switch (slot) {
+      case 0:
+        return slot0;
+      case 1:
+        return slot1;
+      case 2:
+        return slot2;
+      case 3:
+        return slot3;
+      default:
+        throw new IllegalArgumentException("slot must be 0 to 3, got " + slot);
+    }
+  }
+
+  /**
+   * Returns a hash of the settings stored on the motor controller. The hash is the same from one
+   * robot program run to the next, so it can be saved on the controller and compared at startup to
+   * skip reconfiguring it. It includes the settings the wrappers hard-code and {@link
+   * #CONFIG_HASH_VERSION}. Setpoint coalescing and status frame periods are not stored on the
+   * controller and are not included.
+   *
+   * @return the configuration hash, never 0 since that is the controllers' factory default
+   */
+  public int getConfigHash() {
+    int hash = 17;
+    hash = 31 * hash + CONFIG_HASH_VERSION;
+    hash = 31 * hash + VELOCITY_MEASUREMENT_WINDOW;
+    hash = 31 * hash + PEAK_CURRENT_DURATION;
+    hash = 31 * hash + Double.hashCode(CURRENT_LIMIT_TRIGGER_TIME);
+    hash = 31 * hash + Double.hashCode(peakCurrentLimit);
+    hash = 31 * hash + Double.hashCode(motionAcceleration);
+    hash = 31 * hash + Double.hashCode(motionCruiseVelocity);
+    hash = 31 * hash + Double.hashCode(voltageCompensation);
+    hash = 31 * hash + continuousCurrentLimit;
+    hash = 31 * hash + (isAzimuth ? 1 : 0);
+    // enum hashCode is identity-based and changes between runs, ordinal does not
+    hash = 31 * hash + feedbackSensor.ordinal();
+    hash = 31 * hash + neutralMode.ordinal();
+    hash = 31 * hash + motorType.ordinal();
+    for (PIDFSlot slot : new PIDFSlot[] {slot0, slot1, slot2, slot3}) {
+      hash = 31 * hash + Double.hashCode(slot.kP);
+      hash = 31 * hash + Double.hashCode(slot.kI);
+      hash = 31 * hash + Double.hashCode(slot.kD);
+      hash = 31 * hash + Double.hashCode(slot.kF);
+      hash = 31 * hash + Double.hashCode(slot.kIZone);
+      hash = 31 * hash + Double.hashCode(slot.kAllowableError);
+      hash = 31 * hash + Double.hashCode(slot.kMaxIAccum);
+    }
+    return hash != 0 ? hash : 1;
+  }
 }
@@ -0,0 +1,148 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.strykeforce.thirdcoast.swerve.MotorControllerWrapper.ConfigStatus;
+
+/**
+ * Configures motor controllers concurrently at startup.
+ *
+ * <p>Vendor configuration calls block until the controller acknowledges each parameter, so
+ * configuring controllers one after another spends most of robot startup waiting on the CAN bus.
+ * This runs {@link MotorControllerWrapper#configure()} for several controllers at once on a small
+ * pool of threads. The pool is bounded because every controller shares the roboRIO's single CAN
+ * bus; more threads than the bus can keep busy only add retries and timeouts.
+ *
+ * <p>Wrappers should be constructed with configuration deferred, for example {@code new
+ * TalonSRXWrapper(config, id, false)}, and configured here before they are used.
+ */
+public class MotorControllerConfigurator {
+
+  /** Default number of controllers configured at once. */
+  public static final int DEFAULT_THREADS = 4;
+
+  private final int threads;
+  private int applied;
+  private int unchanged;
+  private int failed;
+
+  /** Construct a configurator using {@link #DEFAULT_THREADS} threads. */
+  public MotorControllerConfigurator() {
+    this(DEFAULT_THREADS);
+  }
+
+  /**
+   * Construct a configurator.
+   *
+   * @param threads maximum number of controllers configured at once
+   */
+  public MotorControllerConfigurator(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1, got " + threads);
+    }
+    this.threads = threads;
+  }
+
+  /**
+   * Configure motor controllers, returning when all are done.
+   *
+   * @param controllers the controllers to configure
+   * @return the status of each controller, in order
+   */
+  public ConfigStatus[] configure(List<? extends MotorControllerWrapper> controllers) {
+    final ConfigStatus[] statuses = new ConfigStatus[controllers.size()];
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.min(threads, Math.max(1, controllers.size())),
+            runnable -> {
+              Thread thread = new Thread(runnable, "MotorControllerConfigurator");
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      final List<Future<ConfigStatus>> futures = new ArrayList<>(controllers.size());
+      for (MotorControllerWrapper controller : controllers) {
+        futures.add(executor.submit(controller::configure));
+      }
+      for (int i = 0; i < statuses.length; i++) {
+        statuses[i] = getStatus(futures.get(i));
+        count(statuses[i]);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return statuses;
+  }
+
+  private static ConfigStatus getStatus(Future<ConfigStatus> future) {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException("motor controller configuration failed", cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while configuring motor controllers", e);
+    }
+  }
+
+  private void count(ConfigStatus status) {
+    switch (status) {
+      case APPLIED:
+        applied++;
+        break;
+      case UNCHANGED:
+        unchanged++;
+        break;
+      default:
+        failed++;
+        break;
+    }
+  }
+
+  /**
+   * Returns the number of controllers whose stored configuration was written.
+   *
+   * @return the applied count
+   */
+  public int getAppliedCount() {
+    return applied;
+  }
+
+  /**
+   * Returns the number of controllers that already had their configuration.
+   *
+   * @return the unchanged count
+   */
+  public int getUnchangedCount() {
+    return unchanged;
+  }
+
+  /**
+   * Returns the number of controllers whose configuration could not be verified.
+   *
+   * @return the failed count
+   */
+  public int getFailedCount() {
+    return failed;
+  }
+
+  @Override
+  public String toString() {
+    return "MotorControllerConfigurator{"
+        + "applied="
+        + applied
+        + ", unchanged="
+        + unchanged
+        + ", failed="
+        + failed
+        + '}';
+  }
+}
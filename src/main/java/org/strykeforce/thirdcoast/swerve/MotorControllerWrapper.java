@@ -10,11 +10,35 @@ public abstract interface MotorControllerWrapper {
     AZIMUTH,
   }
 
-  
+  /* Result of configuring a motor controller */
+  public enum ConfigStatus {
+    UNCHANGED, // controller already had the configuration, nothing stored was written
+    APPLIED,
+    FAILED,
+  }
+
+  /* Applies the configuration, skipping stored settings the controller already has */
+  public default ConfigStatus configure() {
+    return ConfigStatus.UNCHANGED;
+  }
+
+  /*
+   * Updates one closed-loop gain on the controller without reconfiguring or resetting it. Motion
+   * parameters apply to every slot and ignore the slot number.
+   */
+  public default void setGain(int slot, Gain gain, double value) {}
 
   /* Sets motor controller output using current drive mode */
   public abstract void set(double output);
 
+  /*
+   * Sets motor controller output with the sensor position measured this cycle, which controllers
+   * that close the loop on the roboRIO use instead of reading the sensor again
+   */
+  public default void set(double output, double position) {
+    set(output);
+  }
+
   /* Sets current sensor position */
   public abstract void setSensorPosition(double position);
 
@@ -32,6 +56,20 @@ public abstract interface MotorControllerWrapper {
 
   public abstract double getCurrent();
 
+  /* Reads position, absolute position, velocity, output and current into a snapshot slot */
+  public default void readInto(SensorSnapshot snapshot, int slot) {
+    snapshot.position[slot] = getPosition();
+    snapshot.absPosition[slot] = getAbsPosition();
+    snapshot.velocity[slot] = getVelocity();
+    snapshot.output[slot] = getOutput();
+    snapshot.current[slot] = getCurrent();
+  }
+
+  /* Returns the vendor error code of the most recent call to the motor controller, 0 if none */
+  public default int getLastErrorCode() {
+    return 0;
+  }
+
   public abstract String toString();
 
   public abstract int getDeviceID();
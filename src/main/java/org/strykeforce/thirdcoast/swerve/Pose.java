@@ -0,0 +1,52 @@
+package org.strykeforce.thirdcoast.swerve;
+
+/**
+ * Robot pose and velocity as estimated by {@link SwerveOdometry}. Instances are mutable so callers
+ * can reuse one when reading the pose every cycle.
+ *
+ * <p>Field coordinates have positive x to the right and positive y forward when the gyro reads
+ * zero. Heading follows the gyro convention of degrees measured clockwise.
+ */
+public class Pose {
+
+  /** Field X position. */
+  public double x;
+
+  /** Field Y position. */
+  public double y;
+
+  /** Heading in degrees, clockwise. */
+  public double heading;
+
+  /** Field X velocity, per second. */
+  public double vx;
+
+  /** Field Y velocity, per second. */
+  public double vy;
+
+  /** Rotation rate in degrees per second, clockwise. */
+  public double omega;
+
+  /** FPGA timestamp in seconds of the wheel measurements this pose is based on. */
+  public double timestamp;
+
+  @Override
+  public String toString() {
+    return "Pose{"
+        + "x="
+        + x
+        + ", y="
+        + y
+        + ", heading="
+        + heading
+        + ", vx="
+        + vx
+        + ", vy="
+        + vy
+        + ", omega="
+        + omega
+        + ", timestamp="
+        + timestamp
+        + '}';
+  }
+}
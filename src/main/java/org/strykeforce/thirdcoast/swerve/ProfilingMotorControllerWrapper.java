@@ -0,0 +1,190 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import java.util.Objects;
+import org.strykeforce.thirdcoast.talon.Errors;
+import org.strykeforce.thirdcoast.telemetry.LatencyHistogram;
+import org.strykeforce.thirdcoast.telemetry.LoopProfiler;
+
+/**
+ * Decorates a motor controller wrapper to time each call into it and count the vendor error codes
+ * it returns.
+ *
+ * <p>Call latencies are recorded in {@link LoopProfiler} histograms named after the controller
+ * type, device ID and method, for example {@code "TalonSRX 7 set"}. Non-zero error codes are
+ * counted per device in {@link Errors}. Each method should be called from a single thread, which
+ * matches how {@link SwerveDrive} uses its wrappers: sensors are read on the robot loop and, with
+ * pipelined actuation, setpoints are written on the actuator thread.
+ */
+public class ProfilingMotorControllerWrapper implements MotorControllerWrapper {
+
+  private final MotorControllerWrapper delegate;
+  private final int id;
+  private final LatencyHistogram setTimer;
+  private final LatencyHistogram setSensorPositionTimer;
+  private final LatencyHistogram getPositionTimer;
+  private final LatencyHistogram getAbsPositionTimer;
+  private final LatencyHistogram getVelocityTimer;
+  private final LatencyHistogram getOutputTimer;
+  private final LatencyHistogram getCurrentTimer;
+  private final LatencyHistogram readIntoTimer;
+
+  /**
+   * Wrap a motor controller, registering its histograms with the default {@link LoopProfiler}.
+   *
+   * @param delegate the motor controller wrapper to profile
+   */
+  public ProfilingMotorControllerWrapper(MotorControllerWrapper delegate) {
+    this(delegate, LoopProfiler.getInstance());
+  }
+
+  /**
+   * Wrap a motor controller.
+   *
+   * @param delegate the motor controller wrapper to profile
+   * @param profiler the profiler to register histograms with
+   */
+  public ProfilingMotorControllerWrapper(MotorControllerWrapper delegate, LoopProfiler profiler) {
+    this.delegate = Objects.requireNonNull(delegate);
+    id = delegate.getDeviceID();
+    final String type = delegate.getClass().getSimpleName().replace("Wrapper", "");
+    final String prefix = type + " " + id + " ";
+    setTimer = profiler.register(prefix + "set");
+    setSensorPositionTimer = profiler.register(prefix + "setSensorPosition");
+    getPositionTimer = profiler.register(prefix + "getPosition");
+    getAbsPositionTimer = profiler.register(prefix + "getAbsPosition");
+    getVelocityTimer = profiler.register(prefix + "getVelocity");
+    getOutputTimer = profiler.register(prefix + "getOutput");
+    getCurrentTimer = profiler.register(prefix + "getCurrent");
+    readIntoTimer = profiler.register(prefix + "readInto");
+  }
+
+  /**
+   * Returns the profiled motor controller wrapper.
+   *
+   * @return the delegate
+   */
+  public MotorControllerWrapper getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public ConfigStatus configure() {
+    return delegate.configure();
+  }
+
+  @Override
+  public void setGain(int slot, Gain gain, double value) {
+    delegate.setGain(slot, gain, value);
+  }
+
+  @Override
+  public void set(double output) {
+    final long start = System.nanoTime();
+    delegate.set(output);
+    setTimer.record(System.nanoTime() - start);
+    checkError();
+  }
+
+  @Override
+  public void set(double output, double position) {
+    final long start = System.nanoTime();
+    delegate.set(output, position);
+    setTimer.record(System.nanoTime() - start);
+    checkError();
+  }
+
+  @Override
+  public void setSensorPosition(double position) {
+    final long start = System.nanoTime();
+    delegate.setSensorPosition(position);
+    setSensorPositionTimer.record(System.nanoTime() - start);
+    checkError();
+  }
+
+  @Override
+  public void setNeutralOutput() {
+    delegate.setNeutralOutput();
+    checkError();
+  }
+
+  @Override
+  public double getPosition() {
+    final long start = System.nanoTime();
+    final double position = delegate.getPosition();
+    getPositionTimer.record(System.nanoTime() - start);
+    checkError();
+    return position;
+  }
+
+  @Override
+  public double getAbsPosition() {
+    final long start = System.nanoTime();
+    final double position = delegate.getAbsPosition();
+    getAbsPositionTimer.record(System.nanoTime() - start);
+    checkError();
+    return position;
+  }
+
+  @Override
+  public double getVelocity() {
+    final long start = System.nanoTime();
+    final double velocity = delegate.getVelocity();
+    getVelocityTimer.record(System.nanoTime() - start);
+    checkError();
+    return velocity;
+  }
+
+  @Override
+  public double getOutput() {
+    final long start = System.nanoTime();
+    final double output = delegate.getOutput();
+    getOutputTimer.record(System.nanoTime() - start);
+    checkError();
+    return output;
+  }
+
+  @Override
+  public double getCurrent() {
+    final long start = System.nanoTime();
+    final double current = delegate.getCurrent();
+    getCurrentTimer.record(System.nanoTime() - start);
+    checkError();
+    return current;
+  }
+
+  // delegated whole so controller-specific snapshots, like the SPARK MAX captured position, work
+  @Override
+  public void readInto(SensorSnapshot snapshot, int slot) {
+    final long start = System.nanoTime();
+    delegate.readInto(snapshot, slot);
+    readIntoTimer.record(System.nanoTime() - start);
+    checkError();
+  }
+
+  @Override
+  public int getLastErrorCode() {
+    return delegate.getLastErrorCode();
+  }
+
+  private void checkError() {
+    final int errorCode = delegate.getLastErrorCode();
+    if (errorCode != 0) {
+      Errors.record(id, errorCode);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return delegate.toString();
+  }
+
+  @Override
+  public int getDeviceID() {
+    return id;
+  }
+
+  @Override
+  public void setDriveMode(DriveMode mode) {
+    delegate.setDriveMode(mode);
+  }
+}
@@ -0,0 +1,52 @@
+package org.strykeforce.thirdcoast.swerve;
+
+/**
+ * Per-cycle sensor readings for a group of motor controllers, stored as parallel primitive arrays
+ * indexed by slot. Controllers fill their slot with {@link MotorControllerWrapper#readInto}, after
+ * which consumers read the arrays instead of calling the vendor APIs again.
+ *
+ * <p>{@link SwerveDrive} assigns slot {@code 2 * i} to the azimuth and {@code 2 * i + 1} to the
+ * drive controller of wheel {@code i}.
+ */
+public class SensorSnapshot {
+
+  /** Selected sensor position, see {@link MotorControllerWrapper#getPosition()}. */
+  public final double[] position;
+
+  /** Absolute sensor position, see {@link MotorControllerWrapper#getAbsPosition()}. */
+  public final double[] absPosition;
+
+  /** Sensor velocity, see {@link MotorControllerWrapper#getVelocity()}. */
+  public final double[] velocity;
+
+  /** Output voltage, see {@link MotorControllerWrapper#getOutput()}. */
+  public final double[] output;
+
+  /** Output current, see {@link MotorControllerWrapper#getCurrent()}. */
+  public final double[] current;
+
+  /** Time in seconds the snapshot was captured. */
+  public double timestamp;
+
+  /**
+   * Construct a snapshot with room for the given number of controllers.
+   *
+   * @param size number of slots
+   */
+  public SensorSnapshot(int size) {
+    position = new double[size];
+    absPosition = new double[size];
+    velocity = new double[size];
+    output = new double[size];
+    current = new double[size];
+  }
+
+  /**
+   * Returns the number of slots.
+   *
+   * @return the slot count
+   */
+  public int size() {
+    return position.length;
+  }
+}
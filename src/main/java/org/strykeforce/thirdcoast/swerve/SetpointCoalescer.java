@@ -0,0 +1,123 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.strykeforce.thirdcoast.telemetry.TelemetryEntry;
+import org.strykeforce.thirdcoast.telemetry.TelemetryRegistry;
+
+/**
+ * Suppresses redundant motor controller setpoint writes.
+ *
+ * <p>A write is needed when the setpoint moves more than the tolerance from the last value written,
+ * when the last write is older than the refresh period, or after {@link #invalidate()} is called
+ * because the controller's mode or sensor changed. Wrappers call {@link #shouldWrite(double)}
+ * immediately before calling the vendor {@code set()}.
+ *
+ * <p>Written and suppressed counts are totalled across all wrappers. They count {@code set()}
+ * calls, not CAN frames: a suppressed call saves a control frame on a SPARK MAX, which sends one
+ * per call, but only the vendor call on a Talon or Victor, whose control frames are sent on a fixed
+ * period regardless. {@link #updateTelemetry()} publishes them to the {@link TelemetryRegistry}.
+ */
+public class SetpointCoalescer {
+
+  private static final long RATE_SAMPLE_NANOS = 1_000_000_000L;
+  private static final AtomicLong written = new AtomicLong();
+  private static final AtomicLong suppressed = new AtomicLong();
+  private static long lastSampleSuppressed;
+  private static long lastSampleTime = System.nanoTime();
+  private static final TelemetryEntry writtenTelemetry =
+      TelemetryRegistry.getInstance().register("SetpointCoalescer written");
+  private static final TelemetryEntry suppressedTelemetry =
+      TelemetryRegistry.getInstance().register("SetpointCoalescer suppressed");
+  private static final TelemetryEntry suppressedRateTelemetry =
+      TelemetryRegistry.getInstance().register("SetpointCoalescer suppressed per sec");
+
+  private final double tolerance;
+  private final long refreshNanos;
+  private double lastSetpoint;
+  private long lastWriteTime;
+  private boolean valid = false;
+
+  /**
+   * Construct a coalescer.
+   *
+   * @param tolerance setpoints within this distance of the last written value are suppressed
+   * @param refreshPeriod a setpoint is always written if the last write is older than this, in
+   *     seconds
+   */
+  public SetpointCoalescer(double tolerance, double refreshPeriod) {
+    this.tolerance = tolerance;
+    this.refreshNanos = (long) (refreshPeriod * 1e9);
+  }
+
+  /**
+   * Returns true if the setpoint should be written and records it as written, otherwise counts it
+   * as suppressed.
+   *
+   * @param setpoint the setpoint about to be written
+   * @return true if the setpoint must be sent to the controller
+   */
+  public boolean shouldWrite(double setpoint) {
+    final long now = System.nanoTime();
+    if (valid
+        && Math.abs(setpoint - lastSetpoint) <= tolerance
+        && now - lastWriteTime < refreshNanos) {
+      suppressed.incrementAndGet();
+      return false;
+    }
+    valid = true;
+    lastSetpoint = setpoint;
+    lastWriteTime = now;
+    written.incrementAndGet();
+    return true;
+  }
+
+  /** Force the next setpoint to be written. */
+  public void invalidate() {
+    valid = false;
+  }
+
+  /**
+   * Returns the total number of setpoints written by all wrappers.
+   *
+   * @return written count
+   */
+  public static long getWrittenCount() {
+    return written.get();
+  }
+
+  /**
+   * Returns the total number of setpoints suppressed by all wrappers.
+   *
+   * @return suppressed count
+   */
+  public static long getSuppressedCount() {
+    return suppressed.get();
+  }
+
+  /**
+   * Returns the number of {@code set()} calls suppressed per second since the previous call.
+   *
+   * @return suppressed calls per second
+   */
+  public static synchronized double getSuppressedPerSecond() {
+    final long now = System.nanoTime();
+    final long count = suppressed.get();
+    final double elapsed = (now - lastSampleTime) * 1e-9;
+    final double rate = elapsed > 0.0 ? (count - lastSampleSuppressed) / elapsed : 0.0;
+    lastSampleSuppressed = count;
+    lastSampleTime = now;
+    return rate;
+  }
+
+  /**
+   * Update the written and suppressed count telemetry, and the suppressed per second rate once a
+   * second. Call from the robot loop. This does not allocate.
+   */
+  public static synchronized void updateTelemetry() {
+    writtenTelemetry.set(written.get());
+    suppressedTelemetry.set(suppressed.get());
+    if (System.nanoTime() - lastSampleTime >= RATE_SAMPLE_NANOS) {
+      suppressedRateTelemetry.set(getSuppressedPerSecond());
+    }
+  }
+}
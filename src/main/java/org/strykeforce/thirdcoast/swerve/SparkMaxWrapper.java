@@ -1,20 +1,26 @@
 package org.strykeforce.thirdcoast.swerve;
 
 import com.ctre.phoenix.sensors.CANCoder;
+import com.ctre.phoenix.sensors.CANCoderStatusFrame;
 import com.revrobotics.CANEncoder;
+import com.revrobotics.CANError;
 import com.revrobotics.CANPIDController;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkMax.IdleMode;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
 
 import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.FeedbackSensor;
+import org.strykeforce.thirdcoast.talon.Errors;
+import org.strykeforce.thirdcoast.telemetry.TelemetryEntry;
+import org.strykeforce.thirdcoast.telemetry.TelemetryRegistry;
 
 import edu.wpi.first.wpilibj.controller.PIDController;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 import com.revrobotics.ControlType;
 import com.revrobotics.EncoderType;
 import java.text.DecimalFormat;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SparkMaxWrapper implements MotorControllerWrapper {
   private CANSparkMax sparkMax;
@@ -28,11 +34,30 @@ public class SparkMaxWrapper implements MotorControllerWrapper {
   private int id = -1;
   private int slot = 0;
   private int TICKS = 4096;
+  private SetpointCoalescer coalescer;
+  private TelemetryEntry referenceTelemetry;
+  private final MotorControllerConfig config;
+  // CANCoder software PID gains from setGain, published as a copy and taken by the next set, which
+  // may run on another thread
+  private final double[] remoteGains = new double[3];
+  private final AtomicReference<double[]> pendingRemoteGains = new AtomicReference<>();
 
   private DriveMode driveMode = DriveMode.TELEOP;
   private FeedbackSensor feedbackSensor = FeedbackSensor.INTEGRATED_SENSOR;
   private Boolean remoteSensor = false;
 
+  // onboard azimuth control, integrated encoder in CANCoder units seeded from the CANCoder
+  private static final double RESYNC_MAX_SPEED = 0.05; // wheel rotations per second
+  private boolean onboardAzimuth = false;
+  private ControlType azimuthControlType = ControlType.kSmartMotion;
+  private long resyncPeriodNanos = -1;
+  private long lastResync;
+  private double resyncMaxVelocity;
+  private double resyncTolerance;
+
+  // CANCoder software PID reset requested by a sensor zero or neutral output, taken by the next set
+  private volatile boolean remotePidResetRequested = false;
+
   private MotorType getRevMotorType(MotorControllerConfig.MotorType type) {
     switch (type) {
       case BRUSHED:
@@ -91,105 +116,320 @@ public class SparkMaxWrapper implements MotorControllerWrapper {
   }
 
   public SparkMaxWrapper(MotorControllerConfig config, int id) {
+    this(config, id, true);
+  }
+
+  /**
+   * Construct the wrapper, optionally deferring configuration so that several controllers can be
+   * configured concurrently with {@link MotorControllerConfigurator}.
+   *
+   * @param config the motor controller configuration
+   * @param id the CAN ID
+   * @param configure true to configure the controller now, false to call {@link #configure()}
+   *     later
+   */
+  public SparkMaxWrapper(MotorControllerConfig config, int id, boolean configure) {
+    this.config = config;
     isAzimuth = config.isAzimuth;
     this.id = id;
+    coalescer = new SetpointCoalescer(config.setpointTolerance, config.setpointRefreshPeriod);
+    referenceTelemetry = TelemetryRegistry.getInstance().register("SparkMax " + id + " reference");
 
     sparkMax = new CANSparkMax(id, getRevMotorType(config.motorType));
     pidController = sparkMax.getPIDController();
     feedbackSensor = config.feedbackSensor;
 
-    sparkMax.restoreFactoryDefaults();
-
     if (feedbackSensor == FeedbackSensor.INTEGRATED_SENSOR) {
       remoteSensor = false;
-      pidController.setP(config.slot0.kP, 0);
-      pidController.setI(config.slot0.kI, 0);
-      pidController.setD(config.slot0.kD, 0);
-      pidController.setFF(config.slot0.kF, 0);
-      pidController.setIZone(config.slot0.kIZone, 0);
-      pidController.setIMaxAccum(config.slot0.kMaxIAccum, 0);
-      pidController.setSmartMotionMaxVelocity(config.motionCruiseVelocity, 0);
-      pidController.setSmartMotionMaxAccel(config.motionAcceleration, 0);
-      pidController.setSmartMotionAllowedClosedLoopError(config.slot0.kAllowableError, 0);
-
-      pidController.setP(config.slot1.kP, 1);
-      pidController.setI(config.slot1.kI, 1);
-      pidController.setD(config.slot1.kD, 1);
-      pidController.setFF(config.slot1.kF, 1);
-      pidController.setIZone(config.slot1.kIZone, 1);
-      pidController.setIMaxAccum(config.slot1.kMaxIAccum, 1);
-      pidController.setSmartMotionMaxVelocity(config.motionCruiseVelocity, 1);
-      pidController.setSmartMotionMaxAccel(config.motionAcceleration, 1);
-      pidController.setSmartMotionAllowedClosedLoopError(config.slot1.kAllowableError, 1);
-
-      pidController.setP(config.slot2.kP, 2);
-      pidController.setI(config.slot2.kI, 2);
-      pidController.setD(config.slot2.kD, 2);
-      pidController.setFF(config.slot2.kF, 2);
-      pidController.setIZone(config.slot2.kIZone, 2);
-      pidController.setIMaxAccum(config.slot2.kMaxIAccum, 2);
-      pidController.setSmartMotionMaxVelocity(config.motionCruiseVelocity, 2);
-      pidController.setSmartMotionMaxAccel(config.motionAcceleration, 2);
-      pidController.setSmartMotionAllowedClosedLoopError(config.slot2.kAllowableError, 2);
-
-      pidController.setP(config.slot3.kP, 3);
-      pidController.setI(config.slot3.kI, 3);
-      pidController.setD(config.slot3.kD, 3);
-      pidController.setFF(config.slot3.kF, 3);
-      pidController.setIZone(config.slot3.kIZone, 3);
-      pidController.setIMaxAccum(config.slot3.kMaxIAccum, 3);
-      pidController.setSmartMotionMaxVelocity(config.motionCruiseVelocity, 3);
-      pidController.setSmartMotionMaxAccel(config.motionAcceleration, 3);
-      pidController.setSmartMotionAllowedClosedLoopError(config.slot3.kAllowableError, 3);
       canEncoder = sparkMax.getEncoder();
+    } else if (isAzimuth && config.onboardAzimuthControl) {
+      // CANCoder seeds the integrated encoder, which the SPARK MAX position loop uses
+      remoteSensor = true;
+      onboardAzimuth = true;
+      encoder = new CANCoder(id + 20);
+      canEncoder = sparkMax.getEncoder();
+      azimuthControlType =
+          config.azimuthSmartMotion ? ControlType.kSmartMotion : ControlType.kPosition;
+      resyncPeriodNanos =
+          config.azimuthResyncPeriod < 0 ? -1 : (long) (config.azimuthResyncPeriod * 1e9);
+      resyncMaxVelocity = RESYNC_MAX_SPEED * config.azimuthUnitsPerRotation;
+      resyncTolerance = Math.max(1.0, config.slot0.kAllowableError);
     } else {
       //CANCoder feedback device
       remoteSensor = true;
       encoder = new CANCoder(id + 20);
       PIDController = new PIDController(config.slot0.kP, config.slot0.kI, config.slot0.kD);
+      remoteGains[0] = config.slot0.kP;
+      remoteGains[1] = config.slot0.kI;
+      remoteGains[2] = config.slot0.kD;
     }
 
-    
+    if (configure) {
+      configure();
+    }
+  }
 
+  /**
+   * Configure the SPARK MAX. The SPARK MAX has no spare parameter to store a configuration hash in,
+   * so the PID slots, idle mode and voltage compensation are read back and compared instead. If
+   * they differ, the controller is restored to factory defaults, configured and the settings are
+   * burned to flash. Current limits can't be read back and are set every time.
+   */
+  @Override
+  public ConfigStatus configure() {
+    ConfigStatus status = ConfigStatus.UNCHANGED;
+    if (!isConfigured()) {
+      sparkMax.restoreFactoryDefaults();
+      if (onboardAzimuth) {
+        final double unitsPerMotorRotation =
+            config.azimuthUnitsPerRotation / config.azimuthGearRatio;
+        canEncoder.setPositionConversionFactor(unitsPerMotorRotation);
+        canEncoder.setVelocityConversionFactor(unitsPerMotorRotation / 60.0);
+      }
+      if (!remoteSensor || onboardAzimuth) {
+        configureSlot(config.slot0, 0);
+        configureSlot(config.slot1, 1);
+        configureSlot(config.slot2, 2);
+        configureSlot(config.slot3, 3);
+      }
+      sparkMax.enableVoltageCompensation(config.voltageCompensation);
+      sparkMax.setIdleMode(getRevIdleMode(config.neutralMode));
+      status = ConfigStatus.APPLIED;
+    }
+
+    // not readable from the controller, set every time
     sparkMax.setSmartCurrentLimit(config.continuousCurrentLimit);
     sparkMax.setSecondaryCurrentLimit(config.peakCurrentLimit);
-    sparkMax.enableVoltageCompensation(config.voltageCompensation);
-    sparkMax.setIdleMode(getRevIdleMode(config.neutralMode));
+
+    if (status == ConfigStatus.APPLIED) {
+      Errors.record(id, sparkMax.burnFlash().value);
+      status = isConfigured() ? ConfigStatus.APPLIED : ConfigStatus.FAILED;
+    }
+
+    // not stored on the controller
+    sparkMax.setPeriodicFramePeriod(PeriodicFrame.kStatus0, config.generalStatusFramePeriod);
+    sparkMax.setPeriodicFramePeriod(PeriodicFrame.kStatus1, config.feedbackStatusFramePeriod);
+    sparkMax.setPeriodicFramePeriod(PeriodicFrame.kStatus2, config.feedbackStatusFramePeriod);
+    if (remoteSensor) {
+      encoder.setStatusFramePeriod(
+          CANCoderStatusFrame.SensorData, config.canCoderStatusFramePeriod);
+    }
+    if (onboardAzimuth) {
+      Errors.record(id, canEncoder.setPosition(encoder.getPosition()).value);
+      lastResync = System.nanoTime();
+    }
+    return status;
+  }
+
+  private void configureSlot(PIDFSlot gains, int slot) {
+    pidController.setP(gains.kP, slot);
+    pidController.setI(gains.kI, slot);
+    pidController.setD(gains.kD, slot);
+    pidController.setFF(gains.kF, slot);
+    pidController.setIZone(gains.kIZone, slot);
+    pidController.setIMaxAccum(gains.kMaxIAccum, slot);
+    pidController.setSmartMotionMaxVelocity(config.motionCruiseVelocity, slot);
+    pidController.setSmartMotionMaxAccel(config.motionAcceleration, slot);
+    pidController.setSmartMotionAllowedClosedLoopError(gains.kAllowableError, slot);
+  }
+
+  private boolean isConfigured() {
+    if (sparkMax.getIdleMode() != getRevIdleMode(config.neutralMode)
+        || !matches(sparkMax.getVoltageCompensationNominalVoltage(), config.voltageCompensation)) {
+      return false;
+    }
+    if (onboardAzimuth) {
+      final double unitsPerMotorRotation = config.azimuthUnitsPerRotation / config.azimuthGearRatio;
+      if (!matches(canEncoder.getPositionConversionFactor(), unitsPerMotorRotation)
+          || !matches(canEncoder.getVelocityConversionFactor(), unitsPerMotorRotation / 60.0)) {
+        return false;
+      }
+    }
+    return (remoteSensor && !onboardAzimuth)
+        || (isSlotConfigured(config.slot0, 0)
+            && isSlotConfigured(config.slot1, 1)
+            && isSlotConfigured(config.slot2, 2)
+            && isSlotConfigured(config.slot3, 3));
+  }
+
+  private boolean isSlotConfigured(PIDFSlot gains, int slot) {
+    return matches(pidController.getP(slot), gains.kP)
+        && matches(pidController.getI(slot), gains.kI)
+        && matches(pidController.getD(slot), gains.kD)
+        && matches(pidController.getFF(slot), gains.kF)
+        && matches(pidController.getIZone(slot), gains.kIZone)
+        && matches(pidController.getIMaxAccum(slot), gains.kMaxIAccum)
+        && matches(pidController.getSmartMotionMaxVelocity(slot), config.motionCruiseVelocity)
+        && matches(pidController.getSmartMotionMaxAccel(slot), config.motionAcceleration)
+        && matches(
+            pidController.getSmartMotionAllowedClosedLoopError(slot), gains.kAllowableError);
+  }
+
+  // the SPARK MAX stores parameters as floats
+  private static boolean matches(double actual, double expected) {
+    return (float) actual == (float) expected;
+  }
+
+  /*
+   * The SPARK MAX applies the gain to its RAM settings without restoring defaults. It is not burned
+   * to flash, so a power cycle restores the configured gains. Slot 0 gains of the CANCoder software
+   * PID are applied by the next set instead, and the SPARK MAX gains are left alone.
+   */
+  @Override
+  public void setGain(int slot, Gain gain, double value) {
+    if (remoteSensor && !onboardAzimuth) {
+      if (slot == 0) {
+        setRemoteGain(gain, value);
+      }
+      return;
+    }
+    if (!gain.isSlotGain()) {
+      for (int i = 0; i < Gain.SLOTS; i++) {
+        Errors.record(id, setRevGain(i, gain, value).value);
+      }
+      return;
+    }
+    Errors.record(id, setRevGain(slot, gain, value).value);
+  }
+
+  private synchronized void setRemoteGain(Gain gain, double value) {
+    switch (gain) {
+      case P:
+        remoteGains[0] = value;
+        break;
+      case I:
+        remoteGains[1] = value;
+        break;
+      case D:
+        remoteGains[2] = value;
+        break;
+      default:
+        // not used by the roboRIO PIDController
+        return;
+    }
+    pendingRemoteGains.set(remoteGains.clone());
+  }
+
+  private CANError setRevGain(int slot, Gain gain, double value) {
+    switch (gain) {
+      case P:
+        return pidController.setP(value, slot);
+      case I:
+        return pidController.setI(value, slot);
+      case D:
+        return pidController.setD(value, slot);
+      case F:
+        return pidController.setFF(value, slot);
+      case I_ZONE:
+        return pidController.setIZone(value, slot);
+      case ALLOWABLE_ERROR:
+        return pidController.setSmartMotionAllowedClosedLoopError(value, slot);
+      case MAX_I_ACCUM:
+        return pidController.setIMaxAccum(value, slot);
+      case MOTION_CRUISE_VELOCITY:
+        return pidController.setSmartMotionMaxVelocity(value, slot);
+      default:
+        return pidController.setSmartMotionMaxAccel(value, slot);
+    }
   }
 
   public void set(double output) {
+    set(output, remoteSensor && !onboardAzimuth ? encoder.getPosition() : Double.NaN);
+  }
+
+  /*
+   * The CANCoder software PID runs on the position the setpoint was planned from, so the sensor
+   * isn't read again on the actuator thread. Other controllers ignore the position.
+   */
+  @Override
+  public void set(double output, double position) {
+    if (onboardAzimuth) {
+      resyncIfDue();
+      referenceTelemetry.set(output);
+      if (coalescer.shouldWrite(output)) {
+        pidController.setReference(output, azimuthControlType, slot);
+      }
+      return;
+    }
+
     if (remoteSensor)
     {
-      double tmp_output = PIDController.calculate(getPosition(), output) / 4096.0;
+      final double[] gains = pendingRemoteGains.getAndSet(null);
+      if (gains != null) {
+        PIDController.setPID(gains[0], gains[1], gains[2]);
+      }
+      if (remotePidResetRequested) {
+        remotePidResetRequested = false;
+        PIDController.reset();
+      }
+      double tmp_output = PIDController.calculate(position, output) / 4096.0;
       output = tmp_output > 1.0 ? 1.0 : tmp_output < -1.0 ? -1.0 : tmp_output;
     }
 
     output *= (driveInverted ? -1 : 1);
-    SmartDashboard.putNumber("SM REF", output * 5500);
-    pidController.setReference(output * 5500, ControlType.kVelocity, slot);
+    referenceTelemetry.set(output * 5500);
+    if (coalescer.shouldWrite(output)) {
+      pidController.setReference(output * 5500, ControlType.kVelocity, slot);
+    }
+  }
+
+  /*
+   * Re-sync the integrated encoder to the CANCoder to correct drift, for example from belt slip or
+   * gear backlash. Only done while the azimuth is nearly stopped, since the two sensors report at
+   * different rates and would disagree while moving.
+   */
+  private void resyncIfDue() {
+    if (resyncPeriodNanos < 0) {
+      return;
+    }
+    final long now = System.nanoTime();
+    if (now - lastResync < resyncPeriodNanos) {
+      return;
+    }
+    final double absolute = encoder.getPosition();
+    if (Math.abs(encoder.getVelocity()) < resyncMaxVelocity) {
+      lastResync = now;
+      if (Math.abs(absolute - canEncoder.getPosition()) > resyncTolerance) {
+        canEncoder.setPosition(absolute);
+        coalescer.invalidate();
+      }
+    }
   }
 
   public void setSensorPosition(double position) {
-    encoder.setPosition(position);
+    if (onboardAzimuth) {
+      encoder.setPosition(position);
+      canEncoder.setPosition(position);
+      lastResync = System.nanoTime();
+    } else if (remoteSensor) {
+      encoder.setPosition(position);
+      remotePidResetRequested = true;
+    } else {
+      canEncoder.setPosition(position);
+    }
+    coalescer.invalidate();
   }
 
   public void setNeutralOutput() {
-    set(0.0);
+    sparkMax.stopMotor();
+    remotePidResetRequested = true;
+    coalescer.invalidate();
   }
 
   public void setInverted(boolean invert){
     driveInverted = invert;
+    coalescer.invalidate();
   }
   public double getPosition() {
-    return encoder.getPosition();
+    return remoteSensor && !onboardAzimuth ? encoder.getPosition() : canEncoder.getPosition();
   }
 
   public double getAbsPosition() {
-    return encoder.getAbsolutePosition();
+    return remoteSensor ? encoder.getAbsolutePosition() : canEncoder.getPosition();
   }
 
   public double getVelocity() {
-    return encoder.getVelocity();
+    return remoteSensor && !onboardAzimuth ? encoder.getVelocity() : canEncoder.getVelocity();
   }
 
   public double getOutput() {
@@ -200,6 +440,17 @@ public class SparkMaxWrapper implements MotorControllerWrapper {
     return sparkMax.getOutputCurrent();
   }
 
+  @Override
+  public void readInto(SensorSnapshot snapshot, int slot) {
+    final double position = getPosition();
+    snapshot.position[slot] = position;
+    // integrated encoder is both the selected and absolute position
+    snapshot.absPosition[slot] = remoteSensor ? getAbsPosition() : position;
+    snapshot.velocity[slot] = getVelocity();
+    snapshot.output[slot] = getOutput();
+    snapshot.current[slot] = getCurrent();
+  }
+
   @Override
   public String toString() {
     DecimalFormat df = new DecimalFormat("#.0000");
@@ -223,5 +474,11 @@ public class SparkMaxWrapper implements MotorControllerWrapper {
 
   public void setDriveMode(DriveMode mode) {
     driveMode = mode;
+    coalescer.invalidate();
+  }
+
+  @Override
+  public int getLastErrorCode() {
+    return sparkMax.getLastError().value;
   }
 }
@@ -0,0 +1,135 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.strykeforce.thirdcoast.telemetry.LatencyHistogram;
+
+/**
+ * Performs wheel motor controller writes on a dedicated thread.
+ *
+ * <p>The control thread plans into {@link #getBuffer()} and calls {@link #publish()}; the actuator
+ * thread wakes and writes the latest published command to the controllers. Commands are handed off
+ * through three preallocated buffers so neither side ever waits for the other: if the actuator is
+ * still busy when a newer command is published, the older unwritten one is skipped. An azimuth
+ * action in a command that may be skipped is repeated in the following commands that would leave
+ * the azimuth alone, until the actuator has written one of them, so one-shot actions like {@link
+ * WheelCommand#AZIMUTH_NEUTRAL} are never lost.
+ *
+ * <p>Each write is timed into a histogram, the time pipelining removes from the control thread. The
+ * thread runs until {@link #stop()}.
+ */
+class SwerveActuator {
+
+  private static final int INDEX = 0b011;
+  private static final int FRESH = 0b100;
+
+  private final Wheel[] wheels;
+  private final WheelCommand[] buffers = new WheelCommand[3];
+  private final AtomicInteger middle = new AtomicInteger(1);
+  private final Thread thread;
+  private final LatencyHistogram writeTiming;
+  private volatile boolean running = true;
+
+  // producer state
+  private int back = 0;
+  private long sequence;
+  private final int[] pendingAction;
+  private final double[] pendingAzimuth;
+  private final long[] pendingSequence;
+
+  // consumer state
+  private int front = 2;
+  private volatile long completed;
+  private volatile double averageNanos;
+
+  SwerveActuator(Wheel[] wheels, LatencyHistogram writeTiming) {
+    this.wheels = wheels;
+    this.writeTiming = writeTiming;
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = new WheelCommand(wheels.length);
+    }
+    pendingAction = new int[wheels.length];
+    pendingAzimuth = new double[wheels.length];
+    pendingSequence = new long[wheels.length];
+    thread = new Thread(this::run, "SwerveActuator");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Returns the buffer the control thread may plan into until the next {@link #publish()}.
+   *
+   * @return the producer's buffer
+   */
+  WheelCommand getBuffer() {
+    return buffers[back];
+  }
+
+  /** Hand the planned buffer to the actuator thread. */
+  void publish() {
+    final WheelCommand command = buffers[back];
+    command.sequence = ++sequence;
+    final long written = completed;
+    for (int i = 0; i < pendingAction.length; i++) {
+      if (command.azimuthAction[i] != WheelCommand.AZIMUTH_NONE) {
+        pendingAction[i] = command.azimuthAction[i];
+        pendingAzimuth[i] = command.azimuth[i];
+        pendingSequence[i] = command.sequence;
+      } else if (pendingSequence[i] > written) {
+        // the last azimuth action may be skipped, so repeat it instead of leaving the azimuth
+        command.azimuthAction[i] = pendingAction[i];
+        command.azimuth[i] = pendingAzimuth[i];
+        pendingSequence[i] = command.sequence;
+      }
+    }
+    back = middle.getAndSet(back | FRESH) & INDEX;
+    LockSupport.unpark(thread);
+  }
+
+  /** Wait until the most recently published command has been written. */
+  void flush() {
+    while (running && completed < sequence) {
+      Thread.yield();
+    }
+  }
+
+  /** Stop the actuator thread after its current command and wait for it to exit. */
+  void stop() {
+    running = false;
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns the average time spent writing one command to the controllers.
+   *
+   * @return average write time in nanoseconds
+   */
+  double getAverageNanos() {
+    return averageNanos;
+  }
+
+  private void run() {
+    while (running) {
+      if ((middle.get() & FRESH) == 0) {
+        LockSupport.park(this);
+        continue;
+      }
+      front = middle.getAndSet(front) & INDEX;
+      final WheelCommand command = buffers[front];
+
+      final long start = System.nanoTime();
+      for (int i = 0; i < wheels.length; i++) {
+        wheels[i].actuate(command, i);
+      }
+      final long elapsed = System.nanoTime() - start;
+      writeTiming.record(elapsed);
+      averageNanos += 0.1 * (elapsed - averageNanos);
+      completed = command.sequence;
+    }
+  }
+}
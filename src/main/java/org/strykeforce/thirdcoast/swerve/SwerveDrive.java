@@ -1,57 +1,193 @@
 package org.strykeforce.thirdcoast.swerve;
 
 import com.kauailabs.navx.frc.AHRS;
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.Preferences;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.DoubleSupplier;
 //import org.slf4j.Logger;
 //import org.slf4j.LoggerFactory;
+import org.strykeforce.thirdcoast.log.DataLogger;
 import org.strykeforce.thirdcoast.talon.Errors;
+import org.strykeforce.thirdcoast.telemetry.LatencyHistogram;
+import org.strykeforce.thirdcoast.telemetry.LoopProfiler;
+import org.strykeforce.thirdcoast.telemetry.TelemetryEntry;
+import org.strykeforce.thirdcoast.telemetry.TelemetryRegistry;
 
 /**
  * Control a Third Coast swerve drive.
  *
  * <p>Wheels are a array numbered 0-3 from front to back, with even numbers on the left side when
- * facing forward.
+ * facing forward. Other wheel counts and geometries are supported by supplying wheel locations in
+ * {@link SwerveDriveConfig#wheelLocations}.
  *
  * <p>Derivation of inverse kinematic equations are from Ether's <a
  * href="https://www.chiefdelphi.com/media/papers/2426">Swerve Kinematics and Programming</a>.
  *
+ * <p>By default {@link #drive} runs on the calling thread. After {@link #startControlLoop(double)}
+ * the drive runs on its own {@link Notifier} instead: {@code drive} only posts the latest request
+ * to a mailbox, and the wheels, sensor snapshot and kinematics arrays are used only by the control
+ * thread.
+ *
+ * <p>With {@link SwerveDriveConfig#pipelinedActuation} enabled, the drive plans each cycle's wheel
+ * setpoints into a preallocated {@link WheelCommand} and hands it to an actuator thread that
+ * performs the motor controller writes. The loop profiler's {@code SwerveActuator write} timing is
+ * then the time taken off the drive thread. {@link #close()} stops the drive's threads.
+ *
  * @see Wheel
  */
 @SuppressWarnings("unused")
-public class SwerveDrive {
+public class SwerveDrive implements AutoCloseable {
 
   public static final int DEFAULT_ABSOLUTE_AZIMUTH_OFFSET = 200;
+  private static final long NO_HEADING_REQUEST = Double.doubleToRawLongBits(Double.NaN);
+  // data log fields for each drive cycle and for each wheel, see getDataLogFields
+  private static final int LOG_FIELDS = 8;
+  private static final int LOG_WHEEL_FIELDS = 11;
   //private static final Logger logger = LoggerFactory.getLogger(SwerveDrive.class);
-  private static final int WHEEL_COUNT = 4;
   private final AHRS gyro;
-  private final double kLengthComponent;
-  private final double kWidthComponent;
+  private final GyroSampleBuffer gyroSamples;
+  private final DoubleSupplier clock;
+  private final SwerveKinematics kinematics;
   private final double kGyroRateCorrection;
+  private final double gyroActuationDelay;
+  private final double azimuthIdleTimeout;
   private final Wheel[] wheels;
-  private final double[] ws = new double[WHEEL_COUNT];
-  private final double[] wa = new double[WHEEL_COUNT];
+  private final MotorControllerWrapper[] controllers;
+  private final SensorSnapshot sensors;
+  private final double[] ws;
+  private final double[] wa;
+  private final WheelCommand command;
+  private final SwerveActuator actuator;
+  private final SwerveSetpointGenerator setpointGenerator;
+  private final HeadingController headingController;
+  private final AtomicLong headingRequest = new AtomicLong(NO_HEADING_REQUEST);
+  private volatile boolean isHoldingHeading;
+  private volatile double headingResetTime = Double.NaN;
+  private final DrivePowerManager powerManager;
+  private final DoubleSupplier busVoltage;
+  private final double maxWheelSpeed;
+  private final double robotPeriod;
+  private final double[] chassis = new double[2];
+  private double averageDriveNanos;
+  private final TelemetryEntry forwardTelemetry;
+  private final TelemetryEntry strafeTelemetry;
+  private final TelemetryEntry azimuthTelemetry;
+  private final TelemetryEntry gyroAngleTelemetry;
+  private final TelemetryEntry powerScaleTelemetry;
+  private volatile DataLogger dataLogger;
+  private volatile GainTuner gainTuner;
+  private final LatencyHistogram driveTiming;
+  private final LatencyHistogram sensorTiming;
+  private final LatencyHistogram gyroTiming;
+  private final LatencyHistogram kinematicsTiming;
+  private final LatencyHistogram actuationTiming;
   private boolean isFieldOriented;
+  private boolean isIdle;
+
+  // control loop mailbox, written by callers of drive and read by the control thread
+  private final StampedLock requestLock = new StampedLock();
+  private double requestForward;
+  private double requestStrafe;
+  private double requestAzimuth;
+  private double requestCenterX;
+  private double requestCenterY;
+  private volatile boolean stopRequested;
+  private volatile boolean zeroRequested;
+  private volatile boolean isControlLoopRunning;
+  private Notifier controlLoop;
+  private volatile double discretizationPeriod;
+  private boolean isAzimuthDisabled;
+  private double idleStart;
+
+  // odometry inputs published with each sensor snapshot, read by the odometry thread
+  private final StampedLock odometryLock = new StampedLock();
+  private final double[] odometryDrivePosition;
+  private final double[] odometryAzimuth;
+  private double odometryTimestamp = Double.NaN;
 
   public SwerveDrive(SwerveDriveConfig config) {
     gyro = config.gyro;
     wheels = config.wheels;
+    clock = config.clock;
+    gyroActuationDelay = config.gyroActuationDelay;
+    azimuthIdleTimeout = config.azimuthIdleTimeout;
 
     final boolean summarizeErrors = config.summarizeTalonErrors;
     Errors.setSummarized(summarizeErrors);
     Errors.setCount(0);
     //logger.debug("TalonSRX configuration errors summarized = {}", summarizeErrors);
 
-    double length = config.length;
-    double width = config.width;
-    double radius = Math.hypot(length, width);
-    kLengthComponent = length / radius;
-    kWidthComponent = width / radius;
+    kinematics = new SwerveKinematics(config.getWheelLocations());
+    if (wheels.length != kinematics.getWheelCount()) {
+      throw new IllegalArgumentException(
+          "expected " + kinematics.getWheelCount() + " wheels, got " + wheels.length);
+    }
+    ws = new double[wheels.length];
+    wa = new double[wheels.length];
+    odometryDrivePosition = new double[wheels.length];
+    odometryAzimuth = new double[wheels.length];
+    maxWheelSpeed = config.maxWheelSpeed;
+    robotPeriod = config.robotPeriod;
+    discretizationPeriod = robotPeriod;
+
+    // azimuth in even slots, drive in odd slots
+    controllers = new MotorControllerWrapper[2 * wheels.length];
+    sensors = new SensorSnapshot(controllers.length);
+    for (int i = 0; i < wheels.length; i++) {
+      controllers[2 * i] = wheels[i].getAzimuthTalon();
+      controllers[2 * i + 1] = wheels[i].getDriveTalon();
+      wheels[i].setSensorSnapshot(sensors, 2 * i);
+      if (config.azimuthEstimateTimeConstant >= 0.0) {
+        wheels[i].setAzimuthEstimator(
+            new AzimuthEstimator(config.azimuthTicks, config.azimuthEstimateTimeConstant));
+      }
+    }
+
+    command = new WheelCommand(wheels.length);
+    headingController = config.headingController;
+    setpointGenerator =
+        SwerveSetpointGenerator.isEnabled(config)
+            ? new SwerveSetpointGenerator(config, wheels.length)
+            : null;
+    powerManager =
+        DrivePowerManager.isEnabled(config) ? new DrivePowerManager(config, wheels.length) : null;
+    busVoltage = config.busVoltage;
+
+    final TelemetryRegistry telemetry = TelemetryRegistry.getInstance();
+    forwardTelemetry = telemetry.register("SwerveDrive forward");
+    strafeTelemetry = telemetry.register("SwerveDrive strafe");
+    azimuthTelemetry = telemetry.register("SwerveDrive azimuth");
+    gyroAngleTelemetry = telemetry.register("SwerveDrive gyro angle");
+    powerScaleTelemetry = telemetry.register("SwerveDrive power scale");
+
+    final LoopProfiler profiler = LoopProfiler.getInstance();
+    driveTiming = profiler.register("SwerveDrive drive");
+    sensorTiming = profiler.register("SwerveDrive sensors");
+    gyroTiming = profiler.register("SwerveDrive gyro");
+    kinematicsTiming = profiler.register("SwerveDrive kinematics");
+    actuationTiming = profiler.register("SwerveDrive actuation");
+    actuator =
+        config.pipelinedActuation
+            ? new SwerveActuator(wheels, profiler.register("SwerveActuator write"))
+            : null;
 
     //logger.info("gyro is configured: {}", gyro != null);
     //logger.info("gyro is connected: {}", gyro != null && gyro.isConnected());
-    setFieldOriented(gyro != null && gyro.isConnected());
+    final boolean gyroConnected = gyro != null && gyro.isConnected();
+    if (config.gyroSamples != null) {
+      gyroSamples = config.gyroSamples;
+    } else if (gyro != null) {
+      // samples start arriving once the gyro connects
+      gyroSamples = new GyroSampleBuffer(clock);
+      gyroSamples.register(gyro);
+    } else {
+      gyroSamples = null;
+    }
+    setFieldOriented(gyroConnected || config.gyroSamples != null);
 
-    if (isFieldOriented) {
+    if (gyroConnected) {
       gyro.enableLogging(config.gyroLoggingEnabled);
       double robotPeriod = config.robotPeriod;
       double gyroRateCoeff = config.gyroRateCoeff;
@@ -64,8 +200,7 @@ public class SwerveDrive {
       kGyroRateCorrection = 0;
     }
 
-    //logger.debug("length = {}", length);
-    //logger.debug("width = {}", width);
+    //logger.debug("wheel count = {}", wheels.length);
     //logger.debug("enableGyroLogging = {}", config.gyroLoggingEnabled);
     //logger.debug("gyroRateCorrection = {}", kGyroRateCorrection);
   }
@@ -93,16 +228,22 @@ public class SwerveDrive {
   }
 
   /**
-   * Set all four wheels to specified values.
+   * Set all wheels to specified values.
    *
    * @param azimuth -0.5 to 0.5 rotations, measured clockwise with zero being the robot
    *     straight-ahead position
    * @param drive 0 to 1 in the direction of the wheel azimuth
    */
   public void set(double azimuth, double drive) {
-    for (Wheel wheel : wheels) {
-      wheel.set(azimuth, drive);
+    if (isControlLoopRunning) {
+      throw new IllegalStateException("control loop is running, use drive()");
     }
+    updateSensors();
+    final WheelCommand command = getCommandBuffer();
+    for (int i = 0; i < wheels.length; i++) {
+      wheels[i].plan(azimuth, drive, command, i);
+    }
+    dispatch(command);
   }
 
   /**
@@ -113,49 +254,309 @@ public class SwerveDrive {
    * @param azimuth robot rotation, from -1.0 (CCW) to 1.0 (CW)
    */
   public void drive(double forward, double strafe, double azimuth) {
+    drive(forward, strafe, azimuth, 0.0, 0.0);
+  }
 
-    // Use gyro for field-oriented drive. We use getAngle instead of getYaw to enable arbitrary
-    // autonomous starting positions.
-    if (isFieldOriented) {
-      double angle = gyro.getAngle();
-      angle += gyro.getRate() * kGyroRateCorrection;
-      angle = Math.IEEEremainder(angle, 360.0);
+  /**
+   * Drive the robot in given field-relative direction and with given rotation about a
+   * robot-relative point, for example a bumper corner. See {@link
+   * SwerveKinematics#setCenterOfRotation(double, double)}.
+   *
+   * @param forward Y-axis movement, from -1.0 (reverse) to 1.0 (forward)
+   * @param strafe X-axis movement, from -1.0 (left) to 1.0 (right)
+   * @param azimuth robot rotation, from -1.0 (CCW) to 1.0 (CW)
+   * @param centerX center of rotation X (right) location, in {@link SwerveDriveConfig#width} units
+   * @param centerY center of rotation Y (forward) location, in {@link SwerveDriveConfig#length}
+   *     units
+   */
+  public void drive(
+      double forward, double strafe, double azimuth, double centerX, double centerY) {
+    if (isControlLoopRunning) {
+      post(forward, strafe, azimuth, centerX, centerY);
+      return;
+    }
+    execute(forward, strafe, azimuth, centerX, centerY);
+  }
+
+  private void execute(
+      double forward, double strafe, double azimuth, double centerX, double centerY) {
+    final long start = System.nanoTime();
+    final GainTuner tuner = gainTuner;
+    if (tuner != null) {
+      tuner.applyPending();
+    }
+    updateSensors();
+    long mark = System.nanoTime();
+    sensorTiming.record(mark - start);
+    forwardTelemetry.set(forward);
+    strafeTelemetry.set(strafe);
+    azimuthTelemetry.set(azimuth);
+    final double inputForward = forward;
+    final double inputStrafe = strafe;
+    final double inputAzimuth = azimuth;
+    double angle = 0.0;
+
+    // hold heading while rotation is released, before idle detection so holding isn't idle
+    if (headingController != null && hasHeading()) {
+      azimuth = holdHeading(forward, strafe, azimuth);
+    }
+    final boolean disableAzimuth = updateIdle(forward == 0.0 && strafe == 0.0 && azimuth == 0.0);
+
+    // limit chassis acceleration in the frame the inputs are given in
+    if (setpointGenerator != null) {
+      setpointGenerator.limitChassis(forward, strafe, azimuth, sensors.timestamp);
+      forward = setpointGenerator.getForward();
+      strafe = setpointGenerator.getStrafe();
+      azimuth = setpointGenerator.getRotation();
+    }
 
-      angle = Math.toRadians(angle);
-      final double temp = forward * Math.cos(angle) + strafe * Math.sin(angle);
-      strafe = strafe * Math.cos(angle) - forward * Math.sin(angle);
+    // Use gyro for field-oriented drive. We use the continuous angle instead of yaw to enable
+    // arbitrary autonomous starting positions.
+    if (isFieldOriented) {
+      angle = Math.IEEEremainder(getFieldOrientationAngle(), 360.0);
+      gyroAngleTelemetry.set(angle);
+      final long now = System.nanoTime();
+      gyroTiming.record(now - mark);
+      mark = now;
+
+      final double radians = Math.toRadians(angle);
+      final double temp = forward * Math.cos(radians) + strafe * Math.sin(radians);
+      strafe = strafe * Math.cos(radians) - forward * Math.sin(radians);
       forward = temp;
     }
 
-    final double a = strafe - azimuth * kLengthComponent;
-    final double b = strafe + azimuth * kLengthComponent;
-    final double c = forward - azimuth * kWidthComponent;
-    final double d = forward + azimuth * kWidthComponent;
-
-    // wheel speed
-    ws[0] = Math.hypot(b, d);
-    ws[1] = Math.hypot(b, c);
-    ws[2] = Math.hypot(a, d);
-    ws[3] = Math.hypot(a, c);
-
-    // wheel azimuth
-    wa[0] = Math.atan2(b, d) * 0.5 / Math.PI;
-    wa[1] = Math.atan2(b, c) * 0.5 / Math.PI;
-    wa[2] = Math.atan2(a, d) * 0.5 / Math.PI;
-    wa[3] = Math.atan2(a, c) * 0.5 / Math.PI;
-
-    // normalize wheel speed
-    final double maxWheelSpeed = Math.max(Math.max(ws[0], ws[1]), Math.max(ws[2], ws[3]));
-    if (maxWheelSpeed > 1.0) {
-      for (int i = 0; i < WHEEL_COUNT; i++) {
-        ws[i] /= maxWheelSpeed;
+    // recalculates the kinematics coefficients only if the center of rotation moved
+    kinematics.setCenterOfRotation(centerX, centerY);
+
+    // command the translation as a twist over the period, so rotation doesn't skew the path
+    if (maxWheelSpeed > 0.0) {
+      final double rotationRate = azimuth * maxWheelSpeed / kinematics.getRadius();
+      chassis[0] = strafe;
+      chassis[1] = forward;
+      SwerveKinematics.discretize(chassis, rotationRate * discretizationPeriod);
+      strafe = chassis[0];
+      forward = chassis[1];
+    }
+
+    // wheel speed and azimuth
+    kinematics.inverse(forward, strafe, azimuth, ws, wa);
+    if (setpointGenerator != null) {
+      setpointGenerator.limitWheels(ws, wa);
+    }
+    if (powerManager != null) {
+      final double scale = powerManager.scale(ws, sensors, 1, 2, busVoltage.getAsDouble());
+      powerScaleTelemetry.set(scale);
+      if (setpointGenerator != null && scale < 1.0) {
+        setpointGenerator.scaleWheelSpeeds(scale);
       }
     }
 
     // set wheels
-    for (int i = 0; i < WHEEL_COUNT; i++) {
-      wheels[i].set(wa[i], ws[i]);
+    final WheelCommand command = getCommandBuffer();
+    for (int i = 0; i < wheels.length; i++) {
+      wheels[i].plan(wa[i], ws[i], command, i);
+      if (disableAzimuth) {
+        command.azimuthAction[i] = WheelCommand.AZIMUTH_NEUTRAL;
+      }
+    }
+    long now = System.nanoTime();
+    kinematicsTiming.record(now - mark);
+    mark = now;
+    dispatch(command);
+    now = System.nanoTime();
+    actuationTiming.record(now - mark);
+
+    final DataLogger logger = dataLogger;
+    if (logger != null) {
+      log(logger, command, inputForward, inputStrafe, inputAzimuth, angle);
     }
+    now = System.nanoTime();
+    driveTiming.record(now - start);
+    averageDriveNanos += 0.1 * ((now - start) - averageDriveNanos);
+  }
+
+  /** Write one data log record, in the order given by {@link #getDataLogFields()}. */
+  private void log(
+      DataLogger logger,
+      WheelCommand command,
+      double forward,
+      double strafe,
+      double azimuth,
+      double angle) {
+    if (!logger.tryClaim()) {
+      return;
+    }
+    logger.put(sensors.timestamp);
+    logger.put(forward);
+    logger.put(strafe);
+    logger.put(azimuth);
+    logger.put(angle);
+    logger.put(getGyroRate());
+    logger.put(powerManager != null ? powerManager.getBusVoltage() : Double.NaN);
+    logger.put(getPowerScale());
+    for (int i = 0; i < wheels.length; i++) {
+      final int slot = 2 * i;
+      logger.put(ws[i]);
+      logger.put(wa[i]);
+      logger.put(sensors.position[slot]);
+      logger.put(wheels[i].getSnapshotAbsolutePosition());
+      logger.put(sensors.velocity[slot]);
+      logger.put(sensors.output[slot]);
+      logger.put(sensors.current[slot]);
+      logger.put(sensors.output[slot + 1]);
+      logger.put(sensors.current[slot + 1]);
+      final boolean azimuthSet = command.azimuthAction[i] == WheelCommand.AZIMUTH_SET;
+      logger.put(azimuthSet ? command.azimuth[i] : Double.NaN);
+      logger.put(command.drive[i]);
+    }
+    logger.commit();
+  }
+
+  private boolean hasHeading() {
+    return gyroSamples != null ? !gyroSamples.isEmpty() : gyro != null;
+  }
+
+  /** Returns the continuous gyro angle from the cached samples if there are any. */
+  private double getHeading() {
+    if (gyroSamples != null) {
+      return gyroSamples.getAngle(sensors.timestamp);
+    }
+    return gyro.getAngle();
+  }
+
+  /**
+   * Returns the heading controller's azimuth output, or the driver's azimuth while they rotate.
+   * The heading is captured when the driver releases rotation and snap requests are taken here.
+   */
+  private double holdHeading(double forward, double strafe, double azimuth) {
+    final double resetTime = headingResetTime;
+    if (!Double.isNaN(resetTime)) {
+      // recapture once the cached gyro samples are from after the gyro was zeroed
+      if (azimuth == 0.0 && gyroSamples != null && gyroSamples.getLatestTimestamp() <= resetTime) {
+        isHoldingHeading = false;
+        return 0.0;
+      }
+      headingResetTime = Double.NaN;
+      isHoldingHeading = false;
+    }
+    // a snap request waits out the reset above
+    final double heading = Double.longBitsToDouble(headingRequest.getAndSet(NO_HEADING_REQUEST));
+    if (azimuth != 0.0) {
+      isHoldingHeading = false;
+      return azimuth;
+    }
+    final double angle = getHeading();
+    final double rate = getGyroRate();
+    if (!Double.isNaN(heading)) {
+      headingController.setHeading(angle, rate, heading);
+      isHoldingHeading = true;
+    } else if (!isHoldingHeading) {
+      headingController.hold(angle, rate);
+      isHoldingHeading = true;
+    }
+    final double output = headingController.calculate(angle, rate, sensors.timestamp);
+    // let a stationary robot at its heading go idle
+    if (forward == 0.0 && strafe == 0.0 && headingController.isAtGoal(angle)) {
+      return 0.0;
+    }
+    return output;
+  }
+
+  /**
+   * Turn to a field heading by the shorter direction and hold it, if the drive has a heading
+   * controller. The request is dropped if the driver is rotating when the drive next runs.
+   *
+   * @param heading field heading in degrees, clockwise from the gyro zero
+   */
+  public void snapHeading(double heading) {
+    headingRequest.set(Double.doubleToRawLongBits(heading));
+  }
+
+  /**
+   * Drop the held heading and capture the current one, for when the gyro has been zeroed or
+   * adjusted and the held heading is in the old frame. A pending snap request is kept.
+   */
+  public void resetHeadingHold() {
+    headingResetTime = clock.getAsDouble();
+  }
+
+  /**
+   * Returns true if the heading controller is holding a heading, false while the driver rotates
+   * or if there is no heading controller.
+   *
+   * @return true if holding heading
+   */
+  public boolean isHoldingHeading() {
+    return isHoldingHeading;
+  }
+
+  /**
+   * Returns the wheel speed scale applied by the drive power budget in the last cycle, see {@link
+   * DrivePowerManager}.
+   *
+   * @return the scale, from 0 to 1.0, or 1.0 if there is no budget
+   */
+  public double getPowerScale() {
+    return powerManager != null ? powerManager.getScale() : 1.0;
+  }
+
+  private double getGyroRate() {
+    if (gyroSamples != null && !gyroSamples.isEmpty()) {
+      return gyroSamples.getRate();
+    }
+    return gyro != null ? gyro.getRate() : 0.0;
+  }
+
+  /**
+   * Track idle time, returning true once when the idle timeout expires and azimuth closed-loop
+   * should be disabled.
+   */
+  private boolean updateIdle(boolean idle) {
+    if (!idle) {
+      isIdle = false;
+      isAzimuthDisabled = false;
+      return false;
+    }
+    final double now = sensors.timestamp;
+    if (!isIdle) {
+      isIdle = true;
+      idleStart = now;
+    }
+    if (!isAzimuthDisabled && azimuthIdleTimeout >= 0.0 && now - idleStart >= azimuthIdleTimeout) {
+      isAzimuthDisabled = true;
+      return true;
+    }
+    return false;
+  }
+
+  private WheelCommand getCommandBuffer() {
+    return actuator != null ? actuator.getBuffer() : command;
+  }
+
+  /** Write a planned command to the wheels, or hand it to the actuator thread if pipelined. */
+  private void dispatch(WheelCommand command) {
+    if (actuator != null) {
+      actuator.publish();
+      return;
+    }
+    for (int i = 0; i < wheels.length; i++) {
+      wheels[i].actuate(command, i);
+    }
+  }
+
+  /**
+   * Returns the heading to use for field-oriented driving. This is the timestamped gyro sample
+   * heading extrapolated to the expected actuation time; until the first sample arrives it falls
+   * back to reading the gyro directly with the linear rate correction.
+   */
+  private double getFieldOrientationAngle() {
+    if (gyroSamples != null && !gyroSamples.isEmpty()) {
+      return gyroSamples.getAngle(clock.getAsDouble() + gyroActuationDelay);
+    }
+    if (gyro != null) {
+      return gyro.getAngle() + gyro.getRate() * kGyroRateCorrection;
+    }
+    return 0.0;
   }
 
   /**
@@ -164,12 +565,160 @@ public class SwerveDrive {
    * thereby prevent wheel rotation if the wheels were moved manually while the robot was disabled.
    */
   public void stop() {
-    for (Wheel wheel : wheels) {
-      wheel.stop();
+    if (isControlLoopRunning) {
+      post(0.0, 0.0, 0.0, 0.0, 0.0);
+      stopRequested = true;
+      return;
+    }
+    stopWheels();
+  }
+
+  private void stopWheels() {
+    updateSensors();
+    isHoldingHeading = false;
+    if (setpointGenerator != null) {
+      setpointGenerator.reset();
+    }
+    if (powerManager != null) {
+      powerManager.reset();
+    }
+    final WheelCommand command = getCommandBuffer();
+    for (int i = 0; i < wheels.length; i++) {
+      wheels[i].planStop(command, i);
     }
+    dispatch(command);
     //logger.info("stopped all wheels");
   }
 
+  /**
+   * Read every azimuth and drive controller's sensors once into the drive's sensor snapshot. This
+   * is called at the start of {@link #drive}, {@link #set} and {@link #stop}.
+   */
+  public void updateSensors() {
+    for (int i = 0; i < controllers.length; i++) {
+      controllers[i].readInto(sensors, i);
+    }
+    sensors.timestamp = clock.getAsDouble();
+    for (Wheel wheel : wheels) {
+      wheel.updateAzimuthEstimate();
+    }
+    publishOdometryInputs();
+  }
+
+  private void publishOdometryInputs() {
+    final long stamp = odometryLock.writeLock();
+    try {
+      for (int i = 0; i < wheels.length; i++) {
+        odometryDrivePosition[i] = sensors.position[2 * i + 1];
+        odometryAzimuth[i] = wheels[i].getSnapshotAzimuthRotations();
+      }
+      odometryTimestamp = sensors.timestamp;
+    } finally {
+      odometryLock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Copy the wheel drive positions and azimuths captured by the most recent {@link
+   * #updateSensors()}, for odometry running on another thread. This does not allocate, block or
+   * call the motor controllers.
+   *
+   * @param drivePosition drive positions output, in the drive controller's native units
+   * @param azimuthRotations azimuths output, in rotations as in {@link Wheel#getAzimuthRotations()}
+   * @return the time the sensors were captured in seconds, or NaN if they haven't been yet
+   */
+  public double getOdometryInputs(double[] drivePosition, double[] azimuthRotations) {
+    while (true) {
+      final long stamp = odometryLock.tryOptimisticRead();
+      for (int i = 0; i < wheels.length; i++) {
+        drivePosition[i] = odometryDrivePosition[i];
+        azimuthRotations[i] = odometryAzimuth[i];
+      }
+      final double timestamp = odometryTimestamp;
+      if (stamp != 0L && odometryLock.validate(stamp)) {
+        return timestamp;
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Returns the field names of the records written to a data logger set with {@link
+   * #setDataLogger(DataLogger)}. Each {@link #drive} cycle records its inputs, the field-oriented
+   * gyro angle and rate, the bus voltage read for the power budget (NaN if none) and the applied
+   * power scale, and for each wheel the calculated speed and azimuth, the azimuth controller
+   * position, absolute position, velocity, output and current, the drive controller output and
+   * current, and the commanded azimuth setpoint (NaN if not sent) and drive output before
+   * closed-loop scaling. Once an azimuth estimator is zeroed, the absolute position is in the
+   * relative encoder's frame.
+   *
+   * @return the data log field names
+   */
+  public String[] getDataLogFields() {
+    final String[] fields = new String[LOG_FIELDS + LOG_WHEEL_FIELDS * wheels.length];
+    int f = 0;
+    fields[f++] = "timestamp";
+    fields[f++] = "forward";
+    fields[f++] = "strafe";
+    fields[f++] = "azimuth";
+    fields[f++] = "gyro_angle";
+    fields[f++] = "gyro_rate";
+    fields[f++] = "bus_voltage";
+    fields[f++] = "power_scale";
+    for (int i = 0; i < wheels.length; i++) {
+      fields[f++] = "ws" + i;
+      fields[f++] = "wa" + i;
+      fields[f++] = "azimuth_position" + i;
+      fields[f++] = "azimuth_abs_position" + i;
+      fields[f++] = "azimuth_velocity" + i;
+      fields[f++] = "azimuth_output" + i;
+      fields[f++] = "azimuth_current" + i;
+      fields[f++] = "drive_output" + i;
+      fields[f++] = "drive_current" + i;
+      fields[f++] = "azimuth_setpoint" + i;
+      fields[f++] = "drive_setpoint" + i;
+    }
+    return fields;
+  }
+
+  /**
+   * Record every {@link #drive} cycle to a data logger, or stop recording if null. The logger must
+   * be constructed with {@link #getDataLogFields()}.
+   *
+   * @param logger the started data logger, or null
+   */
+  public void setDataLogger(DataLogger logger) {
+    if (logger != null && logger.getFieldCount() != LOG_FIELDS + LOG_WHEEL_FIELDS * wheels.length) {
+      throw new IllegalArgumentException("data logger fields do not match getDataLogFields()");
+    }
+    dataLogger = logger;
+  }
+
+  /**
+   * Apply a gain tuner's changes at the start of each {@link #drive} cycle, on the thread that runs
+   * the drive, instead of on the tuner's thread. The tuner is set to {@link
+   * GainTuner#setDeferred(boolean) deferred}; null stops applying changes.
+   *
+   * @param tuner the gain tuner for this drive's motor controllers, or null
+   */
+  public void setGainTuner(GainTuner tuner) {
+    if (tuner != null) {
+      tuner.setDeferred(true);
+    }
+    gainTuner = tuner;
+  }
+
+  /**
+   * Returns the sensor snapshot captured by the most recent {@link #updateSensors()}. Azimuth
+   * controllers are in slot {@code 2 * i} and drive controllers in slot {@code 2 * i + 1} for wheel
+   * {@code i}.
+   *
+   * @return the sensor snapshot
+   */
+  public SensorSnapshot getSensors() {
+    return sensors;
+  }
+
   /**
    * Save the wheels' azimuth current position as read by absolute encoder. These values are saved
    * persistently on the roboRIO and are normally used to calculate the relative encoder offset
@@ -185,7 +734,7 @@ public class SwerveDrive {
   }
 
   void saveAzimuthPositions(Preferences prefs) {
-    for (int i = 0; i < WHEEL_COUNT; i++) {
+    for (int i = 0; i < wheels.length; i++) {
       int position = wheels[i].getAzimuthAbsolutePosition();
       prefs.putInt(getPreferenceKeyForWheel(i), position);
       //logger.info("azimuth {}: saved zero = {}", i, position);
@@ -200,12 +749,19 @@ public class SwerveDrive {
    * @see #saveAzimuthPositions()
    */
   public void zeroAzimuthEncoders() {
+    if (isControlLoopRunning) {
+      zeroRequested = true;
+      return;
+    }
     zeroAzimuthEncoders(Preferences.getInstance());
   }
 
   void zeroAzimuthEncoders(Preferences prefs) {
+    if (actuator != null) {
+      actuator.flush();
+    }
     Errors.setCount(0);
-    for (int i = 0; i < WHEEL_COUNT; i++) {
+    for (int i = 0; i < wheels.length; i++) {
       int position = prefs.getInt(getPreferenceKeyForWheel(i), DEFAULT_ABSOLUTE_AZIMUTH_OFFSET);
       wheels[i].setAzimuthZero(position);
       //logger.info("azimuth {}: loaded zero = {}", i, position);
@@ -215,7 +771,128 @@ public class SwerveDrive {
   }
 
   /**
-   * Returns the four wheels of the swerve drive.
+   * Run the drive on a dedicated control thread. Subsequent {@link #drive} calls post their request
+   * to a mailbox that the control thread reads each period; {@link #stop()} and {@link
+   * #zeroAzimuthEncoders()} are also performed on the control thread.
+   *
+   * @param period control loop period in seconds, 0.002 to 0.01 (500 to 100 Hz)
+   */
+  public void startControlLoop(double period) {
+    if (period < 0.002 || period > 0.01) {
+      throw new IllegalArgumentException("control loop period must be 0.002 to 0.01 sec");
+    }
+    if (controlLoop == null) {
+      controlLoop = new Notifier(this::runControlLoop);
+    }
+    discretizationPeriod = period;
+    isControlLoopRunning = true;
+    controlLoop.startPeriodic(period);
+  }
+
+  /**
+   * Stop the dedicated control thread. Subsequent {@link #drive} calls run on the calling thread.
+   */
+  public void stopControlLoop() {
+    if (controlLoop != null) {
+      controlLoop.stop();
+    }
+    isControlLoopRunning = false;
+    discretizationPeriod = robotPeriod;
+  }
+
+  /**
+   * Returns true if the drive is running on its dedicated control thread.
+   *
+   * @return true if the control loop is running
+   */
+  public boolean isControlLoopRunning() {
+    return isControlLoopRunning;
+  }
+
+  private void post(
+      double forward, double strafe, double azimuth, double centerX, double centerY) {
+    final long stamp = requestLock.writeLock();
+    try {
+      requestForward = forward;
+      requestStrafe = strafe;
+      requestAzimuth = azimuth;
+      requestCenterX = centerX;
+      requestCenterY = centerY;
+    } finally {
+      requestLock.unlockWrite(stamp);
+    }
+  }
+
+  private void runControlLoop() {
+    if (zeroRequested) {
+      zeroRequested = false;
+      zeroAzimuthEncoders(Preferences.getInstance());
+    }
+    if (stopRequested) {
+      stopRequested = false;
+      stopWheels();
+      return;
+    }
+
+    double forward;
+    double strafe;
+    double azimuth;
+    double centerX;
+    double centerY;
+    while (true) {
+      final long stamp = requestLock.tryOptimisticRead();
+      forward = requestForward;
+      strafe = requestStrafe;
+      azimuth = requestAzimuth;
+      centerX = requestCenterX;
+      centerY = requestCenterY;
+      if (stamp != 0L && requestLock.validate(stamp)) {
+        break;
+      }
+      Thread.onSpinWait();
+    }
+    execute(forward, strafe, azimuth, centerX, centerY);
+  }
+
+  /**
+   * Returns the average time {@link #drive} spends on the drive thread, including motor controller
+   * writes unless actuation is pipelined.
+   *
+   * @return average drive time in nanoseconds
+   */
+  public double getAverageDriveNanos() {
+    return averageDriveNanos;
+  }
+
+  /**
+   * Returns the average time the actuator thread spends writing a cycle's setpoints, which is the
+   * time pipelining removes from the drive thread.
+   *
+   * @return average write time in nanoseconds, or 0 if actuation is not pipelined
+   */
+  public double getAverageActuationNanos() {
+    return actuator != null ? actuator.getAverageNanos() : 0.0;
+  }
+
+  /**
+   * Stop the control loop and the actuator thread, after it has written the last command. Call when
+   * the drive is no longer used or is being replaced; a pipelined drive writes nothing afterwards.
+   */
+  @Override
+  public void close() {
+    stopControlLoop();
+    if (controlLoop != null) {
+      controlLoop.close();
+      controlLoop = null;
+    }
+    if (actuator != null) {
+      actuator.flush();
+      actuator.stop();
+    }
+  }
+
+  /**
+   * Returns the wheels of the swerve drive.
    *
    * @return the Wheel array.
    */
@@ -232,6 +909,24 @@ public class SwerveDrive {
     return gyro;
   }
 
+  /**
+   * Get the timestamped gyro samples being used by the drive.
+   *
+   * @return the gyro sample buffer, or null if there is no gyro
+   */
+  public GyroSampleBuffer getGyroSamples() {
+    return gyroSamples;
+  }
+
+  /**
+   * Get the time source being used by the drive.
+   *
+   * @return the clock, in seconds
+   */
+  public DoubleSupplier getClock() {
+    return clock;
+  }
+
   /**
    * Get status of field-oriented driving.
    *
@@ -253,21 +948,12 @@ public class SwerveDrive {
   }
 
   /**
-   * Unit testing
-   *
-   * @return length
-   */
-  double getLengthComponent() {
-    return kLengthComponent;
-  }
-
-  /**
-   * Unit testing
+   * Get the inverse kinematics used by the drive.
    *
-   * @return width
+   * @return the kinematics instance
    */
-  double getWidthComponent() {
-    return kWidthComponent;
+  public SwerveKinematics getKinematics() {
+    return kinematics;
   }
 
   /** Swerve Drive drive mode */
@@ -1,7 +1,13 @@
 package org.strykeforce.thirdcoast.swerve;
 
 import com.kauailabs.navx.frc.AHRS;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleSupplier;
 import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.AzimuthMotorController;
 import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.DriveMotorController;
 import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.FeedbackSensor;
@@ -14,7 +20,10 @@ public class SwerveDriveConfig {
    */
   public AHRS gyro;
 
-  /** Initialize with four initialized wheels, in order from wheel 0 to wheel 3. */
+  /**
+   * Initialize with initialized wheels, in the order of {@link #getWheelLocations()}. There must be
+   * at least three, not all on one line.
+   */
   public Wheel[] wheels;
 
   /** Wheel base length from front to rear of robot. */
@@ -23,6 +32,13 @@ public class SwerveDriveConfig {
   /** Wheel base width from left to right of robot. */
   public double width = 1.0;
 
+  /**
+   * Wheel {@code {x, y}} locations relative to the center of rotation, positive x to the right and
+   * positive y forward, in wheel order, at least three and not all on one line. If null, four
+   * wheels are placed at the corners of the {@code length} by {@code width} rectangle.
+   */
+  public double[][] wheelLocations;
+
   /** Max Drive Motor Velocity for closed-loop control */
   public double driveSetpointMax = 5500.0;
 
@@ -32,9 +48,96 @@ public class SwerveDriveConfig {
    */
   public double robotPeriod = TimedRobot.kDefaultPeriod;
 
-  /** Factor to correct gyro lag when simultaneously applying azimuth and drive. */
+  /**
+   * Wheel speed at full drive output, in {@link #length} and {@link #width} units per second. If
+   * positive, each drive command's translation is corrected for the rotation over the {@link
+   * #robotPeriod} or control loop period it is held for, see {@link
+   * SwerveKinematics#discretize(double[], double)}. Zero to command translation as given.
+   */
+  public double maxWheelSpeed = 0.0;
+
+  /**
+   * Factor to correct gyro lag when simultaneously applying azimuth and drive. Only used until the
+   * first timestamped gyro sample arrives.
+   */
   public double gyroRateCoeff = 0.0;
 
+  /**
+   * Time in seconds from a {@code drive} call until the wheels act on it. Field-oriented driving
+   * uses the heading extrapolated to this time from the latest timestamped gyro sample.
+   */
+  public double gyroActuationDelay = 0.0;
+
+  /**
+   * Timestamped gyro samples used for field-oriented driving. If null and {@code gyro} is set, a
+   * buffer is created and subscribed to the gyro's data callbacks.
+   */
+  public GyroSampleBuffer gyroSamples;
+
+  /**
+   * Seconds of zero {@code drive} input after which azimuth closed-loop control is disabled until
+   * the next non-zero input, saving CAN bandwidth while idle. Negative to keep azimuth enabled.
+   */
+  public double azimuthIdleTimeout = -1.0;
+
+  /**
+   * Write wheel setpoints to the motor controllers on a dedicated actuator thread, so {@code drive}
+   * returns once the setpoints are calculated instead of waiting on each controller.
+   */
+  public boolean pipelinedActuation = false;
+
+  /**
+   * Chassis acceleration limit for {@code drive} inputs in full speed per second, applied to the
+   * translation vector and to rotation. Negative for no limit. See {@link SwerveSetpointGenerator}.
+   */
+  public double maxChassisAcceleration = -1.0;
+
+  /** Wheel azimuth slew rate limit in rotations per second. Negative for no limit. */
+  public double maxAzimuthRate = -1.0;
+
+  /** Wheel drive acceleration limit in full speed per second. Negative for no limit. */
+  public double maxDriveAcceleration = -1.0;
+
+  /** Scale wheel drive speed by the cosine of the wheel's azimuth error to its target. */
+  public boolean scaleDriveByAzimuthError = false;
+
+  /**
+   * Total drive motor supply current budget in amps. Wheel speeds are scaled down together to stay
+   * within it, see {@link DrivePowerManager}. Negative for no budget.
+   */
+  public double maxDriveSupplyCurrent = -1.0;
+
+  /** Bus voltage the drive motors should not pull the battery below. Negative for no limit. */
+  public double minBusVoltage = -1.0;
+
+  /** Battery internal and wiring resistance in ohms, used to predict bus voltage sag. */
+  public double batteryResistance = 0.02;
+
+  /**
+   * Holds the robot heading while {@code drive} rotation is zero, capturing it when rotation is
+   * released, and turns to headings requested with {@link SwerveDrive#snapHeading(double)}.
+   * Requires a gyro. Null to pass rotation through unchanged.
+   */
+  public HeadingController headingController;
+
+  /** Bus voltage source, defaults to the roboRIO battery voltage. */
+  public DoubleSupplier busVoltage = RobotController::getBatteryVoltage;
+
+  /**
+   * Wrap each motor controller created by {@link #getWheels()} in a {@link
+   * ProfilingMotorControllerWrapper} to time its calls and count its error codes.
+   */
+  public boolean profileMotorControllers = false;
+
+  /**
+   * Number of motor controllers {@link #getWheels()} configures at once. Controllers that already
+   * have their configuration stored are not reconfigured.
+   */
+  public int configurationThreads = MotorControllerConfigurator.DEFAULT_THREADS;
+
+  /** Time source in seconds, defaults to the FPGA timestamp. */
+  public DoubleSupplier clock = Timer::getFPGATimestamp;
+
   /** Log gyro errors, set to false if too spammy. */
   public boolean gyroLoggingEnabled = true;
 
@@ -50,6 +153,12 @@ public class SwerveDriveConfig {
   /* number of ticks per revolution, defaults to 4096 for CTRE magencoder */
   public int azimuthTicks = 4096;
 
+  /**
+   * Time constant in seconds of the filter fusing each azimuth controller's selected sensor with
+   * its absolute sensor, see {@link AzimuthEstimator}. Negative to use the selected sensor alone.
+   */
+  public double azimuthEstimateTimeConstant = -1.0;
+
   /** Configs for the azimuth and drive motor controllers * */
   public MotorControllerConfig azimuthConfig =
       new MotorControllerConfig(AzimuthMotorController.SPARK_MAX, FeedbackSensor.CAN_CODER);
@@ -57,46 +166,66 @@ public class SwerveDriveConfig {
   public MotorControllerConfig driveConfig =
       new MotorControllerConfig(DriveMotorController.SPARK_MAX, FeedbackSensor.INTEGRATED_SENSOR);
 
-  public Wheel[] getWheels() {
-    Wheel[] wheels = new Wheel[4];
+  /**
+   * Returns the configured wheel locations, or the corners of the {@code length} by {@code width}
+   * rectangle if none were configured.
+   *
+   * @return the wheel locations
+   */
+  public double[][] getWheelLocations() {
+    if (wheelLocations != null) {
+      return wheelLocations;
+    }
+    return SwerveKinematics.rectangle(length, width);
+  }
 
-    for (int i = 0; i < 4; i++) {
-      // Azimuth
-      MotorControllerWrapper azimuth;
+  public Wheel[] getWheels() {
+    Wheel[] wheels = new Wheel[getWheelLocations().length];
+    MotorControllerWrapper[] azimuths = new MotorControllerWrapper[wheels.length];
+    MotorControllerWrapper[] drives = new MotorControllerWrapper[wheels.length];
 
+    for (int i = 0; i < wheels.length; i++) {
+      // Azimuth, configured below
       switch (azimuthConfig.azimuthController) {
         case VICTOR_SPX:
-          azimuth = new VictorSPXWrapper(azimuthConfig, i);
+          azimuths[i] = new VictorSPXWrapper(azimuthConfig, i, false);
           break;
         case TALON_SRX:
-          azimuth = new TalonSRXWrapper(azimuthConfig, i);
+          azimuths[i] = new TalonSRXWrapper(azimuthConfig, i, false);
           break;
         case SPARK_MAX:
-          azimuth = new SparkMaxWrapper(azimuthConfig, i);
+          azimuths[i] = new SparkMaxWrapper(azimuthConfig, i, false);
           break;
         default:
-          azimuth = new TalonSRXWrapper(azimuthConfig, i);
+          azimuths[i] = new TalonSRXWrapper(azimuthConfig, i, false);
           break;
       }
 
-      // Drive
-      MotorControllerWrapper drive;
-
+      // Drive, configured below
       switch (driveConfig.driveController) {
         case SPARK_MAX:
-          drive = new SparkMaxWrapper(driveConfig, i + 10);
+          drives[i] = new SparkMaxWrapper(driveConfig, i + 10, false);
           break;
         case TALON_FX:
-          drive = new TalonFXWrapper(driveConfig, i + 10);
+          drives[i] = new TalonFXWrapper(driveConfig, i + 10, false);
           break;
         default:
-          drive = new SparkMaxWrapper(driveConfig, i + 10);
+          drives[i] = new SparkMaxWrapper(driveConfig, i + 10, false);
           break;
       }
 
-      Wheel wheel = new Wheel(azimuth, drive, driveSetpointMax, azimuthTicks, invertError);
+      if (profileMotorControllers) {
+        azimuths[i] = new ProfilingMotorControllerWrapper(azimuths[i]);
+        drives[i] = new ProfilingMotorControllerWrapper(drives[i]);
+      }
+    }
+
+    List<MotorControllerWrapper> controllers = new ArrayList<>(Arrays.asList(azimuths));
+    controllers.addAll(Arrays.asList(drives));
+    new MotorControllerConfigurator(configurationThreads).configure(controllers);
 
-      wheels[i] = wheel;
+    for (int i = 0; i < wheels.length; i++) {
+      wheels[i] = new Wheel(azimuths[i], drives[i], driveSetpointMax, azimuthTicks, invertError);
     }
 
     return wheels;
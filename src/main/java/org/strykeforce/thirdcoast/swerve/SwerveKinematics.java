@@ -0,0 +1,330 @@
+package org.strykeforce.thirdcoast.swerve;
+
+/**
+ * Inverse and forward kinematics for a swerve drive with an arbitrary number of wheels at arbitrary
+ * positions.
+ *
+ * <p>Wheel locations are given as {@code {x, y}} pairs relative to the robot center, with positive
+ * x to the right and positive y forward. The robot rotates about its center unless another point is
+ * set with {@link #setCenterOfRotation(double, double)}. The per-wheel coefficients are computed
+ * when the center of rotation changes and normalized so that a full azimuth command (1.0) drives
+ * the wheel farthest from the center of rotation at full speed, matching the original four-wheel
+ * equations.
+ *
+ * <p>Derivation of inverse kinematic equations are from Ether's <a
+ * href="https://www.chiefdelphi.com/media/papers/2426">Swerve Kinematics and Programming</a>.
+ */
+public class SwerveKinematics {
+
+  private static final double TWO_PI = 2.0 * Math.PI;
+  // singularity tolerance relative to the matrix scale, so independent of the length unit
+  private static final double SINGULAR_TOLERANCE = 1e-9;
+
+  private final int wheelCount;
+  private final double[] x;
+  private final double[] y;
+  private double centerX;
+  private double centerY;
+  private double radius;
+  private final double[] kStrafe;
+  private final double[] kForward;
+
+  // least-squares forward kinematics, rows are strafe, forward and rotation
+  private final double[] fStrafeX;
+  private final double[] fStrafeY;
+  private final double[] fForwardX;
+  private final double[] fForwardY;
+  private final double[] fRotationX;
+  private final double[] fRotationY;
+
+  /**
+   * Construct kinematics for the given wheel locations.
+   *
+   * @param locations wheel {@code {x, y}} locations, in wheel order, at least three and not all on
+   *     one line
+   * @throws IllegalArgumentException if there are fewer than three locations or they are collinear
+   */
+  public SwerveKinematics(double[][] locations) {
+    if (locations == null || locations.length < 3) {
+      throw new IllegalArgumentException(
+          "swerve drive requires at least three non-collinear wheel locations");
+    }
+    wheelCount = locations.length;
+    x = new double[wheelCount];
+    y = new double[wheelCount];
+    kStrafe = new double[wheelCount];
+    kForward = new double[wheelCount];
+
+    for (int i = 0; i < wheelCount; i++) {
+      if (locations[i] == null || locations[i].length != 2) {
+        throw new IllegalArgumentException("wheel location " + i + " must be an {x, y} pair");
+      }
+      x[i] = locations[i][0];
+      y[i] = locations[i][1];
+    }
+    if (isCollinear(x, y)) {
+      throw new IllegalArgumentException(
+          "swerve drive requires at least three non-collinear wheel locations");
+    }
+    updateCoefficients(0.0, 0.0);
+
+    // pseudo-inverse of the wheel velocity equations, vx = strafe + w * y, vy = forward - w * x
+    double sumX = 0.0;
+    double sumY = 0.0;
+    double sumSquares = 0.0;
+    for (int i = 0; i < wheelCount; i++) {
+      sumX += x[i];
+      sumY += y[i];
+      sumSquares += x[i] * x[i] + y[i] * y[i];
+    }
+    final double[][] inverse =
+        invert3x3(
+            new double[][] {
+              {wheelCount, 0.0, sumY},
+              {0.0, wheelCount, -sumX},
+              {sumY, -sumX, sumSquares}
+            });
+
+    fStrafeX = new double[wheelCount];
+    fStrafeY = new double[wheelCount];
+    fForwardX = new double[wheelCount];
+    fForwardY = new double[wheelCount];
+    fRotationX = new double[wheelCount];
+    fRotationY = new double[wheelCount];
+    for (int i = 0; i < wheelCount; i++) {
+      // column i of the transposed equations is {1, 0, y} for vx and {0, 1, -x} for vy
+      fStrafeX[i] = inverse[0][0] + inverse[0][2] * y[i];
+      fStrafeY[i] = inverse[0][1] - inverse[0][2] * x[i];
+      fForwardX[i] = inverse[1][0] + inverse[1][2] * y[i];
+      fForwardY[i] = inverse[1][1] - inverse[1][2] * x[i];
+      fRotationX[i] = inverse[2][0] + inverse[2][2] * y[i];
+      fRotationY[i] = inverse[2][1] - inverse[2][2] * x[i];
+    }
+  }
+
+  /**
+   * Set the robot-relative point the robot rotates about for {@link #inverse}. The inverse
+   * coefficients are recalculated only when the point changes, so it may be set every cycle.
+   * Rotation stays normalized so that a full azimuth command drives the wheel farthest from the
+   * point at full speed, and so the robot rotates more slowly about distant points. Forward
+   * kinematics always report motion of the robot center.
+   *
+   * @param centerX X (right) location, in the unit of the wheel locations
+   * @param centerY Y (forward) location, in the unit of the wheel locations
+   */
+  public void setCenterOfRotation(double centerX, double centerY) {
+    if (centerX != this.centerX || centerY != this.centerY) {
+      updateCoefficients(centerX, centerY);
+    }
+  }
+
+  private void updateCoefficients(double centerX, double centerY) {
+    double r = 0.0;
+    for (int i = 0; i < wheelCount; i++) {
+      r = Math.max(r, Math.hypot(x[i] - centerX, y[i] - centerY));
+    }
+    if (r == 0.0) {
+      throw new IllegalArgumentException("wheel locations must not all be at the center");
+    }
+    this.centerX = centerX;
+    this.centerY = centerY;
+    radius = r;
+
+    // azimuth is positive clockwise, so a wheel at (x, y) sees (+y, -x) of tangential velocity
+    for (int i = 0; i < wheelCount; i++) {
+      kStrafe[i] = (y[i] - centerY) / radius;
+      kForward[i] = -(x[i] - centerX) / radius;
+    }
+  }
+
+  // the scatter matrix of the locations about their centroid is singular if they are on one line
+  private static boolean isCollinear(double[] x, double[] y) {
+    double meanX = 0.0;
+    double meanY = 0.0;
+    for (int i = 0; i < x.length; i++) {
+      meanX += x[i] / x.length;
+      meanY += y[i] / y.length;
+    }
+    double xx = 0.0;
+    double yy = 0.0;
+    double xy = 0.0;
+    for (int i = 0; i < x.length; i++) {
+      final double dx = x[i] - meanX;
+      final double dy = y[i] - meanY;
+      xx += dx * dx;
+      yy += dy * dy;
+      xy += dx * dy;
+    }
+    return xx * yy - xy * xy <= SINGULAR_TOLERANCE * (xx + yy) * (xx + yy);
+  }
+
+  private static double[][] invert3x3(double[][] m) {
+    final double a = m[1][1] * m[2][2] - m[1][2] * m[2][1];
+    final double b = m[1][2] * m[2][0] - m[1][0] * m[2][2];
+    final double c = m[1][0] * m[2][1] - m[1][1] * m[2][0];
+    final double det = m[0][0] * a + m[0][1] * b + m[0][2] * c;
+    if (Math.abs(det) <= SINGULAR_TOLERANCE * Math.abs(m[0][0] * m[1][1] * m[2][2])) {
+      throw new IllegalArgumentException("wheel locations must not be collinear");
+    }
+    return new double[][] {
+      {a / det, (m[0][2] * m[2][1] - m[0][1] * m[2][2]) / det,
+          (m[0][1] * m[1][2] - m[0][2] * m[1][1]) / det},
+      {b / det, (m[0][0] * m[2][2] - m[0][2] * m[2][0]) / det,
+          (m[0][2] * m[1][0] - m[0][0] * m[1][2]) / det},
+      {c / det, (m[0][1] * m[2][0] - m[0][0] * m[2][1]) / det,
+          (m[0][0] * m[1][1] - m[0][1] * m[1][0]) / det}
+    };
+  }
+
+  /**
+   * Return the locations of a rectangular four-wheel drive with wheels numbered 0-3 from front to
+   * back, with even numbers on the left side when facing forward.
+   *
+   * @param length wheel base length from front to rear
+   * @param width wheel base width from left to right
+   * @return the four wheel locations
+   */
+  public static double[][] rectangle(double length, double width) {
+    final double x = width / 2.0;
+    final double y = length / 2.0;
+    return new double[][] {{-x, y}, {x, y}, {-x, -y}, {x, -y}};
+  }
+
+  /**
+   * Solve for wheel speeds and azimuths. Results are written into the supplied arrays, which must
+   * be at least {@link #getWheelCount()} long. Wheel speeds are normalized so that none exceed 1.0.
+   *
+   * @param forward Y-axis movement, from -1.0 (reverse) to 1.0 (forward)
+   * @param strafe X-axis movement, from -1.0 (left) to 1.0 (right)
+   * @param azimuth robot rotation, from -1.0 (CCW) to 1.0 (CW)
+   * @param ws wheel speed output, 0 to 1.0
+   * @param wa wheel azimuth output, -0.5 to 0.5 rotations measured clockwise
+   */
+  public void inverse(double forward, double strafe, double azimuth, double[] ws, double[] wa) {
+    double maxWheelSpeed = 0.0;
+    for (int i = 0; i < wheelCount; i++) {
+      final double vx = strafe + azimuth * kStrafe[i];
+      final double vy = forward + azimuth * kForward[i];
+      final double speed = Math.hypot(vx, vy);
+      ws[i] = speed;
+      wa[i] = Math.atan2(vx, vy) / TWO_PI;
+      if (speed > maxWheelSpeed) {
+        maxWheelSpeed = speed;
+      }
+    }
+
+    // normalize wheel speed
+    if (maxWheelSpeed > 1.0) {
+      for (int i = 0; i < wheelCount; i++) {
+        ws[i] /= maxWheelSpeed;
+      }
+    }
+  }
+
+  /**
+   * Correct robot-relative chassis translation for the robot's rotation while a command is held.
+   *
+   * <p>A translation command held constant in the robot frame while the robot rotates moves the
+   * robot along an arc, which skews it toward the direction of rotation. This replaces the
+   * translation with the one whose arc over the period ends where the straight-line translation
+   * would, the logarithm of the requested pose change: rotated by half the period's rotation
+   * against it and lengthened by {@code h / sin(h)}, where {@code h} is half the rotation.
+   *
+   * @param chassis {@code {strafe, forward}} translation in any unit, corrected in place
+   * @param rotation robot rotation over the period in radians, clockwise
+   */
+  public static void discretize(double[] chassis, double rotation) {
+    final double half = 0.5 * rotation;
+    if (half == 0.0) {
+      return;
+    }
+    // clockwise rotation skews the path clockwise, so pre-rotate the translation counterclockwise
+    final double scale = half / Math.sin(half);
+    final double cos = Math.cos(half) * scale;
+    final double sin = Math.sin(half) * scale;
+    final double strafe = chassis[0];
+    final double forward = chassis[1];
+    chassis[0] = strafe * cos - forward * sin;
+    chassis[1] = strafe * sin + forward * cos;
+  }
+
+  /**
+   * Solve for robot-relative chassis motion from measured wheel motion, as the least-squares fit
+   * over all wheels. Wheel motion is given as X (right) and Y (forward) components in any
+   * consistent unit, velocity or displacement, and the result uses the same unit.
+   *
+   * @param wheelX wheel motion X components, in wheel order
+   * @param wheelY wheel motion Y components, in wheel order
+   * @param chassis output {@code {strafe, forward, rotation}}, rotation in radians clockwise
+   */
+  public void forward(double[] wheelX, double[] wheelY, double[] chassis) {
+    double strafe = 0.0;
+    double forward = 0.0;
+    double rotation = 0.0;
+    for (int i = 0; i < wheelCount; i++) {
+      strafe += fStrafeX[i] * wheelX[i] + fStrafeY[i] * wheelY[i];
+      forward += fForwardX[i] * wheelX[i] + fForwardY[i] * wheelY[i];
+      rotation += fRotationX[i] * wheelX[i] + fRotationY[i] * wheelY[i];
+    }
+    chassis[0] = strafe;
+    chassis[1] = forward;
+    chassis[2] = rotation;
+  }
+
+  /**
+   * Returns the X (right) location of the center of rotation.
+   *
+   * @return the X location
+   */
+  public double getCenterX() {
+    return centerX;
+  }
+
+  /**
+   * Returns the Y (forward) location of the center of rotation.
+   *
+   * @return the Y location
+   */
+  public double getCenterY() {
+    return centerY;
+  }
+
+  /**
+   * Returns the distance from the center of rotation to the farthest wheel, the wheel a full
+   * azimuth command drives at full speed.
+   *
+   * @return the radius, in the unit of the wheel locations
+   */
+  public double getRadius() {
+    return radius;
+  }
+
+  /**
+   * Returns the number of wheels.
+   *
+   * @return the wheel count
+   */
+  public int getWheelCount() {
+    return wheelCount;
+  }
+
+  /**
+   * Returns the X location of a wheel.
+   *
+   * @param wheel the wheel number
+   * @return the X location
+   */
+  public double getX(int wheel) {
+    return x[wheel];
+  }
+
+  /**
+   * Returns the Y location of a wheel.
+   *
+   * @param wheel the wheel number
+   * @return the Y location
+   */
+  public double getY(int wheel) {
+    return y[wheel];
+  }
+}
@@ -0,0 +1,230 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import com.kauailabs.navx.frc.AHRS;
+import edu.wpi.first.wpilibj.Notifier;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Estimates robot pose from wheel odometry (forward kinematics) and the gyro.
+ *
+ * <p>The estimator runs on its own {@link Notifier}, off the {@code TimedRobot} loop. Each update
+ * copies the wheel drive positions and azimuths the drive published with its latest sensor
+ * snapshot, see {@link SwerveDrive#getOdometryInputs}, so the odometry thread never calls the motor
+ * controllers or the wheels' azimuth estimators. It solves for the robot-relative displacement
+ * with {@link SwerveKinematics#forward}, rotates it into the field frame and publishes the result.
+ * Updates that find no new snapshot return without publishing, so run the drive on its control
+ * loop at the odometry period, {@link SwerveDrive#startControlLoop(double)}, for odometry at that
+ * rate independent of the {@code TimedRobot} loop; {@code DriveSubsystem} does. Readers use an
+ * optimistic {@link StampedLock} read, which never blocks the integrator and never blocks the
+ * reader while no update is being published.
+ *
+ * <p>Heading comes from the drive's timestamped gyro samples when available, then the gyro when it
+ * is connected, otherwise it is integrated from the wheels.
+ */
+public class SwerveOdometry {
+
+  public static final double DEFAULT_PERIOD = 0.005;
+
+  private final SwerveDrive drive;
+  private final AHRS gyro;
+  private final GyroSampleBuffer gyroSamples;
+  private final SwerveKinematics kinematics;
+  private final double distancePerUnit;
+  private Notifier notifier;
+
+  // integrator state, owned by the notifier thread
+  private final double[] drivePosition;
+  private final double[] azimuth;
+  private final double[] lastDrivePosition;
+  private final double[] dx;
+  private final double[] dy;
+  private final double[] chassis = new double[3];
+  private boolean initialized;
+  private double integratedX;
+  private double integratedY;
+  private double integratedHeading;
+  private double lastTimestamp;
+
+  // reset requests from other threads
+  private volatile boolean resetRequested;
+  private double resetX;
+  private double resetY;
+
+  // published pose
+  private final StampedLock lock = new StampedLock();
+  private double x;
+  private double y;
+  private double heading;
+  private double vx;
+  private double vy;
+  private double omega;
+  private double timestamp;
+
+  /**
+   * Construct an odometry estimator for a swerve drive.
+   *
+   * @param drive the swerve drive providing wheels, gyro and kinematics
+   * @param distancePerUnit field distance travelled per drive motor position unit, in the same
+   *     length unit as the wheel locations
+   */
+  public SwerveOdometry(SwerveDrive drive, double distancePerUnit) {
+    this.drive = drive;
+    gyro = drive.getGyro();
+    gyroSamples = drive.getGyroSamples();
+    kinematics = drive.getKinematics();
+    this.distancePerUnit = distancePerUnit;
+    final int wheelCount = drive.getWheels().length;
+    drivePosition = new double[wheelCount];
+    azimuth = new double[wheelCount];
+    lastDrivePosition = new double[wheelCount];
+    dx = new double[wheelCount];
+    dy = new double[wheelCount];
+  }
+
+  /**
+   * Start periodic updates on the odometry thread.
+   *
+   * @param period update period in seconds, for example {@link #DEFAULT_PERIOD} for 200 Hz
+   */
+  public void start(double period) {
+    if (notifier == null) {
+      notifier = new Notifier(this::update);
+    }
+    notifier.startPeriodic(period);
+  }
+
+  /** Stop periodic updates. */
+  public void stop() {
+    if (notifier != null) {
+      notifier.stop();
+    }
+  }
+
+  /**
+   * Request the field position be reset, heading is unchanged. The reset takes effect on the next
+   * update.
+   *
+   * @param x new field X position
+   * @param y new field Y position
+   */
+  public void reset(double x, double y) {
+    resetX = x;
+    resetY = y;
+    resetRequested = true;
+  }
+
+  /**
+   * Integrate wheel motion since the previous update and publish the new pose. Called periodically
+   * by the odometry thread once started, or directly when stepping manually. Does nothing if the
+   * drive hasn't captured a new sensor snapshot since the previous update.
+   */
+  public void update() {
+    final double now = drive.getOdometryInputs(drivePosition, azimuth);
+    if (Double.isNaN(now) || (initialized && now == lastTimestamp)) {
+      return;
+    }
+    final boolean useSamples = gyroSamples != null && !gyroSamples.isEmpty();
+    final boolean useGyro = useSamples || (gyro != null && gyro.isConnected());
+    final double gyroAngle =
+        useSamples ? gyroSamples.getAngle(now) : useGyro ? gyro.getAngle() : 0.0;
+
+    for (int i = 0; i < drivePosition.length; i++) {
+      final double distance = (drivePosition[i] - lastDrivePosition[i]) * distancePerUnit;
+      final double radians = azimuth[i] * 2.0 * Math.PI;
+      lastDrivePosition[i] = drivePosition[i];
+      dx[i] = distance * Math.sin(radians);
+      dy[i] = distance * Math.cos(radians);
+    }
+
+    if (!initialized) {
+      initialized = true;
+      integratedHeading = gyroAngle;
+      lastTimestamp = now;
+      publish(now, 0.0, 0.0, 0.0);
+      return;
+    }
+
+    if (resetRequested) {
+      resetRequested = false;
+      integratedX = resetX;
+      integratedY = resetY;
+    }
+
+    kinematics.forward(dx, dy, chassis);
+    final double previousHeading = integratedHeading;
+    integratedHeading = useGyro ? gyroAngle : integratedHeading + Math.toDegrees(chassis[2]);
+    final double deltaHeading = integratedHeading - previousHeading;
+
+    // rotate robot-relative displacement into the field frame at the mid-point heading
+    final double angle = Math.toRadians(previousHeading + 0.5 * deltaHeading);
+    final double cos = Math.cos(angle);
+    final double sin = Math.sin(angle);
+    final double fieldX = chassis[0] * cos + chassis[1] * sin;
+    final double fieldY = chassis[1] * cos - chassis[0] * sin;
+    integratedX += fieldX;
+    integratedY += fieldY;
+
+    final double dt = now - lastTimestamp;
+    lastTimestamp = now;
+    if (dt > 0.0) {
+      publish(now, fieldX / dt, fieldY / dt, deltaHeading / dt);
+    } else {
+      publish(now, 0.0, 0.0, 0.0);
+    }
+  }
+
+  private void publish(double now, double vx, double vy, double omega) {
+    final long stamp = lock.writeLock();
+    try {
+      x = integratedX;
+      y = integratedY;
+      heading = integratedHeading;
+      this.vx = vx;
+      this.vy = vy;
+      this.omega = omega;
+      timestamp = now;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Copy the most recently published pose into {@code pose}. This does not allocate or block.
+   *
+   * @param pose the pose to update
+   */
+  public void getPose(Pose pose) {
+    while (true) {
+      final long stamp = lock.tryOptimisticRead();
+      final double x = this.x;
+      final double y = this.y;
+      final double heading = this.heading;
+      final double vx = this.vx;
+      final double vy = this.vy;
+      final double omega = this.omega;
+      final double timestamp = this.timestamp;
+      if (stamp != 0L && lock.validate(stamp)) {
+        pose.x = x;
+        pose.y = y;
+        pose.heading = heading;
+        pose.vx = vx;
+        pose.vy = vy;
+        pose.omega = omega;
+        pose.timestamp = timestamp;
+        return;
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Returns a copy of the most recently published pose.
+   *
+   * @return the pose
+   */
+  public Pose getPose() {
+    Pose pose = new Pose();
+    getPose(pose);
+    return pose;
+  }
+}
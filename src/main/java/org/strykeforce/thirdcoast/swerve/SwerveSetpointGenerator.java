@@ -0,0 +1,223 @@
+package org.strykeforce.thirdcoast.swerve;
+
+/**
+ * Limits how fast swerve drive setpoints change from one control cycle to the next.
+ *
+ * <p>Each cycle the generator first limits the change in the chassis {@code drive} inputs, then
+ * after inverse kinematics limits each wheel against the setpoint it was given the previous cycle:
+ *
+ * <ul>
+ *   <li>chassis acceleration, the change of the translation vector and of rotation;
+ *   <li>wheel azimuth slew rate, after reversing the wheel if that is the shorter turn;
+ *   <li>optionally, wheel speed scaled by the cosine of the remaining azimuth error, so a wheel
+ *       doesn't drive hard while still turning toward its target;
+ *   <li>wheel drive acceleration.
+ * </ul>
+ *
+ * <p>Speeds are in fractions of full speed, so accelerations are full speed per second, and azimuth
+ * is in wheel rotations. A negative limit disables it. Wheel speeds leave the generator signed, in
+ * the direction of the wheel azimuth. Nothing is allocated after construction.
+ */
+public class SwerveSetpointGenerator {
+
+  private static final double TWO_PI = 2.0 * Math.PI;
+
+  // longest cycle used for limiting, so a stalled loop doesn't release a large step
+  private static final double MAX_DT = 0.1;
+
+  private final double maxChassisAcceleration;
+  private final double maxAzimuthRate;
+  private final double maxDriveAcceleration;
+  private final boolean scaleByAzimuthError;
+  private final double[] lastSpeed;
+  private final double[] lastAzimuth;
+  private double lastForward;
+  private double lastStrafe;
+  private double lastRotation;
+  private double lastTime = Double.NaN;
+  private double dt;
+
+  /**
+   * Construct a generator.
+   *
+   * @param wheelCount number of wheels
+   * @param maxChassisAcceleration chassis translation and rotation acceleration limit
+   * @param maxAzimuthRate wheel azimuth limit in rotations per second
+   * @param maxDriveAcceleration wheel speed acceleration limit
+   * @param scaleByAzimuthError scale wheel speed by the cosine of the azimuth error
+   */
+  public SwerveSetpointGenerator(
+      int wheelCount,
+      double maxChassisAcceleration,
+      double maxAzimuthRate,
+      double maxDriveAcceleration,
+      boolean scaleByAzimuthError) {
+    this.maxChassisAcceleration = maxChassisAcceleration;
+    this.maxAzimuthRate = maxAzimuthRate;
+    this.maxDriveAcceleration = maxDriveAcceleration;
+    this.scaleByAzimuthError = scaleByAzimuthError;
+    lastSpeed = new double[wheelCount];
+    lastAzimuth = new double[wheelCount];
+    reset();
+  }
+
+  /**
+   * Construct a generator from the drive configuration's limits.
+   *
+   * @param config the drive configuration
+   * @param wheelCount number of wheels
+   */
+  public SwerveSetpointGenerator(SwerveDriveConfig config, int wheelCount) {
+    this(
+        wheelCount,
+        config.maxChassisAcceleration,
+        config.maxAzimuthRate,
+        config.maxDriveAcceleration,
+        config.scaleDriveByAzimuthError);
+  }
+
+  /**
+   * Returns true if the configuration enables any limit.
+   *
+   * @param config the drive configuration
+   * @return true if a generator is needed
+   */
+  public static boolean isEnabled(SwerveDriveConfig config) {
+    return config.maxChassisAcceleration >= 0.0
+        || config.maxAzimuthRate >= 0.0
+        || config.maxDriveAcceleration >= 0.0
+        || config.scaleDriveByAzimuthError;
+  }
+
+  /** Forget previous setpoints, so the next cycle starts from rest. */
+  public void reset() {
+    lastForward = 0.0;
+    lastStrafe = 0.0;
+    lastRotation = 0.0;
+    lastTime = Double.NaN;
+    for (int i = 0; i < lastSpeed.length; i++) {
+      lastSpeed[i] = 0.0;
+      lastAzimuth[i] = Double.NaN;
+    }
+  }
+
+  /**
+   * Start a cycle and limit the chassis inputs. Read the limited inputs with {@link
+   * #getForward()}, {@link #getStrafe()} and {@link #getRotation()}.
+   *
+   * @param forward Y-axis movement, from -1.0 (reverse) to 1.0 (forward)
+   * @param strafe X-axis movement, from -1.0 (left) to 1.0 (right)
+   * @param rotation robot rotation, from -1.0 (CCW) to 1.0 (CW)
+   * @param time cycle time in seconds
+   */
+  public void limitChassis(double forward, double strafe, double rotation, double time) {
+    dt = Double.isNaN(lastTime) ? 0.0 : Math.min(Math.max(time - lastTime, 0.0), MAX_DT);
+    lastTime = time;
+
+    if (maxChassisAcceleration >= 0.0) {
+      final double maxStep = maxChassisAcceleration * dt;
+      final double df = forward - lastForward;
+      final double ds = strafe - lastStrafe;
+      final double step = Math.hypot(df, ds);
+      if (step > maxStep) {
+        forward = lastForward + df * maxStep / step;
+        strafe = lastStrafe + ds * maxStep / step;
+      }
+      rotation = lastRotation + clamp(rotation - lastRotation, maxStep);
+    }
+    lastForward = forward;
+    lastStrafe = strafe;
+    lastRotation = rotation;
+  }
+
+  /**
+   * Limit wheel setpoints calculated by inverse kinematics from the limited chassis inputs. Call
+   * once per cycle after {@link #limitChassis(double, double, double, double)}.
+   *
+   * @param ws wheel speeds, 0 to 1.0, replaced with signed limited speeds
+   * @param wa wheel azimuths, -0.5 to 0.5 rotations, replaced with limited azimuths
+   */
+  public void limitWheels(double[] ws, double[] wa) {
+    for (int i = 0; i < lastSpeed.length; i++) {
+      double speed = ws[i];
+      double azimuth = wa[i];
+      final double previous = lastAzimuth[i];
+
+      if (Double.isNaN(previous)) {
+        // after reset the first wheel direction is taken as is, until then the wheel is held
+        if (speed == 0.0) {
+          continue;
+        }
+      } else if (speed == 0.0) {
+        // no direction to steer to, hold the previous azimuth
+        azimuth = previous;
+      } else {
+        // reverse the wheel if that is the shorter turn, target is then within 0.25 rotation
+        double error = Math.IEEEremainder(azimuth - previous, 1.0);
+        if (Math.abs(error) > 0.25) {
+          error -= Math.copySign(0.5, error);
+          speed = -speed;
+        }
+        double step = error;
+        if (maxAzimuthRate >= 0.0) {
+          step = clamp(error, maxAzimuthRate * dt);
+        }
+        azimuth = Math.IEEEremainder(previous + step, 1.0);
+        if (scaleByAzimuthError) {
+          speed *= Math.cos(TWO_PI * (error - step));
+        }
+      }
+
+      if (maxDriveAcceleration >= 0.0) {
+        speed = lastSpeed[i] + clamp(speed - lastSpeed[i], maxDriveAcceleration * dt);
+      }
+      lastSpeed[i] = speed;
+      lastAzimuth[i] = azimuth;
+      ws[i] = speed;
+      wa[i] = azimuth;
+    }
+  }
+
+  /**
+   * Scale the wheel speeds given in the last cycle, when they were reduced after limiting, so the
+   * next cycle accelerates from the speeds actually commanded.
+   *
+   * @param scale the factor the wheel speeds were multiplied by
+   */
+  void scaleWheelSpeeds(double scale) {
+    for (int i = 0; i < lastSpeed.length; i++) {
+      lastSpeed[i] *= scale;
+    }
+  }
+
+  private static double clamp(double value, double limit) {
+    return Math.max(-limit, Math.min(limit, value));
+  }
+
+  /**
+   * Returns the limited forward input of the current cycle.
+   *
+   * @return forward, -1.0 to 1.0
+   */
+  public double getForward() {
+    return lastForward;
+  }
+
+  /**
+   * Returns the limited strafe input of the current cycle.
+   *
+   * @return strafe, -1.0 to 1.0
+   */
+  public double getStrafe() {
+    return lastStrafe;
+  }
+
+  /**
+   * Returns the limited rotation input of the current cycle.
+   *
+   * @return rotation, -1.0 to 1.0
+   */
+  public double getRotation() {
+    return lastRotation;
+  }
+}
@@ -1,15 +1,25 @@
 package org.strykeforce.thirdcoast.swerve;
 
+import com.ctre.phoenix.ErrorCode;
 import com.ctre.phoenix.motorcontrol.ControlMode;
 import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
 import java.text.DecimalFormat;
+import org.strykeforce.thirdcoast.talon.Errors;
+import org.strykeforce.thirdcoast.telemetry.TelemetryEntry;
 
 public abstract class TalonBaseWrapper implements MotorControllerWrapper {
+  /* custom parameter holding the hash of the configuration last stored on the controller */
+  static final int CONFIG_HASH_PARAM = 0;
+  static final int CONFIG_TIMEOUT_MS = 50;
+
   protected boolean isAzimuth = false;
   protected int id = -1;
   protected int slot = 0;
   protected DriveMode driveMode = DriveMode.TELEOP;
+  protected SetpointCoalescer coalescer = new SetpointCoalescer(0.0, 0.0);
+  protected TelemetryEntry setpointTelemetry;
 
   FeedbackDevice getCTREFeedbackDevice(MotorControllerConfig.FeedbackSensor sensor) {
     if (!isAzimuth) {
@@ -32,6 +42,68 @@ public abstract class TalonBaseWrapper implements MotorControllerWrapper {
     }
   }
 
+  /* Returns the wrapped CTRE controller */
+  abstract BaseMotorController getController();
+
+  /*
+   * Sends the gain without waiting for the controller to acknowledge it. The controller stores it,
+   * so its configuration hash is cleared to have the full configuration reapplied at the next
+   * startup.
+   */
+  @Override
+  public void setGain(int slot, Gain gain, double value) {
+    final BaseMotorController controller = getController();
+    final ErrorCode error;
+    switch (gain) {
+      case P:
+        error = controller.config_kP(slot, value, 0);
+        break;
+      case I:
+        error = controller.config_kI(slot, value, 0);
+        break;
+      case D:
+        error = controller.config_kD(slot, value, 0);
+        break;
+      case F:
+        error = controller.config_kF(slot, value, 0);
+        break;
+      case I_ZONE:
+        error = controller.config_IntegralZone(slot, value, 0);
+        break;
+      case ALLOWABLE_ERROR:
+        error = controller.configAllowableClosedloopError(slot, value, 0);
+        break;
+      case MAX_I_ACCUM:
+        error = controller.configMaxIntegralAccumulator(slot, value, 0);
+        break;
+      case MOTION_CRUISE_VELOCITY:
+        error = controller.configMotionCruiseVelocity(value, 0);
+        break;
+      default:
+        error = controller.configMotionAcceleration(value, 0);
+        break;
+    }
+    Errors.check(id, error);
+    controller.configSetCustomParam(0, CONFIG_HASH_PARAM, 0);
+  }
+
+  boolean isConfigured(BaseMotorController controller, int hash) {
+    return controller.configGetCustomParam(CONFIG_HASH_PARAM, CONFIG_TIMEOUT_MS) == hash;
+  }
+
+  /*
+   * Store the configuration hash once configAllSettings succeeds and read it back, so a failed
+   * configuration is retried at the next startup.
+   */
+  ConfigStatus storeConfigHash(BaseMotorController controller, ErrorCode error, int hash) {
+    Errors.check(id, error);
+    if (error != ErrorCode.OK) {
+      return ConfigStatus.FAILED;
+    }
+    Errors.check(id, controller.configSetCustomParam(hash, CONFIG_HASH_PARAM, CONFIG_TIMEOUT_MS));
+    return isConfigured(controller, hash) ? ConfigStatus.APPLIED : ConfigStatus.FAILED;
+  }
+
   NeutralMode getCTRENeutralMode(MotorControllerConfig.NeutralMode mode) {
     switch (mode) {
       case BRAKE:
@@ -89,5 +161,6 @@ public abstract class TalonBaseWrapper implements MotorControllerWrapper {
   public void setDriveMode(DriveMode mode)
   {
     driveMode = mode;
+    coalescer.invalidate();
   }
 }
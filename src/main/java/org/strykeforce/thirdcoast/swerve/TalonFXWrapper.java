@@ -1,76 +1,125 @@
 package org.strykeforce.thirdcoast.swerve;
 
+import com.ctre.phoenix.motorcontrol.StatusFrame;
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
 import com.ctre.phoenix.motorcontrol.can.TalonFX;
 import com.ctre.phoenix.motorcontrol.can.TalonFXConfiguration;
+import org.strykeforce.thirdcoast.telemetry.TelemetryRegistry;
 
 public class TalonFXWrapper extends TalonBaseWrapper {
   private TalonFX talonFX;
+  private final MotorControllerConfig config;
 
   public TalonFXWrapper(MotorControllerConfig config, int id) {
+    this(config, id, true);
+  }
+
+  /**
+   * Construct the wrapper, optionally deferring configuration so that several controllers can be
+   * configured concurrently with {@link MotorControllerConfigurator}.
+   *
+   * @param config the motor controller configuration
+   * @param id the CAN ID
+   * @param configure true to configure the controller now, false to call {@link #configure()}
+   *     later
+   */
+  public TalonFXWrapper(MotorControllerConfig config, int id, boolean configure) {
+    this.config = config;
     this.id = id;
     isAzimuth = config.isAzimuth;
+    coalescer = new SetpointCoalescer(config.setpointTolerance, config.setpointRefreshPeriod);
+    setpointTelemetry = TelemetryRegistry.getInstance().register("TalonFX " + id + " setpoint");
     talonFX = new TalonFX(id);
 
-    TalonFXConfiguration talonFXConfig = new TalonFXConfiguration();
-    talonFXConfig.primaryPID.selectedFeedbackSensor = getCTREFeedbackDevice(config.feedbackSensor);
-    talonFXConfig.supplyCurrLimit.enable = true;
-    talonFXConfig.supplyCurrLimit.triggerThresholdCurrent = config.continuousCurrentLimit;
-    talonFXConfig.supplyCurrLimit.triggerThresholdTime = 1.0;
-    talonFXConfig.supplyCurrLimit.currentLimit = config.peakCurrentLimit;
-
-    talonFXConfig.statorCurrLimit.enable = true;
-    talonFXConfig.statorCurrLimit.triggerThresholdCurrent = config.continuousCurrentLimit;
-    talonFXConfig.statorCurrLimit.triggerThresholdTime = 1.0;
-    talonFXConfig.statorCurrLimit.currentLimit = config.peakCurrentLimit;
-
-    talonFXConfig.slot0.kP = config.slot0.kP;
-    talonFXConfig.slot0.kI = config.slot0.kI;
-    talonFXConfig.slot0.kD = config.slot0.kD;
-    talonFXConfig.slot0.kF = config.slot0.kF;
-    talonFXConfig.slot0.integralZone = (int) config.slot0.kIZone;
-    talonFXConfig.slot0.allowableClosedloopError = (int) config.slot0.kAllowableError;
-
-    talonFXConfig.slot1.kP = config.slot1.kP;
-    talonFXConfig.slot1.kI = config.slot1.kI;
-    talonFXConfig.slot1.kD = config.slot1.kD;
-    talonFXConfig.slot1.kF = config.slot1.kF;
-    talonFXConfig.slot1.integralZone = (int) config.slot1.kIZone;
-    talonFXConfig.slot1.allowableClosedloopError = (int) config.slot1.kAllowableError;
-
-    talonFXConfig.slot2.kP = config.slot2.kP;
-    talonFXConfig.slot2.kI = config.slot2.kI;
-    talonFXConfig.slot2.kD = config.slot2.kD;
-    talonFXConfig.slot2.kF = config.slot2.kF;
-    talonFXConfig.slot2.integralZone = (int) config.slot2.kIZone;
-    talonFXConfig.slot2.allowableClosedloopError = (int) config.slot2.kAllowableError;
-
-    talonFXConfig.slot3.kP = config.slot3.kP;
-    talonFXConfig.slot3.kI = config.slot3.kI;
-    talonFXConfig.slot3.kD = config.slot3.kD;
-    talonFXConfig.slot3.kF = config.slot3.kF;
-    talonFXConfig.slot3.integralZone = (int) config.slot3.kIZone;
-    talonFXConfig.slot3.allowableClosedloopError = (int) config.slot3.kAllowableError;
-
-    talonFXConfig.motionAcceleration = (int) config.motionAcceleration;
-    talonFXConfig.motionCruiseVelocity = (int) config.motionCruiseVelocity;
-    talonFXConfig.velocityMeasurementWindow = 64;
-    talonFXConfig.voltageCompSaturation = config.voltageCompensation;
-
-    talonFX.configAllSettings(talonFXConfig);
+    if (configure) {
+      configure();
+    }
+  }
+
+  @Override
+  public ConfigStatus configure() {
+    ConfigStatus status = ConfigStatus.UNCHANGED;
+    final int hash = config.getConfigHash();
+    if (!isConfigured(talonFX, hash)) {
+      TalonFXConfiguration talonFXConfig = new TalonFXConfiguration();
+      talonFXConfig.primaryPID.selectedFeedbackSensor =
+          getCTREFeedbackDevice(config.feedbackSensor);
+      talonFXConfig.supplyCurrLimit.enable = true;
+      talonFXConfig.supplyCurrLimit.triggerThresholdCurrent = config.continuousCurrentLimit;
+      talonFXConfig.supplyCurrLimit.triggerThresholdTime =
+          MotorControllerConfig.CURRENT_LIMIT_TRIGGER_TIME;
+      talonFXConfig.supplyCurrLimit.currentLimit = config.peakCurrentLimit;
+
+      talonFXConfig.statorCurrLimit.enable = true;
+      talonFXConfig.statorCurrLimit.triggerThresholdCurrent = config.continuousCurrentLimit;
+      talonFXConfig.statorCurrLimit.triggerThresholdTime =
+          MotorControllerConfig.CURRENT_LIMIT_TRIGGER_TIME;
+      talonFXConfig.statorCurrLimit.currentLimit = config.peakCurrentLimit;
+
+      talonFXConfig.slot0.kP = config.slot0.kP;
+      talonFXConfig.slot0.kI = config.slot0.kI;
+      talonFXConfig.slot0.kD = config.slot0.kD;
+      talonFXConfig.slot0.kF = config.slot0.kF;
+      talonFXConfig.slot0.integralZone = (int) config.slot0.kIZone;
+      talonFXConfig.slot0.allowableClosedloopError = (int) config.slot0.kAllowableError;
+
+      talonFXConfig.slot1.kP = config.slot1.kP;
+      talonFXConfig.slot1.kI = config.slot1.kI;
+      talonFXConfig.slot1.kD = config.slot1.kD;
+      talonFXConfig.slot1.kF = config.slot1.kF;
+      talonFXConfig.slot1.integralZone = (int) config.slot1.kIZone;
+      talonFXConfig.slot1.allowableClosedloopError = (int) config.slot1.kAllowableError;
+
+      talonFXConfig.slot2.kP = config.slot2.kP;
+      talonFXConfig.slot2.kI = config.slot2.kI;
+      talonFXConfig.slot2.kD = config.slot2.kD;
+      talonFXConfig.slot2.kF = config.slot2.kF;
+      talonFXConfig.slot2.integralZone = (int) config.slot2.kIZone;
+      talonFXConfig.slot2.allowableClosedloopError = (int) config.slot2.kAllowableError;
+
+      talonFXConfig.slot3.kP = config.slot3.kP;
+      talonFXConfig.slot3.kI = config.slot3.kI;
+      talonFXConfig.slot3.kD = config.slot3.kD;
+      talonFXConfig.slot3.kF = config.slot3.kF;
+      talonFXConfig.slot3.integralZone = (int) config.slot3.kIZone;
+      talonFXConfig.slot3.allowableClosedloopError = (int) config.slot3.kAllowableError;
+
+      talonFXConfig.motionAcceleration = (int) config.motionAcceleration;
+      talonFXConfig.motionCruiseVelocity = (int) config.motionCruiseVelocity;
+      talonFXConfig.velocityMeasurementWindow = MotorControllerConfig.VELOCITY_MEASUREMENT_WINDOW;
+      talonFXConfig.voltageCompSaturation = config.voltageCompensation;
+
+      status = storeConfigHash(talonFX, talonFX.configAllSettings(talonFXConfig), hash);
+    }
+
+    // not stored on the controller, set every time
     talonFX.enableVoltageCompensation(true);
     talonFX.setNeutralMode(getCTRENeutralMode(config.neutralMode));
+    talonFX.setStatusFramePeriod(StatusFrame.Status_1_General, config.generalStatusFramePeriod);
+    talonFX.setStatusFramePeriod(StatusFrame.Status_2_Feedback0, config.feedbackStatusFramePeriod);
+    return status;
+  }
+
+  @Override
+  BaseMotorController getController() {
+    return talonFX;
   }
 
   public void set(double output) {
-    talonFX.set(getCTREControlMode(), output);
+    setpointTelemetry.set(output);
+    if (coalescer.shouldWrite(output)) {
+      talonFX.set(getCTREControlMode(), output);
+    }
   }
 
   public void setSensorPosition(double position) {
     talonFX.setSelectedSensorPosition((int) position);
+    coalescer.invalidate();
   }
 
   public void setNeutralOutput() {
-    set(0.0);
+    talonFX.neutralOutput();
+    coalescer.invalidate();
   }
 
   public double getPosition() {
@@ -92,4 +141,20 @@ public class TalonFXWrapper extends TalonBaseWrapper {
   public double getCurrent() {
     return talonFX.getStatorCurrent();
   }
+
+  @Override
+  public void readInto(SensorSnapshot snapshot, int slot) {
+    // integrated sensor is both the selected and absolute position
+    final double position = getPosition();
+    snapshot.position[slot] = position;
+    snapshot.absPosition[slot] = position;
+    snapshot.velocity[slot] = getVelocity();
+    snapshot.output[slot] = getOutput();
+    snapshot.current[slot] = getCurrent();
+  }
+
+  @Override
+  public int getLastErrorCode() {
+    return talonFX.getLastError().value;
+  }
 }
@@ -1,75 +1,122 @@
 package org.strykeforce.thirdcoast.swerve;
 
+import com.ctre.phoenix.motorcontrol.StatusFrame;
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
 import com.ctre.phoenix.motorcontrol.can.TalonSRX;
 import com.ctre.phoenix.motorcontrol.can.TalonSRXConfiguration;
+import org.strykeforce.thirdcoast.telemetry.TelemetryRegistry;
 
 public class TalonSRXWrapper extends TalonBaseWrapper {
   private TalonSRX talonSRX;
+  private final MotorControllerConfig config;
 
   public TalonSRXWrapper(MotorControllerConfig config, int id) {
+    this(config, id, true);
+  }
+
+  /**
+   * Construct the wrapper, optionally deferring configuration so that several controllers can be
+   * configured concurrently with {@link MotorControllerConfigurator}.
+   *
+   * @param config the motor controller configuration
+   * @param id the CAN ID
+   * @param configure true to configure the controller now, false to call {@link #configure()}
+   *     later
+   */
+  public TalonSRXWrapper(MotorControllerConfig config, int id, boolean configure) {
+    this.config = config;
     isAzimuth = config.isAzimuth;
     this.id = id;
+    coalescer = new SetpointCoalescer(config.setpointTolerance, config.setpointRefreshPeriod);
+    setpointTelemetry = TelemetryRegistry.getInstance().register("TalonSRX " + id + " setpoint");
 
     talonSRX = new TalonSRX(id);
 
-    talonSRX.configFactoryDefault();
-
-    TalonSRXConfiguration talonSRXConfig = new TalonSRXConfiguration();
-    talonSRXConfig.primaryPID.selectedFeedbackSensor = getCTREFeedbackDevice(config.feedbackSensor);
-    talonSRXConfig.continuousCurrentLimit = config.continuousCurrentLimit;
-    talonSRXConfig.peakCurrentDuration = 1;
-    talonSRXConfig.peakCurrentLimit = (int) config.peakCurrentLimit;
-
-    talonSRXConfig.slot0.kP = config.slot0.kP;
-    talonSRXConfig.slot0.kI = config.slot0.kI;
-    talonSRXConfig.slot0.kD = config.slot0.kD;
-    talonSRXConfig.slot0.kF = config.slot0.kF;
-    talonSRXConfig.slot0.integralZone = (int) config.slot0.kIZone;
-    talonSRXConfig.slot0.allowableClosedloopError = (int) config.slot0.kAllowableError;
-
-    talonSRXConfig.slot1.kP = config.slot1.kP;
-    talonSRXConfig.slot1.kI = config.slot1.kI;
-    talonSRXConfig.slot1.kD = config.slot1.kD;
-    talonSRXConfig.slot1.kF = config.slot1.kF;
-    talonSRXConfig.slot1.integralZone = (int) config.slot1.kIZone;
-    talonSRXConfig.slot1.allowableClosedloopError = (int) config.slot1.kAllowableError;
-
-    talonSRXConfig.slot2.kP = config.slot2.kP;
-    talonSRXConfig.slot2.kI = config.slot2.kI;
-    talonSRXConfig.slot2.kD = config.slot2.kD;
-    talonSRXConfig.slot2.kF = config.slot2.kF;
-    talonSRXConfig.slot2.integralZone = (int) config.slot2.kIZone;
-    talonSRXConfig.slot2.allowableClosedloopError = (int) config.slot2.kAllowableError;
-
-    talonSRXConfig.slot3.kP = config.slot3.kP;
-    talonSRXConfig.slot3.kI = config.slot3.kI;
-    talonSRXConfig.slot3.kD = config.slot3.kD;
-    talonSRXConfig.slot3.kF = config.slot3.kF;
-    talonSRXConfig.slot3.integralZone = (int) config.slot3.kIZone;
-    talonSRXConfig.slot3.allowableClosedloopError = (int) config.slot3.kAllowableError;
-
-    talonSRXConfig.motionAcceleration = (int) config.motionAcceleration;
-    talonSRXConfig.motionCruiseVelocity = (int) config.motionCruiseVelocity;
-    talonSRXConfig.velocityMeasurementWindow = 64;
-    talonSRXConfig.voltageCompSaturation = config.voltageCompensation;
-
-    talonSRX.configAllSettings(talonSRXConfig);
+    if (configure) {
+      configure();
+    }
+  }
+
+  @Override
+  public ConfigStatus configure() {
+    ConfigStatus status = ConfigStatus.UNCHANGED;
+    final int hash = config.getConfigHash();
+    if (!isConfigured(talonSRX, hash)) {
+      talonSRX.configFactoryDefault();
+
+      TalonSRXConfiguration talonSRXConfig = new TalonSRXConfiguration();
+      talonSRXConfig.primaryPID.selectedFeedbackSensor =
+          getCTREFeedbackDevice(config.feedbackSensor);
+      talonSRXConfig.continuousCurrentLimit = config.continuousCurrentLimit;
+      talonSRXConfig.peakCurrentDuration = MotorControllerConfig.PEAK_CURRENT_DURATION;
+      talonSRXConfig.peakCurrentLimit = (int) config.peakCurrentLimit;
+
+      talonSRXConfig.slot0.kP = config.slot0.kP;
+      talonSRXConfig.slot0.kI = config.slot0.kI;
+      talonSRXConfig.slot0.kD = config.slot0.kD;
+      talonSRXConfig.slot0.kF = config.slot0.kF;
+      talonSRXConfig.slot0.integralZone = (int) config.slot0.kIZone;
+      talonSRXConfig.slot0.allowableClosedloopError = (int) config.slot0.kAllowableError;
+
+      talonSRXConfig.slot1.kP = config.slot1.kP;
+      talonSRXConfig.slot1.kI = config.slot1.kI;
+      talonSRXConfig.slot1.kD = config.slot1.kD;
+      talonSRXConfig.slot1.kF = config.slot1.kF;
+      talonSRXConfig.slot1.integralZone = (int) config.slot1.kIZone;
+      talonSRXConfig.slot1.allowableClosedloopError = (int) config.slot1.kAllowableError;
+
+      talonSRXConfig.slot2.kP = config.slot2.kP;
+      talonSRXConfig.slot2.kI = config.slot2.kI;
+      talonSRXConfig.slot2.kD = config.slot2.kD;
+      talonSRXConfig.slot2.kF = config.slot2.kF;
+      talonSRXConfig.slot2.integralZone = (int) config.slot2.kIZone;
+      talonSRXConfig.slot2.allowableClosedloopError = (int) config.slot2.kAllowableError;
+
+      talonSRXConfig.slot3.kP = config.slot3.kP;
+      talonSRXConfig.slot3.kI = config.slot3.kI;
+      talonSRXConfig.slot3.kD = config.slot3.kD;
+      talonSRXConfig.slot3.kF = config.slot3.kF;
+      talonSRXConfig.slot3.integralZone = (int) config.slot3.kIZone;
+      talonSRXConfig.slot3.allowableClosedloopError = (int) config.slot3.kAllowableError;
+
+      talonSRXConfig.motionAcceleration = (int) config.motionAcceleration;
+      talonSRXConfig.motionCruiseVelocity = (int) config.motionCruiseVelocity;
+      talonSRXConfig.velocityMeasurementWindow = MotorControllerConfig.VELOCITY_MEASUREMENT_WINDOW;
+      talonSRXConfig.voltageCompSaturation = config.voltageCompensation;
+
+      status = storeConfigHash(talonSRX, talonSRX.configAllSettings(talonSRXConfig), hash);
+    }
+
+    // not stored on the controller, set every time
     talonSRX.enableCurrentLimit(true);
     talonSRX.enableVoltageCompensation(true);
     talonSRX.setNeutralMode(getCTRENeutralMode(config.neutralMode));
+    talonSRX.setStatusFramePeriod(StatusFrame.Status_1_General, config.generalStatusFramePeriod);
+    talonSRX.setStatusFramePeriod(StatusFrame.Status_2_Feedback0, config.feedbackStatusFramePeriod);
+    return status;
+  }
+
+  @Override
+  BaseMotorController getController() {
+    return talonSRX;
   }
 
   public void set(double output) {
-    talonSRX.set(getCTREControlMode(), output);
+    setpointTelemetry.set(output);
+    if (coalescer.shouldWrite(output)) {
+      talonSRX.set(getCTREControlMode(), output);
+    }
   }
 
   public void setSensorPosition(double position) {
     talonSRX.setSelectedSensorPosition((int) position);
+    coalescer.invalidate();
     set(position);
   }
 
   public void setNeutralOutput() {
-    set(0.0);
+    talonSRX.neutralOutput();
+    coalescer.invalidate();
   }
 
   public double getPosition() {
@@ -91,4 +138,9 @@ public class TalonSRXWrapper extends TalonBaseWrapper {
   public double getCurrent() {
     return talonSRX.getStatorCurrent();
   }
+
+  @Override
+  public int getLastErrorCode() {
+    return talonSRX.getLastError().value;
+  }
 }
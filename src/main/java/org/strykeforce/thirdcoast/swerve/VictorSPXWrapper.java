@@ -3,78 +3,126 @@ package org.strykeforce.thirdcoast.swerve;
 import com.ctre.phoenix.motorcontrol.ControlMode;
 import com.ctre.phoenix.motorcontrol.RemoteFeedbackDevice;
 import com.ctre.phoenix.motorcontrol.RemoteSensorSource;
+import com.ctre.phoenix.motorcontrol.StatusFrame;
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
 import com.ctre.phoenix.motorcontrol.can.VictorSPX;
 import com.ctre.phoenix.motorcontrol.can.VictorSPXConfiguration;
 import com.ctre.phoenix.sensors.CANCoder;
+import com.ctre.phoenix.sensors.CANCoderStatusFrame;
+import org.strykeforce.thirdcoast.telemetry.TelemetryRegistry;
 
 public class VictorSPXWrapper extends TalonBaseWrapper {
   private VictorSPX victorSPX;
   private CANCoder canCoder;
+  private final MotorControllerConfig config;
 
   public VictorSPXWrapper(MotorControllerConfig config, int id) {
+    this(config, id, true);
+  }
+
+  /**
+   * Construct the wrapper, optionally deferring configuration so that several controllers can be
+   * configured concurrently with {@link MotorControllerConfigurator}.
+   *
+   * @param config the motor controller configuration
+   * @param id the CAN ID
+   * @param configure true to configure the controller now, false to call {@link #configure()}
+   *     later
+   */
+  public VictorSPXWrapper(MotorControllerConfig config, int id, boolean configure) {
+    this.config = config;
     this.id = id;
     isAzimuth = config.isAzimuth;
+    coalescer = new SetpointCoalescer(config.setpointTolerance, config.setpointRefreshPeriod);
+    setpointTelemetry = TelemetryRegistry.getInstance().register("VictorSPX " + id + " setpoint");
 
     victorSPX = new VictorSPX(id);
     canCoder = new CANCoder(id + 20);
 
-    victorSPX.configFactoryDefault();
-
-    VictorSPXConfiguration victorSPXConfig = new VictorSPXConfiguration();
-    victorSPXConfig.primaryPID.selectedFeedbackSensor = RemoteFeedbackDevice.RemoteSensor0;
-
-    victorSPXConfig.slot0.kP = config.slot0.kP;
-    victorSPXConfig.slot0.kI = config.slot0.kI;
-    victorSPXConfig.slot0.kD = config.slot0.kD;
-    victorSPXConfig.slot0.kF = config.slot0.kF;
-    victorSPXConfig.slot0.integralZone = (int) config.slot0.kIZone;
-    victorSPXConfig.slot0.allowableClosedloopError = (int) config.slot0.kAllowableError;
-
-    victorSPXConfig.slot1.kP = config.slot1.kP;
-    victorSPXConfig.slot1.kI = config.slot1.kI;
-    victorSPXConfig.slot1.kD = config.slot1.kD;
-    victorSPXConfig.slot1.kF = config.slot1.kF;
-    victorSPXConfig.slot1.integralZone = (int) config.slot1.kIZone;
-    victorSPXConfig.slot1.allowableClosedloopError = (int) config.slot1.kAllowableError;
-
-    victorSPXConfig.slot2.kP = config.slot2.kP;
-    victorSPXConfig.slot2.kI = config.slot2.kI;
-    victorSPXConfig.slot2.kD = config.slot2.kD;
-    victorSPXConfig.slot2.kF = config.slot2.kF;
-    victorSPXConfig.slot2.integralZone = (int) config.slot2.kIZone;
-    victorSPXConfig.slot2.allowableClosedloopError = (int) config.slot2.kAllowableError;
-
-    victorSPXConfig.slot3.kP = config.slot3.kP;
-    victorSPXConfig.slot3.kI = config.slot3.kI;
-    victorSPXConfig.slot3.kD = config.slot3.kD;
-    victorSPXConfig.slot3.kF = config.slot3.kF;
-    victorSPXConfig.slot3.integralZone = (int) config.slot3.kIZone;
-    victorSPXConfig.slot3.allowableClosedloopError = (int) config.slot3.kAllowableError;
-
-    victorSPXConfig.motionAcceleration = (int) config.motionAcceleration;
-    victorSPXConfig.motionCruiseVelocity = (int) config.motionCruiseVelocity;
-    victorSPXConfig.velocityMeasurementWindow = 64;
-    victorSPXConfig.voltageCompSaturation = config.voltageCompensation;
-
-    victorSPX.configRemoteFeedbackFilter(this.id + 20, RemoteSensorSource.CANCoder, 0, 10);
-
-    victorSPX.configAllSettings(victorSPXConfig);
+    if (configure) {
+      configure();
+    }
+  }
 
+  @Override
+  public ConfigStatus configure() {
+    ConfigStatus status = ConfigStatus.UNCHANGED;
+    final int hash = config.getConfigHash();
+    if (!isConfigured(victorSPX, hash)) {
+      victorSPX.configFactoryDefault();
+
+      VictorSPXConfiguration victorSPXConfig = new VictorSPXConfiguration();
+      victorSPXConfig.primaryPID.selectedFeedbackSensor = RemoteFeedbackDevice.RemoteSensor0;
+
+      victorSPXConfig.slot0.kP = config.slot0.kP;
+      victorSPXConfig.slot0.kI = config.slot0.kI;
+      victorSPXConfig.slot0.kD = config.slot0.kD;
+      victorSPXConfig.slot0.kF = config.slot0.kF;
+      victorSPXConfig.slot0.integralZone = (int) config.slot0.kIZone;
+      victorSPXConfig.slot0.allowableClosedloopError = (int) config.slot0.kAllowableError;
+
+      victorSPXConfig.slot1.kP = config.slot1.kP;
+      victorSPXConfig.slot1.kI = config.slot1.kI;
+      victorSPXConfig.slot1.kD = config.slot1.kD;
+      victorSPXConfig.slot1.kF = config.slot1.kF;
+      victorSPXConfig.slot1.integralZone = (int) config.slot1.kIZone;
+      victorSPXConfig.slot1.allowableClosedloopError = (int) config.slot1.kAllowableError;
+
+      victorSPXConfig.slot2.kP = config.slot2.kP;
+      victorSPXConfig.slot2.kI = config.slot2.kI;
+      victorSPXConfig.slot2.kD = config.slot2.kD;
+      victorSPXConfig.slot2.kF = config.slot2.kF;
+      victorSPXConfig.slot2.integralZone = (int) config.slot2.kIZone;
+      victorSPXConfig.slot2.allowableClosedloopError = (int) config.slot2.kAllowableError;
+
+      victorSPXConfig.slot3.kP = config.slot3.kP;
+      victorSPXConfig.slot3.kI = config.slot3.kI;
+      victorSPXConfig.slot3.kD = config.slot3.kD;
+      victorSPXConfig.slot3.kF = config.slot3.kF;
+      victorSPXConfig.slot3.integralZone = (int) config.slot3.kIZone;
+      victorSPXConfig.slot3.allowableClosedloopError = (int) config.slot3.kAllowableError;
+
+      victorSPXConfig.motionAcceleration = (int) config.motionAcceleration;
+      victorSPXConfig.motionCruiseVelocity = (int) config.motionCruiseVelocity;
+      victorSPXConfig.velocityMeasurementWindow = MotorControllerConfig.VELOCITY_MEASUREMENT_WINDOW;
+      victorSPXConfig.voltageCompSaturation = config.voltageCompensation;
+
+      victorSPX.configRemoteFeedbackFilter(this.id + 20, RemoteSensorSource.CANCoder, 0, 10);
+
+      status = storeConfigHash(victorSPX, victorSPX.configAllSettings(victorSPXConfig), hash);
+    }
+
+    // not stored on the controller, set every time
     victorSPX.enableVoltageCompensation(true);
     victorSPX.setNeutralMode(getCTRENeutralMode(config.neutralMode));
+    victorSPX.setStatusFramePeriod(StatusFrame.Status_1_General, config.generalStatusFramePeriod);
+    victorSPX.setStatusFramePeriod(
+        StatusFrame.Status_2_Feedback0, config.feedbackStatusFramePeriod);
+    canCoder.setStatusFramePeriod(CANCoderStatusFrame.SensorData, config.canCoderStatusFramePeriod);
+    return status;
+  }
+
+  @Override
+  BaseMotorController getController() {
+    return victorSPX;
   }
 
   public void set(double output) {
-    victorSPX.set(ControlMode.MotionMagic, output);
+    setpointTelemetry.set(output);
+    if (coalescer.shouldWrite(output)) {
+      victorSPX.set(ControlMode.MotionMagic, output);
+    }
   }
 
   public void setSensorPosition(double position) {
     canCoder.setPosition(position);
+    coalescer.invalidate();
     set(position);
   }
 
   public void setNeutralOutput() {
-    set(0.0);
+    victorSPX.neutralOutput();
+    coalescer.invalidate();
   }
 
   public double getPosition() {
@@ -96,4 +144,18 @@ public class VictorSPXWrapper extends TalonBaseWrapper {
   public double getCurrent() {
     return 0.0;
   }
+
+  @Override
+  public void readInto(SensorSnapshot snapshot, int slot) {
+    snapshot.position[slot] = getPosition();
+    snapshot.absPosition[slot] = getAbsPosition();
+    snapshot.velocity[slot] = getVelocity();
+    snapshot.output[slot] = getOutput();
+    snapshot.current[slot] = 0.0;
+  }
+
+  @Override
+  public int getLastErrorCode() {
+    return victorSPX.getLastError().value;
+  }
 }
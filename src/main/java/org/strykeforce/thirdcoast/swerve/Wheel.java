@@ -8,6 +8,8 @@ import java.util.function.DoubleConsumer;
 //import org.slf4j.Logger;
 //import org.slf4j.LoggerFactory;
 import org.strykeforce.thirdcoast.swerve.SwerveDrive.DriveMode;
+import org.strykeforce.thirdcoast.telemetry.TelemetryEntry;
+import org.strykeforce.thirdcoast.telemetry.TelemetryRegistry;
 
 /**
  * Controls a swerve drive wheel azimuth and drive motors.
@@ -31,9 +33,23 @@ public class Wheel {
   private final double driveSetpointMax;
   private final MotorControllerWrapper driveTalon;
   private final MotorControllerWrapper azimuthTalon;
+  protected double driveScale = 1.0;
+  private final DoubleConsumer scaledDriver;
+
+  /**
+   * Sends drive setpoints to the drive motor controller, reset to the scaled driver by {@link
+   * #setDriveMode(DriveMode)}. Subclasses that assign their own driver still work, but should
+   * override {@link #drive(double)} instead since a new lambda allocates on every assignment.
+   */
   protected DoubleConsumer driver;
   private boolean isInverted = false;
   private boolean invertError = true;
+  private SensorSnapshot sensors;
+  private int azimuthSlot;
+  private AzimuthEstimator azimuthEstimator;
+  private final WheelCommand command = new WheelCommand(1);
+  private final TelemetryEntry azimuthErrorTelemetry;
+  private final TelemetryEntry driveTelemetry;
 
   /**
    * This constructs a wheel with supplied azimuth and drive talons.
@@ -54,6 +70,11 @@ public class Wheel {
     this.driveSetpointMax = driveSetpointMax;
     azimuthTalon = Objects.requireNonNull(azimuth);
     driveTalon = Objects.requireNonNull(drive);
+    scaledDriver = (setpoint) -> driveTalon.set(setpoint * driveScale);
+
+    final String prefix = "Wheel " + azimuthTalon.getDeviceID() + " ";
+    azimuthErrorTelemetry = TelemetryRegistry.getInstance().register(prefix + "azimuth error");
+    driveTelemetry = TelemetryRegistry.getInstance().register(prefix + "drive");
 
     setDriveMode(TELEOP);
 
@@ -70,16 +91,34 @@ public class Wheel {
    * @param drive 0 to 1.0 in the direction of the wheel azimuth
    */
   public void set(double azimuth, double drive) {
+    plan(azimuth, drive, command, 0);
+    actuate(command, 0);
+  }
+
+  /**
+   * Calculate the optimal azimuth and drive settings, as in {@link #set(double, double)}, and store
+   * them in a command slot instead of applying them.
+   *
+   * @param azimuth -0.5 to 0.5 rotations, measured clockwise with zero being the wheel's zeroed
+   *     position
+   * @param drive 0 to 1.0 in the direction of the wheel azimuth
+   * @param command the command to plan into
+   * @param index this wheel's slot in the command
+   */
+  void plan(double azimuth, double drive, WheelCommand command, int index) {
     // don't reset wheel azimuth direction to zero when returning to neutral
     if (drive == 0) {
-      driver.accept(0d);
+      command.azimuthAction[index] = WheelCommand.AZIMUTH_NONE;
+      command.drive[index] = 0d;
+      driveTelemetry.set(0d);
       return;
     }
 
     azimuth *= TICKS * (invertError ? -1.0 : 1.0); // flip azimuth, hardware configuration dependent
 
-    double azimuthPosition = azimuthTalon.getPosition();
-    double azimuthError = Math.IEEEremainder(azimuth - azimuthPosition, TICKS);
+    // the error is from the fused estimate if there is one, the setpoint is in the encoder's frame
+    double azimuthPosition = getAzimuthPosition();
+    double azimuthError = Math.IEEEremainder(azimuth - getAzimuthEstimate(azimuthPosition), TICKS);
 
     // minimize azimuth rotation, reversing drive if necessary
     isInverted = Math.abs(azimuthError) > 0.25 * TICKS;
@@ -88,8 +127,46 @@ public class Wheel {
       drive = -drive;
     }
 
-    azimuthTalon.set(azimuthPosition + azimuthError);
-    driver.accept(drive);
+    command.azimuthAction[index] = WheelCommand.AZIMUTH_SET;
+    command.azimuth[index] = azimuthPosition + azimuthError;
+    command.azimuthPosition[index] = azimuthPosition;
+    command.drive[index] = drive;
+    azimuthErrorTelemetry.set(azimuthError);
+    driveTelemetry.set(drive);
+  }
+
+  /**
+   * Plan to stop azimuth and drive movement, as in {@link #stop()}.
+   *
+   * @param command the command to plan into
+   * @param index this wheel's slot in the command
+   */
+  void planStop(WheelCommand command, int index) {
+    final double azimuthPosition = getAzimuthPosition();
+    command.azimuthAction[index] = WheelCommand.AZIMUTH_SET;
+    command.azimuth[index] = azimuthPosition;
+    command.azimuthPosition[index] = azimuthPosition;
+    command.drive[index] = 0d;
+  }
+
+  /**
+   * Apply a planned command slot to the azimuth and drive motor controllers.
+   *
+   * @param command the planned command
+   * @param index this wheel's slot in the command
+   */
+  void actuate(WheelCommand command, int index) {
+    switch (command.azimuthAction[index]) {
+      case WheelCommand.AZIMUTH_SET:
+        azimuthTalon.set(command.azimuth[index], command.azimuthPosition[index]);
+        break;
+      case WheelCommand.AZIMUTH_NEUTRAL:
+        azimuthTalon.setNeutralOutput();
+        break;
+      default:
+        break;
+    }
+    drive(command.drive[index]);
   }
 
   /**
@@ -113,8 +190,8 @@ public class Wheel {
    * <p>In closed-loop modes, the drive setpoint is scaled by the drive Talon {@code
    * driveSetpointMax} parameter.
    *
-   * <p>This method is intended to be overridden if the open or closed-loop drive wheel drivers need
-   * to be customized.
+   * <p>This method and {@link #drive(double)} are intended to be overridden if the open or
+   * closed-loop drive wheel drivers need to be customized.
    *
    * @param driveMode the desired drive mode
    */
@@ -122,14 +199,24 @@ public class Wheel {
     switch (driveMode) {
       case OPEN_LOOP:
       case TELEOP:
-        driver = (setpoint) -> driveTalon.set(setpoint);
+        driveScale = 1.0;
         break;
       case CLOSED_LOOP:
       case TRAJECTORY:
       case AZIMUTH:
-        driver = (setpoint) -> driveTalon.set(setpoint * driveSetpointMax);
+        driveScale = driveSetpointMax;
         break;
     }
+    driver = scaledDriver;
+  }
+
+  /**
+   * Send a drive setpoint, scaled for the current drive mode, to the drive motor controller.
+   *
+   * @param setpoint drive output, -1.0 to 1.0
+   */
+  protected void drive(double setpoint) {
+    driver.accept(setpoint);
   }
 
   /**
@@ -137,8 +224,62 @@ public class Wheel {
    * current position in case the wheel has been manually rotated away from its previous setpoint.
    */
   public void stop() {
-    azimuthTalon.set(azimuthTalon.getPosition());
-    driver.accept(0d);
+    planStop(command, 0);
+    actuate(command, 0);
+  }
+
+  /**
+   * Read sensors from a snapshot instead of the azimuth controller in {@link #set(double, double)}
+   * and {@link #stop()}. The owner of the snapshot must capture it before calling either method.
+   *
+   * @param sensors the snapshot, or null to read the controller directly
+   * @param azimuthSlot the azimuth controller's slot in the snapshot
+   */
+  void setSensorSnapshot(SensorSnapshot sensors, int azimuthSlot) {
+    this.sensors = sensors;
+    this.azimuthSlot = azimuthSlot;
+  }
+
+  private double getAzimuthPosition() {
+    return sensors != null ? sensors.position[azimuthSlot] : azimuthTalon.getPosition();
+  }
+
+  private double getAzimuthEstimate(double azimuthPosition) {
+    if (azimuthEstimator == null) {
+      return azimuthPosition;
+    }
+    return azimuthEstimator.getEstimate(azimuthPosition);
+  }
+
+  /**
+   * Fuse the azimuth controller's selected and absolute sensors with an estimator, which is used
+   * for the azimuth in {@link #set(double, double)} and {@link #getAzimuthRotations()}. The
+   * estimator becomes active when the azimuth is zeroed with {@link #setAzimuthZero(int)}.
+   *
+   * @param estimator the estimator, or null to use the selected sensor alone
+   */
+  public void setAzimuthEstimator(AzimuthEstimator estimator) {
+    azimuthEstimator = estimator;
+  }
+
+  /**
+   * Returns the azimuth estimator.
+   *
+   * @return the estimator, or null if none
+   */
+  public AzimuthEstimator getAzimuthEstimator() {
+    return azimuthEstimator;
+  }
+
+  /**
+   * Update the azimuth estimator from the sensor snapshot. The owner of the snapshot calls this
+   * after each capture.
+   */
+  void updateAzimuthEstimate() {
+    if (azimuthEstimator != null && sensors != null) {
+      azimuthEstimator.update(
+          sensors.position[azimuthSlot], sensors.absPosition[azimuthSlot], sensors.timestamp);
+    }
   }
 
   /**
@@ -159,6 +300,9 @@ public class Wheel {
     int azimuthSetpoint = getAzimuthAbsolutePosition() - zero;
     azimuthTalon.setSensorPosition(azimuthSetpoint);
     azimuthTalon.set(azimuthSetpoint);
+    if (azimuthEstimator != null) {
+      azimuthEstimator.reset(-zero);
+    }
   }
 
   /**
@@ -170,6 +314,50 @@ public class Wheel {
     return (int) azimuthTalon.getAbsPosition();
   }
 
+  /**
+   * Returns the wheel's azimuth relative to its zeroed position, measured clockwise in the same
+   * sense as the azimuth passed to {@link #set(double, double)}.
+   *
+   * @return azimuth in rotations
+   */
+  public double getAzimuthRotations() {
+    return getAzimuthEstimate(azimuthTalon.getPosition()) / TICKS * (invertError ? -1.0 : 1.0);
+  }
+
+  /**
+   * Returns the wheel's azimuth in rotations, as in {@link #getAzimuthRotations()}, from the sensor
+   * snapshot instead of the azimuth controller.
+   *
+   * @return azimuth in rotations
+   */
+  double getSnapshotAzimuthRotations() {
+    return getAzimuthEstimate(getAzimuthPosition()) / TICKS * (invertError ? -1.0 : 1.0);
+  }
+
+  /**
+   * Returns the azimuth absolute position from the sensor snapshot. Once the azimuth estimator is
+   * reset it is shifted into the relative encoder's frame by the estimator's zeroing offset, so an
+   * estimator reset with no offset fuses it the same way.
+   *
+   * @return absolute position in encoder ticks
+   */
+  double getSnapshotAbsolutePosition() {
+    final double absolute = sensors.absPosition[azimuthSlot];
+    if (azimuthEstimator != null && azimuthEstimator.isReset()) {
+      return absolute + azimuthEstimator.getOffset();
+    }
+    return absolute;
+  }
+
+  /**
+   * Returns the drive motor position in the drive controller's native units.
+   *
+   * @return drive position
+   */
+  public double getDrivePosition() {
+    return driveTalon.getPosition();
+  }
+
   /**
    * Get the azimuth Talon controller.
    *
@@ -0,0 +1,51 @@
+package org.strykeforce.thirdcoast.swerve;
+
+/**
+ * Motor controller writes planned for a group of wheels in one control cycle, stored as parallel
+ * primitive arrays indexed by wheel. {@link Wheel} plans into a command and later actuates it,
+ * which lets the writes happen on a different thread than the planning.
+ */
+public class WheelCommand {
+
+  /** Leave the azimuth controller alone. */
+  public static final int AZIMUTH_NONE = 0;
+
+  /** Send the azimuth setpoint. */
+  public static final int AZIMUTH_SET = 1;
+
+  /** Set the azimuth controller to neutral output. */
+  public static final int AZIMUTH_NEUTRAL = 2;
+
+  /**
+   * Azimuth action, one of {@link #AZIMUTH_NONE}, {@link #AZIMUTH_SET} or {@link
+   * #AZIMUTH_NEUTRAL}.
+   */
+  public final int[] azimuthAction;
+
+  /** Azimuth setpoint in encoder ticks, used with {@link #AZIMUTH_SET}. */
+  public final double[] azimuth;
+
+  /**
+   * Azimuth position in encoder ticks the setpoint was planned from, used with {@link
+   * #AZIMUTH_SET} by controllers that close the azimuth loop on the roboRIO.
+   */
+  public final double[] azimuthPosition;
+
+  /** Drive output, -1.0 to 1.0 before the wheel's drive mode scaling. */
+  public final double[] drive;
+
+  /** Producer sequence number, used by the actuator thread. */
+  long sequence;
+
+  /**
+   * Construct a command with room for the given number of wheels.
+   *
+   * @param size number of wheels
+   */
+  public WheelCommand(int size) {
+    azimuthAction = new int[size];
+    azimuth = new double[size];
+    azimuthPosition = new double[size];
+    drive = new double[size];
+  }
+}
@@ -1,30 +1,125 @@
 package org.strykeforce.thirdcoast.talon;
 
 import com.ctre.phoenix.ErrorCode;
-import com.ctre.phoenix.motorcontrol.can.TalonSRX;
-//import org.slf4j.Logger;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
-/** Utility class to check for and display TalonSRX configuration errors. */
+/**
+ * Lock-free counters for motor controller and sensor error codes, keyed by device ID and vendor
+ * error code.
+ *
+ * <p>Any thread may record errors without allocating or locking. Each distinct device and error
+ * code pair claims a slot in a fixed-size open-addressed table the first time it is seen; once the
+ * table is full, further new pairs are only counted in the summary total.
+ */
 public class Errors {
 
-  private static boolean summarized = true;
-  private static int count;
-/*
-  public static void check(ErrorCode error, Logger logger) {
-    if (error != null && error != ErrorCode.OK) {
-      if (summarized) count++;
-      else logger.error("error while configuring Talon: {}", error);
+  /** Maximum number of distinct device and error code pairs. */
+  public static final int CAPACITY = 256;
+
+  private static final long EMPTY = 0L;
+
+  private static volatile boolean summarized = true;
+  private static final AtomicInteger count = new AtomicInteger();
+  private static final AtomicLongArray keys = new AtomicLongArray(CAPACITY);
+  private static final AtomicLongArray counts = new AtomicLongArray(CAPACITY);
+
+  private Errors() {}
+
+  /**
+   * Record a vendor error code returned by a device. Zero, the vendors' OK code, is ignored.
+   *
+   * @param deviceId the device CAN ID
+   * @param errorCode the vendor error code
+   */
+  public static void record(int deviceId, int errorCode) {
+    if (errorCode == 0) {
+      return;
+    }
+    count.incrementAndGet();
+    final long key = key(deviceId, errorCode);
+    final int start = (Long.hashCode(key) * 0x9E3779B9) >>> 24; // top 8 bits, CAPACITY = 256
+    for (int i = 0; i < CAPACITY; i++) {
+      final int slot = (start + i) & (CAPACITY - 1);
+      long current = keys.get(slot);
+      if (current == EMPTY && !keys.compareAndSet(slot, EMPTY, key)) {
+        current = keys.get(slot); // lost the race for this slot, check who won
+      } else if (current == EMPTY) {
+        current = key;
+      }
+      if (current == key) {
+        counts.incrementAndGet(slot);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Record a CTRE error code returned by a device.
+   *
+   * @param deviceId the device CAN ID
+   * @param error the error code, null is ignored
+   */
+  public static void check(int deviceId, ErrorCode error) {
+    if (error != null) {
+      record(deviceId, error.value);
+    }
+  }
+
+  /**
+   * Returns the number of times an error code has been recorded for a device.
+   *
+   * @param deviceId the device CAN ID
+   * @param errorCode the vendor error code
+   * @return the error count
+   */
+  public static long getCount(int deviceId, int errorCode) {
+    final long key = key(deviceId, errorCode);
+    for (int slot = 0; slot < CAPACITY; slot++) {
+      if (keys.get(slot) == key) {
+        return counts.get(slot);
+      }
     }
+    return 0L;
   }
-  
 
-  public static void check(TalonSRX talon, String method, ErrorCode error, Logger logger) {
-    if (error != null && error != ErrorCode.OK) {
-      if (summarized) count++;
-      else logger.error("Talon {}: {} error {}", talon.getDeviceID(), method, error);
+  /**
+   * Print the per-device error counts.
+   *
+   * @param out the stream to print to
+   */
+  public static void dump(PrintStream out) {
+    for (int slot = 0; slot < CAPACITY; slot++) {
+      final long key = keys.get(slot);
+      if (key != EMPTY) {
+        out.printf("device %d error %d: %d%n", deviceId(key), errorCode(key), counts.get(slot));
+      }
     }
   }
-*/
+
+  /** Clear the total and per-device error counts. Not safe to call while errors are recorded. */
+  public static void reset() {
+    for (int slot = 0; slot < CAPACITY; slot++) {
+      keys.set(slot, EMPTY);
+      counts.set(slot, 0L);
+    }
+    count.set(0);
+  }
+
+  // the high word is never zero for a valid key, so EMPTY never matches a recorded pair
+  private static long key(int deviceId, int errorCode) {
+    return ((deviceId + 1L) << 32) | (errorCode & 0xFFFFFFFFL);
+  }
+
+  private static int deviceId(long key) {
+    return (int) (key >>> 32) - 1;
+  }
+
+  private static int errorCode(long key) {
+    return (int) key;
+  }
+
   public static boolean isSummarized() {
     return summarized;
   }
@@ -34,10 +129,10 @@ public class Errors {
   }
 
   public static int getCount() {
-    return count;
+    return count.get();
   }
 
   public static void setCount(int count) {
-    Errors.count = count;
+    Errors.count.set(count);
   }
 }
@@ -0,0 +1,142 @@
+package org.strykeforce.thirdcoast.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * Preallocated latency histogram with fixed logarithmic buckets.
+ *
+ * <p>Each power of two from 4 us up is split into four linear buckets, so reported percentiles are
+ * within 25% of the true value; latencies under 4 us get their own 1 us buckets. Latencies up to
+ * about 17 minutes are bucketed, anything longer is counted in the last bucket. Recording never
+ * allocates. There should be a single recording thread; statistics read from another thread may be
+ * momentarily inconsistent.
+ */
+public class LatencyHistogram {
+
+  private static final int BUCKETS = 120;
+
+  private final String name;
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long total;
+  private long max;
+
+  /**
+   * Construct an empty histogram.
+   *
+   * @param name the histogram name
+   */
+  public LatencyHistogram(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Record a latency.
+   *
+   * @param nanos latency in nanoseconds
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts[bucket(nanos / 1000)]++;
+    count++;
+    total += nanos;
+    if (nanos > max) {
+      max = nanos;
+    }
+  }
+
+  private static int bucket(long micros) {
+    if (micros < 4) {
+      return (int) micros;
+    }
+    final int log2 = 63 - Long.numberOfLeadingZeros(micros);
+    final int sub = (int) (micros >>> (log2 - 2)) & 3;
+    return Math.min(BUCKETS - 1, 4 * (log2 - 1) + sub);
+  }
+
+  /** Upper bound of a bucket, in microseconds. */
+  private static long upperBound(int bucket) {
+    final int next = bucket + 1;
+    if (next < 4) {
+      return next;
+    }
+    final int log2 = next / 4 + 1;
+    return (4L + next % 4) << (log2 - 2);
+  }
+
+  /**
+   * Returns an upper bound for the given percentile of recorded latencies.
+   *
+   * @param percentile 0 to 100
+   * @return latency in nanoseconds, or 0 if empty
+   */
+  public long getPercentile(double percentile) {
+    final long n = count;
+    if (n == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(upperBound(i) * 1000, max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Returns the largest recorded latency.
+   *
+   * @return latency in nanoseconds
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * Returns the mean recorded latency.
+   *
+   * @return latency in nanoseconds, or 0 if empty
+   */
+  public double getMean() {
+    final long n = count;
+    return n == 0 ? 0.0 : (double) total / n;
+  }
+
+  /**
+   * Returns the number of recorded latencies.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the histogram name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /** Clear all recorded latencies. */
+  public void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    total = 0;
+    max = 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%-24s count=%-8d p50=%8.1f us  p99=%8.1f us  max=%8.1f us",
+        name, count, getPercentile(50) / 1e3, getPercentile(99) / 1e3, max / 1e3);
+  }
+}
@@ -0,0 +1,115 @@
+package org.strykeforce.thirdcoast.telemetry;
+
+import java.io.PrintStream;
+
+/**
+ * Named {@link LatencyHistogram} timers for robot loop phases, with periodic publishing of their
+ * p50, p99 and max to the {@link TelemetryRegistry}.
+ *
+ * <p>Code that times a phase registers a histogram once and records {@code System.nanoTime()}
+ * differences into it. The robot loop calls {@link #periodic()} every cycle, which refreshes the
+ * telemetry entries at a low rate, and {@link #publish()} when the match ends.
+ */
+public class LoopProfiler {
+
+  /** Maximum number of histograms. */
+  public static final int CAPACITY = 128;
+
+  /** Default number of loop cycles between telemetry updates. */
+  public static final int DEFAULT_PUBLISH_CYCLES = 50;
+
+  private static final LoopProfiler INSTANCE =
+      new LoopProfiler(TelemetryRegistry.getInstance(), DEFAULT_PUBLISH_CYCLES);
+
+  private final TelemetryRegistry registry;
+  private final int publishCycles;
+  private final LatencyHistogram[] histograms = new LatencyHistogram[CAPACITY];
+  private final TelemetryEntry[] entries = new TelemetryEntry[3 * CAPACITY];
+  private volatile int size;
+  private int cycles;
+
+  /**
+   * Construct a profiler.
+   *
+   * @param registry registry for the p50, p99 and max entries of each histogram
+   * @param publishCycles number of {@link #periodic()} calls between telemetry updates
+   */
+  public LoopProfiler(TelemetryRegistry registry, int publishCycles) {
+    this.registry = registry;
+    this.publishCycles = publishCycles;
+  }
+
+  /**
+   * Returns the profiler shared by the robot loop and swerve drive.
+   *
+   * @return the default profiler
+   */
+  public static LoopProfiler getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Register a named histogram, or return the existing one if the name is already registered.
+   *
+   * @param name the phase name
+   * @return the histogram to record into
+   * @throws IllegalStateException if the profiler is full
+   */
+  public synchronized LatencyHistogram register(String name) {
+    final int n = size;
+    for (int i = 0; i < n; i++) {
+      if (histograms[i].getName().equals(name)) {
+        return histograms[i];
+      }
+    }
+    if (n == CAPACITY) {
+      throw new IllegalStateException("loop profiler is full, capacity = " + CAPACITY);
+    }
+    histograms[n] = new LatencyHistogram(name);
+    entries[3 * n] = registry.register(name + " p50 us");
+    entries[3 * n + 1] = registry.register(name + " p99 us");
+    entries[3 * n + 2] = registry.register(name + " max us");
+    size = n + 1;
+    return histograms[n];
+  }
+
+  /** Call once per robot loop; updates telemetry every publish interval. */
+  public void periodic() {
+    if (++cycles < publishCycles) {
+      return;
+    }
+    publish();
+  }
+
+  /** Update the telemetry entries now, for example when the match ends. */
+  public void publish() {
+    cycles = 0;
+    final int n = size;
+    for (int i = 0; i < n; i++) {
+      final LatencyHistogram histogram = histograms[i];
+      entries[3 * i].set(histogram.getPercentile(50) / 1e3);
+      entries[3 * i + 1].set(histogram.getPercentile(99) / 1e3);
+      entries[3 * i + 2].set(histogram.getMax() / 1e3);
+    }
+  }
+
+  /**
+   * Print a summary of every histogram.
+   *
+   * @param out the destination
+   */
+  public void dump(PrintStream out) {
+    final int n = size;
+    for (int i = 0; i < n; i++) {
+      out.println(histograms[i]);
+    }
+  }
+
+  /** Clear all histograms, for example at the start of a match. */
+  public void reset() {
+    final int n = size;
+    for (int i = 0; i < n; i++) {
+      histograms[i].reset();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package org.strykeforce.thirdcoast.telemetry;
+
+/**
+ * Adaptive loop overrun watchdog that sheds low-priority work while the robot loop is over budget.
+ *
+ * <p>The loop reports its busy time every cycle. When the smoothed loop time exceeds the budget,
+ * the watchdog sheds one more level of work, in the order {@link Sheddable}s were added, and waits
+ * for the change to take effect before shedding again. When the smoothed time falls comfortably
+ * under budget, levels are restored one at a time in reverse order.
+ */
+public class LoopWatchdog {
+
+  /** Work that can be paused while the loop is overloaded. */
+  public interface Sheddable {
+
+    /**
+     * Pause or resume the work.
+     *
+     * @param shed true to pause, false to resume
+     */
+    void shed(boolean shed);
+  }
+
+  private static final int CAPACITY = 16;
+  private static final int HOLD_CYCLES = 25;
+  private static final double RESTORE_FRACTION = 0.7;
+  private static final double SMOOTHING = 0.1;
+
+  private final long budgetNanos;
+  private final Sheddable[] sheddables = new Sheddable[CAPACITY];
+  private int sheddableCount;
+  private int shedLevel;
+  private int holdCycles;
+  private double smoothedNanos;
+  private long overruns;
+
+  /**
+   * Construct a watchdog.
+   *
+   * @param budget loop time budget in seconds
+   */
+  public LoopWatchdog(double budget) {
+    if (budget <= 0.0) {
+      throw new IllegalArgumentException("loop budget must be positive: " + budget);
+    }
+    budgetNanos = (long) (budget * 1e9);
+  }
+
+  /**
+   * Add work that can be shed. Work added first is shed first.
+   *
+   * @param sheddable the work
+   */
+  public void addSheddable(Sheddable sheddable) {
+    if (sheddableCount == CAPACITY) {
+      throw new IllegalStateException("loop watchdog is full, capacity = " + CAPACITY);
+    }
+    sheddables[sheddableCount++] = sheddable;
+  }
+
+  /**
+   * Report this cycle's loop time and shed or restore work as needed.
+   *
+   * @param nanos loop time in nanoseconds
+   */
+  public void record(long nanos) {
+    if (nanos > budgetNanos) {
+      overruns++;
+    }
+    smoothedNanos += SMOOTHING * (nanos - smoothedNanos);
+    if (holdCycles > 0) {
+      holdCycles--;
+      return;
+    }
+    if (smoothedNanos > budgetNanos && shedLevel < sheddableCount) {
+      sheddables[shedLevel++].shed(true);
+      holdCycles = HOLD_CYCLES;
+    } else if (smoothedNanos < RESTORE_FRACTION * budgetNanos && shedLevel > 0) {
+      sheddables[--shedLevel].shed(false);
+      holdCycles = HOLD_CYCLES;
+    }
+  }
+
+  /**
+   * Returns the number of levels of work currently shed.
+   *
+   * @return the shed level
+   */
+  public int getShedLevel() {
+    return shedLevel;
+  }
+
+  /**
+   * Returns the number of cycles over budget.
+   *
+   * @return the overrun count
+   */
+  public long getOverruns() {
+    return overruns;
+  }
+
+  /**
+   * Returns the smoothed loop time.
+   *
+   * @return loop time in nanoseconds
+   */
+  public double getSmoothedNanos() {
+    return smoothedNanos;
+  }
+}
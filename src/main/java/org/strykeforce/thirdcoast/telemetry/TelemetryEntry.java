@@ -0,0 +1,48 @@
+package org.strykeforce.thirdcoast.telemetry;
+
+/** Pre-resolved handle to one {@link TelemetryRegistry} value. */
+public class TelemetryEntry {
+
+  private final TelemetryRegistry registry;
+  private final int index;
+  private final String name;
+
+  TelemetryEntry(TelemetryRegistry registry, int index, String name) {
+    this.registry = registry;
+    this.index = index;
+    this.name = name;
+  }
+
+  /**
+   * Record a value. Does not block, allocate or publish; the value is sent by the next publisher
+   * cycle and may be overwritten before then.
+   *
+   * @param value the value to record
+   */
+  public void set(double value) {
+    TelemetryRegistry.VALUES.setOpaque(registry.values, index, value);
+  }
+
+  /**
+   * Returns the most recently recorded value.
+   *
+   * @return the value
+   */
+  public double get() {
+    return (double) TelemetryRegistry.VALUES.getOpaque(registry.values, index);
+  }
+
+  /**
+   * Returns the registered name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return "TelemetryEntry{" + "name='" + name + '\'' + ", value=" + get() + '}';
+  }
+}
@@ -0,0 +1,101 @@
+package org.strykeforce.thirdcoast.telemetry;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Notifier;
+
+/**
+ * Publishes a {@link TelemetryRegistry} to NetworkTables on a background {@link Notifier}.
+ *
+ * <p>Each cycle sends all recorded values as a single {@code values} double array. Names are sent
+ * in the matching {@code names} string array, which is only republished when entries are added.
+ */
+public class TelemetryPublisher {
+
+  /** Default NetworkTables table name. */
+  public static final String TABLE = "Telemetry";
+
+  /** Default publishing period in seconds. */
+  public static final double DEFAULT_PERIOD = 0.1;
+
+  private final TelemetryRegistry registry;
+  private final String tableName;
+  private Notifier notifier;
+  private NetworkTableEntry namesEntry;
+  private NetworkTableEntry valuesEntry;
+  private double[] values = new double[0];
+  private volatile boolean enabled = true;
+
+  /** Construct a publisher for the default registry and table. */
+  public TelemetryPublisher() {
+    this(TelemetryRegistry.getInstance(), TABLE);
+  }
+
+  /**
+   * Construct a publisher.
+   *
+   * @param registry the registry to publish
+   * @param tableName the NetworkTables table to publish to
+   */
+  public TelemetryPublisher(TelemetryRegistry registry, String tableName) {
+    this.registry = registry;
+    this.tableName = tableName;
+  }
+
+  /**
+   * Start publishing.
+   *
+   * @param period publishing period in seconds
+   */
+  public void start(double period) {
+    if (period <= 0.0) {
+      throw new IllegalArgumentException("telemetry period must be positive: " + period);
+    }
+    if (notifier == null) {
+      final NetworkTable table = NetworkTableInstance.getDefault().getTable(tableName);
+      namesEntry = table.getEntry("names");
+      valuesEntry = table.getEntry("values");
+      notifier = new Notifier(this::publish);
+    }
+    notifier.startPeriodic(period);
+  }
+
+  /** Stop publishing. */
+  public void stop() {
+    if (notifier != null) {
+      notifier.stop();
+    }
+  }
+
+  /**
+   * Pause or resume publishing without stopping the notifier. Values continue to be recorded.
+   *
+   * @param enabled true to publish
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Returns true if publishing is enabled.
+   *
+   * @return true if enabled
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  private void publish() {
+    if (!enabled) {
+      return;
+    }
+    final int size = registry.size();
+    if (size != values.length) {
+      values = new double[size];
+      namesEntry.setStringArray(registry.getNames());
+    }
+    registry.copyValues(values);
+    valuesEntry.setDoubleArray(values);
+  }
+}
@@ -0,0 +1,107 @@
+package org.strykeforce.thirdcoast.telemetry;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity registry of named telemetry values.
+ *
+ * <p>Entries are registered by name once, typically in a constructor, and the returned {@link
+ * TelemetryEntry} handle is kept for recording. Recording is a single array store with no locking,
+ * allocation or string hashing, so it is safe on the control path. A {@link TelemetryPublisher}
+ * periodically copies all values and sends them as one batch.
+ */
+public class TelemetryRegistry {
+
+  /** Default maximum number of entries. */
+  public static final int DEFAULT_CAPACITY = 512;
+
+  static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(double[].class);
+
+  private static final TelemetryRegistry INSTANCE = new TelemetryRegistry(DEFAULT_CAPACITY);
+
+  private final String[] names;
+  private final TelemetryEntry[] entries;
+  final double[] values;
+  private volatile int size;
+
+  /**
+   * Construct an empty registry.
+   *
+   * @param capacity maximum number of entries
+   */
+  public TelemetryRegistry(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    names = new String[capacity];
+    entries = new TelemetryEntry[capacity];
+    values = new double[capacity];
+  }
+
+  /**
+   * Returns the registry shared by the swerve drive and motor controller wrappers.
+   *
+   * @return the default registry
+   */
+  public static TelemetryRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Register a named value, or return the existing entry if the name is already registered.
+   *
+   * @param name the value name
+   * @return the entry handle used to record values
+   * @throws IllegalStateException if the registry is full
+   */
+  public synchronized TelemetryEntry register(String name) {
+    final int n = size;
+    for (int i = 0; i < n; i++) {
+      if (names[i].equals(name)) {
+        return entries[i];
+      }
+    }
+    if (n == names.length) {
+      throw new IllegalStateException("telemetry registry is full, capacity = " + names.length);
+    }
+    names[n] = name;
+    entries[n] = new TelemetryEntry(this, n, name);
+    size = n + 1;
+    return entries[n];
+  }
+
+  /**
+   * Returns the number of registered entries.
+   *
+   * @return the entry count
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the entry names in registration order, matching the order of {@link
+   * #copyValues(double[])}.
+   *
+   * @return a copy of the registered names
+   */
+  public String[] getNames() {
+    return Arrays.copyOf(names, size);
+  }
+
+  /**
+   * Copy the latest recorded values, in registration order, into the supplied array.
+   *
+   * @param destination array to copy into, values beyond its length are skipped
+   * @return the number of values copied
+   */
+  public int copyValues(double[] destination) {
+    final int n = Math.min(size, destination.length);
+    for (int i = 0; i < n; i++) {
+      destination[i] = (double) VALUES.getOpaque(values, i);
+    }
+    return n;
+  }
+}
@@ -0,0 +1,16 @@
+package frc.robot.subsystems;
+
+import java.nio.file.Paths;
+import org.junit.Test;
+import org.strykeforce.thirdcoast.sim.SwerveSimulationTest;
+import org.strykeforce.thirdcoast.swerve.GainTuner;
+
+public class DriveSubsystemTest {
+
+  @Test
+  public void configurationSteersInSimulation() {
+    // no gains file, so the configuration's default gains
+    final GainTuner gainTuner = new GainTuner(Paths.get("build", "missing.properties"), "Gains");
+    SwerveSimulationTest.assertStrafes(DriveSubsystem.getConfig(gainTuner));
+  }
+}
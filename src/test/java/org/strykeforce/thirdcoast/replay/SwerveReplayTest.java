@@ -0,0 +1,160 @@
+package org.strykeforce.thirdcoast.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.strykeforce.thirdcoast.log.DataLogDecoder;
+import org.strykeforce.thirdcoast.log.DataLogger;
+import org.strykeforce.thirdcoast.swerve.GyroSampleBuffer;
+import org.strykeforce.thirdcoast.swerve.HeadingController;
+import org.strykeforce.thirdcoast.swerve.SwerveDrive;
+import org.strykeforce.thirdcoast.swerve.SwerveDriveConfig;
+import org.strykeforce.thirdcoast.swerve.Wheel;
+
+public class SwerveReplayTest {
+
+  private static final int CYCLES = 2000;
+  private static final double PERIOD = 0.02;
+  private static final int[] AZIMUTH_ZEROS = {1000, 2000, 3000, 500};
+
+  private Path file;
+  private double time;
+  private double voltage;
+
+  @Before
+  public void setUp() throws IOException {
+    file = Files.createTempFile("swerve", ".tclog");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  /**
+   * Log a drive with random inputs and sensor readings, the absolute encoders drifting from the
+   * zeroed relative encoders, then replay the log with the replay configuration.
+   */
+  private SwerveReplay recordAndReplay(SwerveDriveConfig robot, SwerveDriveConfig replay)
+      throws IOException {
+    final RecordingMotorController[] azimuths = new RecordingMotorController[4];
+    final RecordingMotorController[] drives = new RecordingMotorController[4];
+    final Wheel[] wheels = new Wheel[4];
+    for (int i = 0; i < wheels.length; i++) {
+      azimuths[i] = new RecordingMotorController(i);
+      drives[i] = new RecordingMotorController(i + 10);
+      wheels[i] =
+          new Wheel(
+              azimuths[i],
+              drives[i],
+              robot.driveSetpointMax,
+              robot.azimuthTicks,
+              robot.invertError);
+    }
+    final GyroSampleBuffer gyroSamples = new GyroSampleBuffer(() -> time);
+    robot.wheels = wheels;
+    robot.gyroSamples = gyroSamples;
+    robot.clock = () -> time;
+    robot.busVoltage = () -> voltage;
+    final SwerveDrive drive = new SwerveDrive(robot);
+    for (int i = 0; i < wheels.length; i++) {
+      azimuths[i].absPosition = 100 * i;
+      wheels[i].setAzimuthZero(AZIMUTH_ZEROS[i]);
+    }
+
+    final DataLogger logger = new DataLogger(file, drive.getDataLogFields(), CYCLES, 4096, 0);
+    logger.start();
+    drive.setDataLogger(logger);
+    final Random random = new Random(1);
+    double angle = 0.0;
+    for (int k = 0; k < CYCLES; k++) {
+      time = k * PERIOD;
+      angle += random.nextGaussian();
+      gyroSamples.addSample(time, angle, 10.0 * random.nextGaussian());
+      voltage = 12.0 - 4.0 * random.nextDouble();
+      for (int i = 0; i < wheels.length; i++) {
+        final RecordingMotorController azimuth = azimuths[i];
+        azimuth.position += 0.5 * (azimuth.getSetpoint() - azimuth.position);
+        final double absolute = azimuth.position + AZIMUTH_ZEROS[i] + 0.05 * k;
+        azimuth.absPosition = absolute - Math.floor(absolute / 4096) * 4096;
+        drives[i].output = voltage * drives[i].getSetpoint();
+        drives[i].current = 80.0 * random.nextDouble();
+      }
+      final boolean released = (k / 200) % 2 == 1;
+      drive.drive(
+          random.nextDouble() - 0.5,
+          random.nextDouble() - 0.5,
+          released ? 0.0 : random.nextDouble() - 0.5);
+    }
+    logger.stop();
+    assertEquals(0L, logger.getDroppedCount());
+
+    final SwerveReplay swerveReplay = new SwerveReplay(new DataLogDecoder(file), replay);
+    swerveReplay.run();
+    return swerveReplay;
+  }
+
+  private double getMinimum(String field) throws IOException {
+    final DataLogDecoder log = new DataLogDecoder(file);
+    final int index = Arrays.asList(log.getFields()).indexOf(field);
+    final double[] record = new double[log.getFields().length];
+    double minimum = Double.POSITIVE_INFINITY;
+    for (long r = 0; r < log.getRecordCount(); r++) {
+      log.read(r, record);
+      minimum = Math.min(minimum, record[index]);
+    }
+    return minimum;
+  }
+
+  private static void assertMatches(SwerveReplay replay) {
+    assertEquals(replay.toString(), CYCLES, replay.getRecords());
+    assertEquals(replay.toString(), 0L, replay.getMismatchedRecords());
+  }
+
+  @Test
+  public void replayMatchesLog() throws IOException {
+    assertMatches(recordAndReplay(new SwerveDriveConfig(), new SwerveDriveConfig()));
+  }
+
+  @Test
+  public void replayMatchesLogWithAzimuthEstimator() throws IOException {
+    final SwerveDriveConfig robot = new SwerveDriveConfig();
+    robot.azimuthEstimateTimeConstant = 0.5;
+    final SwerveDriveConfig replay = new SwerveDriveConfig();
+    replay.azimuthEstimateTimeConstant = 0.5;
+    assertMatches(recordAndReplay(robot, replay));
+  }
+
+  @Test
+  public void replayMatchesLogWithPowerBudget() throws IOException {
+    final SwerveDriveConfig robot = new SwerveDriveConfig();
+    robot.maxDriveSupplyCurrent = 60.0;
+    robot.minBusVoltage = 9.0;
+    final SwerveDriveConfig replay = new SwerveDriveConfig();
+    replay.maxDriveSupplyCurrent = 60.0;
+    replay.minBusVoltage = 9.0;
+    assertMatches(recordAndReplay(robot, replay));
+    assertTrue("power scaled", getMinimum("power_scale") < 1.0);
+  }
+
+  @Test
+  public void replayMatchesLogWithHeadingController() throws IOException {
+    final SwerveDriveConfig robot = new SwerveDriveConfig();
+    robot.headingController = getHeadingController();
+    final SwerveDriveConfig replay = new SwerveDriveConfig();
+    replay.headingController = getHeadingController();
+    assertMatches(recordAndReplay(robot, replay));
+  }
+
+  private static HeadingController getHeadingController() {
+    return new HeadingController(0.05, 0.002, 1.0 / 260.0, 180.0, 720.0, 1.0, 2.0);
+  }
+}
@@ -0,0 +1,92 @@
+package org.strykeforce.thirdcoast.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.strykeforce.thirdcoast.swerve.HeadingController;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.AzimuthMotorController;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.FeedbackSensor;
+import org.strykeforce.thirdcoast.swerve.SwerveDriveConfig;
+
+public class SwerveSimulationTest {
+
+  private static final double AZIMUTH_TOLERANCE = 0.01;
+
+  /**
+   * Strafe right and check that every wheel turns to 0.25 rotations clockwise, or the opposite
+   * direction with the drive reversed, and that the robot moves right.
+   *
+   * @param config the drive configuration
+   */
+  public static void assertStrafes(SwerveDriveConfig config) {
+    final double azimuthSign = config.invertError ? -1.0 : 1.0;
+    final SwerveSimulation sim = new SwerveSimulation(config, new SimulationConfig());
+    sim.run(0.0, 0.5, 0.0, 1.0);
+    final double x = sim.getX();
+    final double y = sim.getY();
+    sim.run(0.0, 0.5, 0.0, 0.5);
+
+    final int wheelCount = config.getWheelLocations().length;
+    for (int i = 0; i < wheelCount; i++) {
+      final double azimuth = azimuthSign * sim.getAzimuthController(i).getMechanismRotations();
+      final double error = Math.IEEEremainder(azimuth - 0.25, 0.5);
+      assertEquals("wheel " + i + " azimuth", 0.0, error, AZIMUTH_TOLERANCE);
+    }
+    assertTrue("moved right", sim.getX() - x > 0.1);
+    assertEquals("moved forward", 0.0, sim.getY() - y, 0.01);
+  }
+
+  @Test
+  public void sparkMaxCanCoderAzimuthSteers() {
+    // the roboRIO position loop output is per 4096 ticks of error and runs every 20 ms
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    config.azimuthConfig.slot0.kP = 6.0;
+    config.azimuthConfig.slot0.kD = 0.0;
+    assertStrafes(config);
+  }
+
+  @Test
+  public void talonSrxAzimuthSteers() {
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    config.azimuthConfig =
+        new MotorControllerConfig(
+            AzimuthMotorController.TALON_SRX, FeedbackSensor.CTRE_MAG_ENCODER);
+    assertStrafes(config);
+  }
+
+  @Test
+  public void headingHoldRecapturesAfterGyroZero() {
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    config.headingController =
+        new HeadingController(0.05, 0.002, 1.0 / 260.0, 180.0, 720.0, 1.0, 2.0);
+    final SwerveSimulation sim = new SwerveSimulation(config, new SimulationConfig());
+    sim.run(0.0, 0.0, 0.5, 0.5);
+    sim.run(0.0, 0.0, 0.0, 2.0);
+    assertTrue("holding", sim.getDrive().isHoldingHeading());
+    assertTrue("turned", sim.getHeading() > 10.0);
+
+    sim.getGyro().setAngle(0.0);
+    sim.getDrive().resetHeadingHold();
+    sim.run(0.0, 0.0, 0.0, 2.0);
+    assertTrue("holding", sim.getDrive().isHoldingHeading());
+    assertEquals("heading", 0.0, sim.getHeading(), 2.0);
+  }
+
+  @Test
+  public void snapRequestedWithGyroZeroIsKept() {
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    config.headingController =
+        new HeadingController(0.05, 0.002, 1.0 / 260.0, 180.0, 720.0, 1.0, 2.0);
+    final SwerveSimulation sim = new SwerveSimulation(config, new SimulationConfig());
+    sim.run(0.0, 0.0, 0.0, 0.5);
+
+    sim.getGyro().setAngle(0.0);
+    sim.getDrive().resetHeadingHold();
+    sim.getDrive().snapHeading(45.0);
+    sim.run(0.0, 0.0, 0.0, 2.0);
+    assertTrue("holding", sim.getDrive().isHoldingHeading());
+    assertEquals("heading", 45.0, sim.getHeading(), 2.0);
+  }
+}
@@ -0,0 +1,75 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.AzimuthMotorController;
+import org.strykeforce.thirdcoast.swerve.MotorControllerConfig.FeedbackSensor;
+
+public class GainTunerTest {
+
+  private Path file;
+  private MotorControllerConfig config;
+  private final List<Double> gains = new ArrayList<>();
+  private final MotorControllerWrapper controller =
+      new NoopMotorController(0) {
+        @Override
+        public void setGain(int slot, Gain gain, double value) {
+          gains.add(value);
+        }
+      };
+
+  @Before
+  public void setUp() throws IOException {
+    file = Files.createTempFile("gains", ".properties");
+    Files.delete(file);
+    config =
+        new MotorControllerConfig(
+            AzimuthMotorController.TALON_SRX, FeedbackSensor.CTRE_MAG_ENCODER);
+    config.slot0.kP = 1.0;
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  private GainTuner getTuner() throws IOException {
+    final GainTuner tuner = new GainTuner(file, "Gains");
+    tuner.add("azimuth", config, controller);
+    Files.write(file, List.of("azimuth.slot0.kP = 3.0"));
+    return tuner;
+  }
+
+  @Test
+  public void appliesChangesOnUpdate() throws IOException {
+    final GainTuner tuner = getTuner();
+    tuner.update();
+    assertEquals(3.0, config.slot0.kP, 0.0);
+    assertEquals(List.of(3.0), gains);
+  }
+
+  @Test
+  public void deferredChangesWaitForApplyPending() throws IOException {
+    final GainTuner tuner = getTuner();
+    tuner.setDeferred(true);
+    tuner.update();
+    assertEquals(1.0, config.slot0.kP, 0.0);
+    assertEquals(0, gains.size());
+
+    tuner.applyPending();
+    assertEquals(3.0, config.slot0.kP, 0.0);
+    assertEquals(List.of(3.0), gains);
+
+    // applied once
+    tuner.applyPending();
+    assertEquals(1, gains.size());
+  }
+}
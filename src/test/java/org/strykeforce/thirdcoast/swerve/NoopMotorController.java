@@ -0,0 +1,65 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import org.strykeforce.thirdcoast.swerve.SwerveDrive.DriveMode;
+
+/** Motor controller wrapper with no hardware that takes its last setpoint as its position. */
+class NoopMotorController implements MotorControllerWrapper {
+
+  private final int id;
+  private double position;
+
+  NoopMotorController(int id) {
+    this.id = id;
+  }
+
+  @Override
+  public void set(double output) {
+    position = output;
+  }
+
+  @Override
+  public void setSensorPosition(double position) {
+    this.position = position;
+  }
+
+  @Override
+  public void setNeutralOutput() {}
+
+  @Override
+  public double getPosition() {
+    return position;
+  }
+
+  @Override
+  public double getAbsPosition() {
+    return position;
+  }
+
+  @Override
+  public double getVelocity() {
+    return 0.0;
+  }
+
+  @Override
+  public double getOutput() {
+    return 0.0;
+  }
+
+  @Override
+  public double getCurrent() {
+    return 0.0;
+  }
+
+  @Override
+  public String toString() {
+    return "NoopMotorController{id=" + id + '}';
+  }
+
+  @Override
+  public int getDeviceID() {
+    return id;
+  }
+
+  @Override
+  public void setDriveMode(DriveMode mode) {}
+}
@@ -0,0 +1,43 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+import org.strykeforce.thirdcoast.telemetry.TelemetryRegistry;
+
+public class SetpointCoalescerTest {
+
+  private static double getTelemetry(String name) {
+    final TelemetryRegistry registry = TelemetryRegistry.getInstance();
+    final double[] values = new double[registry.size()];
+    registry.copyValues(values);
+    return values[Arrays.asList(registry.getNames()).indexOf(name)];
+  }
+
+  @Test
+  public void suppressesSetpointsWithinTolerance() {
+    final SetpointCoalescer coalescer = new SetpointCoalescer(0.01, 1.0);
+    assertTrue(coalescer.shouldWrite(0.5));
+    assertFalse(coalescer.shouldWrite(0.505));
+    assertTrue(coalescer.shouldWrite(0.52));
+    coalescer.invalidate();
+    assertTrue(coalescer.shouldWrite(0.52));
+  }
+
+  @Test
+  public void publishesCounts() {
+    final SetpointCoalescer coalescer = new SetpointCoalescer(0.0, 1.0);
+    final long written = SetpointCoalescer.getWrittenCount();
+    final long suppressed = SetpointCoalescer.getSuppressedCount();
+    coalescer.shouldWrite(1.0);
+    coalescer.shouldWrite(1.0);
+    coalescer.shouldWrite(1.0);
+
+    SetpointCoalescer.updateTelemetry();
+    assertEquals(written + 1, getTelemetry("SetpointCoalescer written"), 0.0);
+    assertEquals(suppressed + 2, getTelemetry("SetpointCoalescer suppressed"), 0.0);
+  }
+}
@@ -0,0 +1,54 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+import org.strykeforce.thirdcoast.telemetry.LatencyHistogram;
+
+public class SwerveActuatorTest {
+
+  private static boolean isActuatorRunning() {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals("SwerveActuator") && thread.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void timesWritesAndStops() {
+    final NoopMotorController azimuth = new NoopMotorController(0);
+    final Wheel[] wheels = {new Wheel(azimuth, new NoopMotorController(10), 5500, 4096, true)};
+    final LatencyHistogram writeTiming = new LatencyHistogram("write");
+    final SwerveActuator actuator = new SwerveActuator(wheels, writeTiming);
+
+    final WheelCommand command = actuator.getBuffer();
+    command.azimuthAction[0] = WheelCommand.AZIMUTH_SET;
+    command.azimuth[0] = 100.0;
+    actuator.publish();
+    actuator.flush();
+    assertEquals(100.0, azimuth.getPosition(), 0.0);
+    assertEquals(1L, writeTiming.getCount());
+
+    actuator.stop();
+    assertFalse(isActuatorRunning());
+  }
+
+  @Test
+  public void closeStopsPipelinedDrive() {
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    config.pipelinedActuation = true;
+    final Wheel[] wheels = new Wheel[4];
+    for (int i = 0; i < wheels.length; i++) {
+      wheels[i] =
+          new Wheel(new NoopMotorController(i), new NoopMotorController(i + 10), 5500, 4096, true);
+    }
+    config.wheels = wheels;
+    final SwerveDrive swerve = new SwerveDrive(config);
+    swerve.drive(0.5, 0.0, 0.0);
+    swerve.close();
+    assertFalse(isActuatorRunning());
+  }
+}
@@ -0,0 +1,106 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.strykeforce.thirdcoast.swerve.SwerveDrive.DriveMode;
+
+/**
+ * Checks that the teleop drive path, from {@link SwerveDrive#drive(double, double, double)} down to
+ * the motor controller wrappers, allocates nothing once warmed up.
+ */
+public class SwerveDriveAllocationTest {
+
+  private static final int WARMUP_CYCLES = 50_000;
+  private static final int CYCLES = 10_000;
+  private static final double PERIOD = 0.02;
+  private static final double DEADBAND = 0.05;
+
+  private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private GyroSampleBuffer gyroSamples;
+  private double time;
+
+  @Before
+  public void setUp() {
+    assertTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    time = 0.0;
+    gyroSamples = new GyroSampleBuffer(() -> time);
+  }
+
+  private SwerveDrive getSwerve(SwerveDriveConfig config) {
+    final Wheel[] wheels = new Wheel[4];
+    for (int i = 0; i < wheels.length; i++) {
+      wheels[i] =
+          new Wheel(new NoopMotorController(i), new NoopMotorController(i + 10), 5500, 4096, true);
+    }
+    config.wheels = wheels;
+    config.gyroSamples = gyroSamples;
+    config.clock = () -> time;
+    return new SwerveDrive(config);
+  }
+
+  // one teleop cycle with varying inputs, including the released sticks of a deadband
+  private void cycle(SwerveDrive swerve, int k) {
+    time += PERIOD;
+    gyroSamples.addSample(time, 0.1 * k, 5.0);
+    final double stick = Math.sin(0.01 * k);
+    final double yaw = (k / 300) % 2 == 0 ? 0.0 : stick;
+    swerve.updateSensors();
+    swerve.drive(deadband(stick), deadband(Math.cos(0.013 * k)), deadband(yaw));
+  }
+
+  private static double deadband(double value) {
+    return Math.abs(value) < DEADBAND ? 0.0 : value;
+  }
+
+  private long getAllocatedBytes(SwerveDrive swerve) {
+    final long thread = Thread.currentThread().getId();
+    int k = 0;
+    for (; k < WARMUP_CYCLES; k++) {
+      cycle(swerve, k);
+    }
+    final long start = threads.getThreadAllocatedBytes(thread);
+    for (; k < WARMUP_CYCLES + CYCLES; k++) {
+      cycle(swerve, k);
+    }
+    return threads.getThreadAllocatedBytes(thread) - start;
+  }
+
+  @Test
+  public void teleopDriveDoesNotAllocate() {
+    final SwerveDrive swerve = getSwerve(new SwerveDriveConfig());
+    swerve.setFieldOriented(true);
+    assertEquals(0L, getAllocatedBytes(swerve));
+  }
+
+  @Test
+  public void closedLoopDriveDoesNotAllocate() {
+    final SwerveDrive swerve = getSwerve(new SwerveDriveConfig());
+    swerve.setDriveMode(DriveMode.CLOSED_LOOP);
+    assertEquals(0L, getAllocatedBytes(swerve));
+  }
+
+  @Test
+  public void headingHoldDoesNotAllocate() {
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    config.headingController =
+        new HeadingController(0.05, 0.002, 1.0 / 260.0, 180.0, 720.0, 1.0, 2.0);
+    final SwerveDrive swerve = getSwerve(config);
+    swerve.setFieldOriented(true);
+    assertEquals(0L, getAllocatedBytes(swerve));
+  }
+
+  @Test
+  public void pipelinedDriveDoesNotAllocate() {
+    final SwerveDriveConfig config = new SwerveDriveConfig();
+    config.pipelinedActuation = true;
+    try (SwerveDrive swerve = getSwerve(config)) {
+      assertEquals(0L, getAllocatedBytes(swerve));
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SwerveKinematicsTest {
+
+  private static final double EPSILON = 1e-9;
+  private static final int STEPS = 100_000;
+
+  /**
+   * Returns the field-frame end point of a robot-relative translation held for one period while
+   * the robot rotates at a constant rate, starting from heading zero.
+   */
+  private static double[] integrate(double strafe, double forward, double rotation) {
+    double x = 0.0;
+    double y = 0.0;
+    for (int i = 0; i < STEPS; i++) {
+      // clockwise heading at the midpoint of the step
+      final double heading = rotation * (i + 0.5) / STEPS;
+      final double cos = Math.cos(heading);
+      final double sin = Math.sin(heading);
+      x += (strafe * cos + forward * sin) / STEPS;
+      y += (forward * cos - strafe * sin) / STEPS;
+    }
+    return new double[] {x, y};
+  }
+
+  @Test
+  public void discretizeWithoutRotationIsIdentity() {
+    final double[] chassis = {0.3, -0.7};
+    SwerveKinematics.discretize(chassis, 0.0);
+    assertEquals(0.3, chassis[0], 0.0);
+    assertEquals(-0.7, chassis[1], 0.0);
+  }
+
+  @Test
+  public void discretizedArcEndsAtStraightLineEnd() {
+    final double[][] translations = {{0.0, 1.0}, {1.0, 0.0}, {0.4, -0.6}};
+    for (double rotation : new double[] {0.5, -0.5, 2.0, -1e-3}) {
+      for (double[] translation : translations) {
+        final double[] chassis = translation.clone();
+        SwerveKinematics.discretize(chassis, rotation);
+        final double[] end = integrate(chassis[0], chassis[1], rotation);
+        assertEquals("x after " + rotation, translation[0], end[0], 1e-6);
+        assertEquals("y after " + rotation, translation[1], end[1], 1e-6);
+      }
+    }
+  }
+
+  @Test
+  public void clockwiseRotationPreRotatesCounterclockwise() {
+    final double[] chassis = {0.0, 1.0};
+    SwerveKinematics.discretize(chassis, 0.2);
+    assertTrue("strafes left", chassis[0] < -EPSILON);
+    assertTrue("lengthened", Math.hypot(chassis[0], chassis[1]) > 1.0);
+  }
+
+  @Test
+  public void counterclockwiseRotationPreRotatesClockwise() {
+    final double[] chassis = {0.0, 1.0};
+    SwerveKinematics.discretize(chassis, -0.2);
+    assertTrue("strafes right", chassis[0] > EPSILON);
+    assertTrue("lengthened", Math.hypot(chassis[0], chassis[1]) > 1.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTwoWheels() {
+    new SwerveKinematics(new double[][] {{-0.5, 0.0}, {0.5, 0.0}});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsCollinearWheels() {
+    new SwerveKinematics(new double[][] {{-0.5, -0.5}, {0.0, 0.0}, {0.5, 0.5}});
+  }
+
+  @Test
+  public void acceptsWheelLocationsInAnyUnit() {
+    for (double scale : new double[] {1e-7, 1.0, 1e4}) {
+      final SwerveKinematics kinematics =
+          new SwerveKinematics(SwerveKinematics.rectangle(0.6 * scale, 0.5 * scale));
+      assertEquals(Math.hypot(0.3, 0.25) * scale, kinematics.getRadius(), 1e-12 * scale);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package org.strykeforce.thirdcoast.swerve;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WheelTest {
+
+  private static final int TICKS = 4096;
+
+  private final SensorSnapshot sensors = new SensorSnapshot(2);
+  private final WheelCommand command = new WheelCommand(1);
+  private double setPosition;
+  private final MotorControllerWrapper azimuth =
+      new NoopMotorController(0) {
+        @Override
+        public void set(double output, double position) {
+          setPosition = position;
+          set(output);
+        }
+
+        @Override
+        public double getPosition() {
+          // a sensor read on the actuating thread would see the wheel moved on
+          return 5000.0;
+        }
+      };
+  private Wheel wheel;
+
+  @Before
+  public void setUp() {
+    wheel = new Wheel(azimuth, new NoopMotorController(10), 5500, TICKS, true);
+    wheel.setSensorSnapshot(sensors, 0);
+    sensors.position[0] = 1000.0;
+    setPosition = Double.NaN;
+  }
+
+  @Test
+  public void actuatesWithPlannedAzimuthPosition() {
+    wheel.plan(0.1, 0.5, command, 0);
+    sensors.position[0] = 2000.0;
+    wheel.actuate(command, 0);
+    assertEquals(1000.0, setPosition, 0.0);
+  }
+
+  @Test
+  public void stopsWithPlannedAzimuthPosition() {
+    wheel.planStop(command, 0);
+    wheel.actuate(command, 0);
+    assertEquals(1000.0, command.azimuth[0], 0.0);
+    assertEquals(1000.0, setPosition, 0.0);
+  }
+}